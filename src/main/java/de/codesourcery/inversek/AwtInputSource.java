@@ -0,0 +1,124 @@
+package de.codesourcery.inversek;
+
+import java.awt.Component;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Collects events from an AWT component and hands them to the main loop at the start of the next tick,
+ * optionally passing them on to an {@link InputRecorder}.
+ *
+ * Mouse events get their model coordinates assigned on the main loop thread, using the
+ * {@link InputEvent.IViewMapping} that is current at the time the event gets delivered.
+ *
+ * Events travel through an {@link InputEventQueue} so the AWT thread never contends with the main loop.
+ * The AWT thread never blocks either, events that do not fit into the queue get dropped.
+ */
+public class AwtInputSource implements IInputSource
+{
+	private final InputEventQueue queue = new InputEventQueue();
+
+	private InputRecorder recorder;
+	private InputEvent.IViewMapping viewMapping;
+	private final Vector2 tmp = new Vector2();
+
+	// state of the dispatch() call currently in progress
+	private long currentTick;
+	private MouseInput currentMouse;
+	private KeyboardInput currentKeyboard;
+	private final InputEventQueue.IEventConsumer consumer = this::deliver;
+
+	private final MouseAdapter mouseAdapter = new MouseAdapter()
+	{
+		@Override
+		public void mouseMoved(MouseEvent e)
+		{
+			queue.offer( InputEvent.Type.MOUSE_MOVED , e.getX() , e.getY() , 0 );
+		}
+
+		@Override
+		public void mouseClicked(MouseEvent e)
+		{
+			final MouseInput.Button b;
+			switch( e.getButton() )
+			{
+				case MouseEvent.BUTTON1: b = MouseInput.Button.LEFT; break;
+				case MouseEvent.BUTTON2: b = MouseInput.Button.MIDDLE; break;
+				case MouseEvent.BUTTON3: b = MouseInput.Button.RIGHT; break;
+				default:
+					return;
+			}
+			queue.offer( InputEvent.Type.MOUSE_CLICKED , e.getX() , e.getY() , b.ordinal() );
+		}
+	};
+
+	private final KeyAdapter keyAdapter = new KeyAdapter()
+	{
+		@Override
+		public void keyPressed(KeyEvent e) {
+			queue.offer( InputEvent.Type.KEY_PRESSED , 0 , 0 , e.getKeyCode() );
+		}
+
+		@Override
+		public void keyReleased(KeyEvent e) {
+			queue.offer( InputEvent.Type.KEY_RELEASED , 0 , 0 , e.getKeyCode() );
+		}
+	};
+
+	public void attach(Component c)
+	{
+		c.addMouseListener( mouseAdapter );
+		c.addMouseMotionListener( mouseAdapter );
+		c.addKeyListener( keyAdapter );
+	}
+
+	public void detach(Component c)
+	{
+		c.removeMouseListener( mouseAdapter );
+		c.removeMouseMotionListener( mouseAdapter );
+		c.removeKeyListener( keyAdapter );
+	}
+
+	public void setRecorder(InputRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public void setViewMapping(InputEvent.IViewMapping viewMapping) {
+		this.viewMapping = viewMapping;
+	}
+
+	/**
+	 * Returns the number of events dropped because the main loop did not keep up.
+	 */
+	public long getDroppedEvents() {
+		return queue.getDroppedEvents();
+	}
+
+	@Override
+	public void dispatch(long tick, MouseInput mouse, KeyboardInput keyboard)
+	{
+		currentTick = tick;
+		currentMouse = mouse;
+		currentKeyboard = keyboard;
+		queue.drain( consumer );
+	}
+
+	private void deliver(InputEvent event)
+	{
+		event.tick = currentTick;
+		if ( event.isMouseEvent() && viewMapping != null )
+		{
+			viewMapping.viewToModel( event.x , event.y , tmp );
+			event.modelX = tmp.x;
+			event.modelY = tmp.y;
+		}
+		event.applyTo( currentMouse , currentKeyboard );
+		if ( recorder != null ) {
+			recorder.record( event );
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over ball positions.
+ *
+ * The grid is rebuilt from scratch once per physics step using a counting sort, so
+ * all balls of a cell end up next to each other in flat arrays. Cells are hashed
+ * into a power-of-two number of buckets, so the grid does not need to know the
+ * extents of the world.
+ *
+ * Balls are identified by their index into {@link WorldModel#getBalls()}. Balls
+ * added after the last rebuild are not visible until the next rebuild.
+ */
+public final class BallGrid
+{
+	private static final int MIN_BUCKETS = 64;
+
+	@FunctionalInterface
+	public interface IBallVisitor
+	{
+		/**
+		 * @return <code>false</code> to stop the query
+		 */
+		public boolean visit(int ballIndex,float x,float y);
+	}
+
+	private final float cellSize;
+	private final float invCellSize;
+
+	private int bucketMask = MIN_BUCKETS-1;
+	private int[] bucketStart = new int[ MIN_BUCKETS+1 ];
+	private int[] bucketFill = new int[ MIN_BUCKETS ];
+
+	// entries sorted by bucket
+	private int[] entryBall = new int[0]; // ball index, -1 if removed
+	private float[] entryX = new float[0];
+	private float[] entryY = new float[0];
+	private int entryCount;
+
+	// ball index -> entry, -1 if the ball is not part of the grid
+	private int[] ballEntry = new int[0];
+	private int[] ballBucket = new int[0];
+
+	public BallGrid(float cellSize)
+	{
+		if ( cellSize <= 0 ) {
+			throw new IllegalArgumentException("Cell size must be > 0");
+		}
+		this.cellSize = cellSize;
+		this.invCellSize = 1f/cellSize;
+	}
+
+	/**
+	 * Rebuilds the grid.
+	 *
+	 * @param positions ball positions (x0,y0,x1,y1,...)
+	 * @param count number of balls
+	 */
+	public void rebuild(float[] positions,int count)
+	{
+		final int bucketCount = Math.max( MIN_BUCKETS , Integer.highestOneBit( Math.max( 1 , count ) ) << 1 );
+		if ( bucketStart.length != bucketCount+1 ) {
+			bucketStart = new int[ bucketCount+1 ];
+			bucketFill = new int[ bucketCount ];
+		} else {
+			Arrays.fill( bucketStart , 0 );
+			Arrays.fill( bucketFill , 0 );
+		}
+		bucketMask = bucketCount-1;
+
+		if ( entryBall.length < count )
+		{
+			final int capacity = Math.max( count , entryBall.length*2 );
+			entryBall = new int[ capacity ];
+			entryX = new float[ capacity ];
+			entryY = new float[ capacity ];
+			ballEntry = new int[ capacity ];
+			ballBucket = new int[ capacity ];
+		}
+
+		// count balls per bucket
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final int bucket = bucket( cellX( positions[i*2] ) , cellY( positions[i*2+1] ) );
+			ballBucket[i] = bucket;
+			bucketStart[bucket+1]++;
+		}
+
+		// prefix sum
+		for ( int i = 1 ; i <= bucketCount ; i++ ) {
+			bucketStart[i] += bucketStart[i-1];
+		}
+
+		// scatter
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final int bucket = ballBucket[i];
+			final int entry = bucketStart[bucket] + bucketFill[bucket]++;
+			entryBall[entry] = i;
+			entryX[entry] = positions[i*2];
+			entryY[entry] = positions[i*2+1];
+			ballEntry[i] = entry;
+		}
+		entryCount = count;
+	}
+
+	/**
+	 * Updates the grid after a ball has been removed from the world
+	 * and the last ball got moved into its place.
+	 *
+	 * @param removedIndex index of the removed ball
+	 * @param lastIndex index the moved ball had before the removal
+	 */
+	public void remove(int removedIndex,int lastIndex)
+	{
+		if ( removedIndex >= entryCount ) { // neither ball is part of the grid
+			return;
+		}
+		if ( ballEntry[ removedIndex ] != -1 ) {
+			entryBall[ ballEntry[ removedIndex ] ] = -1;
+		}
+		if ( lastIndex != removedIndex )
+		{
+			final int movedEntry = lastIndex < entryCount ? ballEntry[ lastIndex ] : -1;
+			if ( movedEntry != -1 ) {
+				entryBall[ movedEntry ] = removedIndex;
+			}
+			ballEntry[ removedIndex ] = movedEntry;
+		}
+		// index will be re-used by the next ball that gets added
+		if ( lastIndex < entryCount ) {
+			ballEntry[ lastIndex ] = -1;
+		}
+	}
+
+	public void clear()
+	{
+		Arrays.fill( bucketStart , 0 );
+		entryCount = 0;
+	}
+
+	/**
+	 * Returns the number of balls as of the last rebuild.
+	 */
+	public int size() {
+		return entryCount;
+	}
+
+	/**
+	 * Visits all balls whose center is inside a rectangle.
+	 *
+	 * @return <code>false</code> if the visitor aborted the query
+	 */
+	public boolean visitRect(float minX,float minY,float maxX,float maxY,IBallVisitor visitor)
+	{
+		final int cx0 = cellX( minX );
+		final int cy0 = cellY( minY );
+		final int cx1 = cellX( maxX );
+		final int cy1 = cellY( maxY );
+
+		final long cells = (long) (cx1-cx0+1) * (cy1-cy0+1);
+		if ( cells > bucketMask+1 )
+		{
+			// covering more cells than there are buckets, cheaper to check everything
+			for ( int i = 0 ; i < entryCount ; i++ )
+			{
+				final float x = entryX[i];
+				final float y = entryY[i];
+				if ( entryBall[i] != -1 && x >= minX && x <= maxX && y >= minY && y <= maxY && ! visitor.visit( entryBall[i] , x , y ) ) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+		{
+			for ( int cx = cx0 ; cx <= cx1 ; cx++ )
+			{
+				final int bucket = bucket( cx , cy );
+				for ( int i = bucketStart[bucket] , end = bucketStart[bucket+1] ; i < end ; i++ )
+				{
+					final float x = entryX[i];
+					final float y = entryY[i];
+					// buckets are shared by multiple cells, only report balls that are actually in this cell
+					if ( entryBall[i] == -1 || cellX( x ) != cx || cellY( y ) != cy ) {
+						continue;
+					}
+					if ( x >= minX && x <= maxX && y >= minY && y <= maxY && ! visitor.visit( entryBall[i] , x , y ) ) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Visits all balls whose center is within a given distance of a point.
+	 *
+	 * @return <code>false</code> if the visitor aborted the query
+	 */
+	public boolean visitCircle(float centerX,float centerY,float radius,IBallVisitor visitor)
+	{
+		final float radius2 = radius*radius;
+		return visitRect( centerX - radius , centerY - radius , centerX + radius , centerY + radius , (ballIndex,x,y) ->
+		{
+			final float dx = x - centerX;
+			final float dy = y - centerY;
+			return dx*dx + dy*dy > radius2 || visitor.visit( ballIndex , x , y );
+		});
+	}
+
+	/**
+	 * Returns the index of the ball closest to a point.
+	 *
+	 * @param maxDistance max. distance to look at
+	 * @return ball index or -1 if there is no ball within <code>maxDistance</code>
+	 */
+	public int findNearest(float x,float y,float maxDistance)
+	{
+		final int cx = cellX( x );
+		final int cy = cellY( y );
+
+		int bestBall = -1;
+		float bestDst2 = maxDistance*maxDistance;
+
+		// search rings of cells around the point until no closer ball can possibly be found
+		final int maxRing = (int) Math.min( Math.ceil( maxDistance * invCellSize ) + 1 , Math.sqrt( bucketMask+1 ) );
+		for ( int ring = 0 ; ring <= maxRing ; ring++ )
+		{
+			for ( int dy = -ring ; dy <= ring ; dy++ )
+			{
+				final boolean isEdgeRow = dy == -ring || dy == ring;
+				for ( int dx = -ring ; dx <= ring ; dx += isEdgeRow ? 1 : 2*ring )
+				{
+					final int bucket = bucket( cx+dx , cy+dy );
+					for ( int i = bucketStart[bucket] , end = bucketStart[bucket+1] ; i < end ; i++ )
+					{
+						if ( entryBall[i] == -1 || cellX( entryX[i] ) != cx+dx || cellY( entryY[i] ) != cy+dy ) {
+							continue;
+						}
+						final float ddx = entryX[i] - x;
+						final float ddy = entryY[i] - y;
+						final float dst2 = ddx*ddx + ddy*ddy;
+						if ( dst2 <= bestDst2 ) {
+							bestDst2 = dst2;
+							bestBall = entryBall[i];
+						}
+					}
+				}
+			}
+			// all cells in the next ring are at least ring*cellSize away
+			final float minNextDst = ring*cellSize;
+			if ( bestBall != -1 && bestDst2 <= minNextDst*minNextDst ) {
+				return bestBall;
+			}
+			if ( minNextDst > maxDistance ) {
+				return bestBall;
+			}
+		}
+
+		// search radius exceeded the number of buckets, fall back to checking everything
+		for ( int i = 0 ; i < entryCount ; i++ )
+		{
+			if ( entryBall[i] == -1 ) {
+				continue;
+			}
+			final float ddx = entryX[i] - x;
+			final float ddy = entryY[i] - y;
+			final float dst2 = ddx*ddx + ddy*ddy;
+			if ( dst2 <= bestDst2 ) {
+				bestDst2 = dst2;
+				bestBall = entryBall[i];
+			}
+		}
+		return bestBall;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	private int cellX(float x) {
+		return (int) Math.floor( x * invCellSize );
+	}
+
+	private int cellY(float y) {
+		return (int) Math.floor( y * invCellSize );
+	}
+
+	private int bucket(int cellX,int cellY) {
+		return ( cellX * 73856093 ^ cellY * 19349663 ) & bucketMask;
+	}
+}
@@ -0,0 +1,152 @@
+package de.codesourcery.inversek;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws balls by stamping pre-rendered sprites.
+ *
+ * One sprite gets rasterized per on-screen ball diameter (in pixels) and is re-used until the view scale changes.
+ * Balls outside the view rectangle (or outside the region being redrawn) are skipped and balls smaller than {@link #MIN_SPRITE_DIAMETER} pixels are drawn
+ * as plain rectangles without antialiasing.
+ */
+final class BallRenderer
+{
+	// balls smaller than this are drawn as plain rectangles
+	static final int MIN_SPRITE_DIAMETER = 4;
+
+	// balls larger than this are drawn without sprites
+	private static final int MAX_SPRITE_DIAMETER = 256;
+
+	// size of the cross-hair drawn on top of each ball
+	private static final int CROSSHAIR_SIZE = 5;
+
+	private final Color color;
+
+	// sprites indexed by diameter along the X axis
+	private final BufferedImage[] sprites = new BufferedImage[ MAX_SPRITE_DIAMETER+1 ];
+	private GraphicsConfiguration spriteConfig;
+
+	private float scaleX = 1;
+	private float scaleY = 1;
+
+	private int lastVisibleCount;
+
+	public BallRenderer(Color color)
+	{
+		if ( color == null ) {
+			throw new IllegalArgumentException("color must not be NULL");
+		}
+		this.color = color;
+	}
+
+	/**
+	 * Sets the view scale, discards all sprites if it changed.
+	 */
+	public void setScale(float scaleX,float scaleY)
+	{
+		if ( scaleX != this.scaleX || scaleY != this.scaleY )
+		{
+			this.scaleX = scaleX;
+			this.scaleY = scaleY;
+			Arrays.fill( sprites , null );
+		}
+	}
+
+	/**
+	 * Renders balls.
+	 *
+	 * @param viewPositions ball centers in view coordinates as (x,y) tuples
+	 * @param radii ball radii in model coordinates
+	 * @param config graphics configuration to create sprites for, may be <code>null</code>
+	 * @param region region being redrawn, balls outside of it are skipped. <code>null</code> if the whole view gets redrawn
+	 */
+	public void render(Graphics2D graphics,GraphicsConfiguration config,float[] viewPositions,float[] radii,int ballCount,
+			int viewWidth,int viewHeight,DirtyRegion region)
+	{
+		if ( config != spriteConfig )
+		{
+			spriteConfig = config;
+			Arrays.fill( sprites , null );
+		}
+
+		graphics.setColor( color );
+
+		int visible = 0;
+		for ( int i = 0 ; i < ballCount ; i++ )
+		{
+			final float centerX = viewPositions[i*2];
+			final float centerY = viewPositions[i*2+1];
+			final float radiusX = radii[i] * scaleX;
+			final float radiusY = radii[i] * scaleY;
+
+			if ( centerX + radiusX < 0 || centerX - radiusX > viewWidth || centerY + radiusY < 0 || centerY - radiusY > viewHeight ) {
+				continue;
+			}
+			// the cross-hair may be larger than the ball
+			final float extentX = Math.max( radiusX , CROSSHAIR_SIZE );
+			final float extentY = Math.max( radiusY , CROSSHAIR_SIZE );
+			if ( region != null && ! region.intersects( centerX - extentX , centerY - extentY , centerX + extentX , centerY + extentY ) ) {
+				continue;
+			}
+			visible++;
+
+			final int diameter = (int) (2*radiusX + 0.5f);
+			if ( diameter < MIN_SPRITE_DIAMETER )
+			{
+				final int height = Math.max( 1 , (int) (2*radiusY + 0.5f) );
+				graphics.fillRect( (int) (centerX - radiusX) , (int) (centerY - radiusY) , Math.max( 1 , diameter ) , height );
+			}
+			else if ( diameter > MAX_SPRITE_DIAMETER )
+			{
+				graphics.fillOval( (int) (centerX - radiusX) , (int) (centerY - radiusY) , diameter , (int) (2*radiusY + 0.5f) );
+			}
+			else
+			{
+				final BufferedImage sprite = getSprite( diameter );
+				graphics.drawImage( sprite , (int) (centerX - sprite.getWidth()/2f) , (int) (centerY - sprite.getHeight()/2f) , null );
+			}
+		}
+		lastVisibleCount = visible;
+	}
+
+	private BufferedImage getSprite(int diameter)
+	{
+		BufferedImage sprite = sprites[ diameter ];
+		if ( sprite == null )
+		{
+			final int height = Math.max( 1 , (int) (diameter * scaleY / scaleX + 0.5f) );
+			final int size = Math.max( Math.max( diameter , height ) , 2*CROSSHAIR_SIZE+1 ) | 1; // odd size so the cross-hair is centered
+
+			sprite = spriteConfig != null ? spriteConfig.createCompatibleImage( size , size , Transparency.TRANSLUCENT ) :
+				new BufferedImage( size , size , BufferedImage.TYPE_INT_ARGB );
+
+			final Graphics2D g = sprite.createGraphics();
+			g.setRenderingHint( RenderingHints.KEY_ANTIALIASING , RenderingHints.VALUE_ANTIALIAS_ON );
+			g.setRenderingHint( RenderingHints.KEY_RENDERING , RenderingHints.VALUE_RENDER_QUALITY );
+			g.setColor( color );
+			g.fillOval( (size - diameter)/2 , (size - height)/2 , diameter , height );
+
+			final int center = size/2;
+			g.setColor( Color.BLACK );
+			g.drawLine( center - CROSSHAIR_SIZE , center , center + CROSSHAIR_SIZE , center );
+			g.drawLine( center , center - CROSSHAIR_SIZE , center , center + CROSSHAIR_SIZE );
+			g.dispose();
+
+			sprites[ diameter ] = sprite;
+		}
+		return sprite;
+	}
+
+	/**
+	 * Returns the number of balls drawn during the last call to {@link #render}.
+	 */
+	public int getLastVisibleCount() {
+		return lastVisibleCount;
+	}
+}
@@ -27,6 +27,7 @@ public class Bone extends Node<com.badlogic.gdx.physics.box2d.Body>
 		this.length = that.length;
 		this.jointA = jointA;
 		this.jointB = jointB;		
+		copyPhysicsState( that );
 	}
 
 	public Bone createCopy(Joint jointA, Joint jointB) {
@@ -37,6 +38,18 @@ public class Bone extends Node<com.badlogic.gdx.physics.box2d.Body>
 		return start.cpy().add( end ).scl( 0.5f );
 	}
 	
+	public float getBox2dX() {
+		return hasPhysicsState() ? getPhysicsState().getX( getPhysicsSlot() ) : getBody().getPosition().x;
+	}
+	
+	public float getBox2dY() {
+		return hasPhysicsState() ? getPhysicsState().getY( getPhysicsSlot() ) : getBody().getPosition().y;
+	}
+	
+	public float getBox2dAngle() {
+		return hasPhysicsState() ? getPhysicsState().getAngle( getPhysicsSlot() ) : getBody().getAngle();
+	}
+	
 	public Vector2 getPositioningEnd() {
 		return end;
 	}
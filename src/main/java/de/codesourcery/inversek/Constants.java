@@ -9,6 +9,9 @@ public class Constants {
 	// Careful, all values are in meters
 	public static final float BALL_RADIUS = FACTOR*0.05f; // 5 cm
 	
+	// cell size of spatial index over balls
+	public static final float BALL_GRID_CELL_SIZE = BALL_RADIUS*5;
+	
 	// bones
 	public static final float BONE_THICKNESS = FACTOR*0.05f; // 5 cm
 	public static final float BONE_BASE_LENGTH = FACTOR*0.4f; // 40 cm
@@ -39,4 +42,13 @@ public class Constants {
 	public static final int POSITION_ITERATIONS = 3; // 2
 	
 	public static final float DENSITY = 1f;
+	
+	// balls leaving these bounds get removed from the world
+	public static final float WORLD_MIN_X = -50;
+	public static final float WORLD_MAX_X = 50;
+	public static final float WORLD_MIN_Y = -5;
+	public static final float WORLD_MAX_Y = 50;
+	
+	// max. number of balls removed per physics step
+	public static final int MAX_BALLS_RETIRED_PER_STEP = 64;
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Contact;
+
+import de.codesourcery.inversek.WorldModel.ItemType;
+
+/**
+ * Routes Box2D contacts to {@link IContactCallback}s that subscribed either to a specific pair of {@link ItemType}s
+ * or to specific bodies.
+ *
+ * Each body carries its {@link ItemType} as user data, so looking up whether anybody is interested in
+ * a contact boils down to a single bit test against a precomputed mask of subscribed
+ * type pairs. Contacts nobody subscribed to (for example balls hitting the floor) are not even recorded.
+ *
+ * Contacts reported by Box2D during a step only get recorded into a {@link ContactEventQueue}, callbacks
+ * are invoked from {@link #deliverEvents()} once the step has finished.
+ */
+public final class ContactDispatcher
+{
+	private static final int TYPE_COUNT = ItemType.values().length;
+
+	private static final IContactCallback[] EMPTY = new IContactCallback[0];
+
+	static {
+		if ( TYPE_COUNT*TYPE_COUNT > 32 ) {
+			throw new RuntimeException("Too many item types, pair mask needs to be widened");
+		}
+	}
+
+	// subscribers by pair index (typeA*TYPE_COUNT+typeB), both orderings are populated.
+	// Arrays are copy-on-write so callbacks may (un-)subscribe while a contact is being dispatched
+	private final IContactCallback[][] pairSubscribers = new IContactCallback[ TYPE_COUNT*TYPE_COUNT ][];
+
+	// bit N is set if pairSubscribers[N] is not empty
+	private int subscribedPairs;
+
+	private final Map<Body,IContactCallback[]> bodySubscribers = new IdentityHashMap<>();
+
+	// bit N is set if there is at least one subscribed body with type index N
+	private int subscribedBodyTypes;
+
+	private IContactCallback[] toRemove = new IContactCallback[4];
+	private int toRemoveCount;
+
+	private final ContactEventQueue queue = new ContactEventQueue();
+	private final ContactEventQueue.IEventConsumer eventConsumer = this::dispatch;
+
+	public ContactDispatcher()
+	{
+		Arrays.fill( pairSubscribers , EMPTY );
+	}
+
+	private static int pairIndex(int typeA,int typeB) {
+		return typeA*TYPE_COUNT+typeB;
+	}
+
+	/**
+	 * Subscribe to all contacts between two item types.
+	 */
+	public void subscribe(IContactCallback cb,ItemType typeA,ItemType typeB)
+	{
+		if (cb == null) {
+			throw new IllegalArgumentException("callback must not be NULL");
+		}
+		if ( typeA == null || typeB == null ) {
+			throw new IllegalArgumentException("types must not be NULL");
+		}
+		addPairSubscriber( cb , pairIndex( typeA.index , typeB.index ) );
+		if ( typeA != typeB ) {
+			addPairSubscriber( cb , pairIndex( typeB.index , typeA.index ) );
+		}
+	}
+
+	/**
+	 * Subscribe to all contacts, regardless of type.
+	 */
+	public void subscribeAll(IContactCallback cb)
+	{
+		for ( ItemType a : ItemType.values() )
+		{
+			for ( ItemType b : ItemType.values() )
+			{
+				if ( a.index <= b.index ) {
+					subscribe( cb , a , b );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Subscribe to all contacts involving a given body.
+	 */
+	public void subscribe(IContactCallback cb,Body body)
+	{
+		if (cb == null) {
+			throw new IllegalArgumentException("callback must not be NULL");
+		}
+		if (body == null) {
+			throw new IllegalArgumentException("body must not be NULL");
+		}
+		final IContactCallback[] existing = bodySubscribers.get( body );
+		bodySubscribers.put( body , append( existing == null ? EMPTY : existing , cb ) );
+		subscribedBodyTypes |= 1 << WorldModel.getItemType( body ).index;
+	}
+
+	/**
+	 * Removes a callback from all pair and body subscriptions.
+	 */
+	public void unsubscribe(IContactCallback cb)
+	{
+		for ( int i = 0 ; i < pairSubscribers.length ; i++ )
+		{
+			pairSubscribers[i] = remove( pairSubscribers[i] , cb );
+			if ( pairSubscribers[i].length == 0 ) {
+				subscribedPairs &= ~(1 << i);
+			}
+		}
+
+		bodySubscribers.replaceAll( (body,callbacks) -> remove( callbacks , cb ) );
+		bodySubscribers.values().removeIf( callbacks -> callbacks.length == 0 );
+
+		subscribedBodyTypes = 0;
+		for ( Body body : bodySubscribers.keySet() ) {
+			subscribedBodyTypes |= 1 << WorldModel.getItemType( body ).index;
+		}
+	}
+
+	public boolean hasSubscribers() {
+		return subscribedPairs != 0 || ! bodySubscribers.isEmpty();
+	}
+
+	/**
+	 * Returns whether anybody subscribed to contacts between the two bodies.
+	 */
+	public boolean isSubscribed(Body bodyA,Body bodyB)
+	{
+		final int typeA = WorldModel.getItemType( bodyA ).index;
+		final int typeB = WorldModel.getItemType( bodyB ).index;
+		if ( ( subscribedPairs & (1 << pairIndex( typeA , typeB ) ) ) != 0 ) {
+			return true;
+		}
+		final int bodyTypeMask = (1 << typeA) | (1 << typeB);
+		if ( ( subscribedBodyTypes & bodyTypeMask ) == 0 ) {
+			return false;
+		}
+		return bodySubscribers.containsKey( bodyA ) || bodySubscribers.containsKey( bodyB );
+	}
+
+	/**
+	 * Records a begin/end of contact reported by Box2D, if anybody subscribed to it.
+	 */
+	public void record(Contact contact,boolean begin)
+	{
+		if ( isSubscribed( contact.getFixtureA().getBody() , contact.getFixtureB().getBody() ) ) {
+			queue.record( contact , begin );
+		}
+	}
+
+	/**
+	 * Delivers all events recorded since the last invocation of this method.
+	 *
+	 * Must not be called while the world is stepping.
+	 */
+	public void deliverEvents()
+	{
+		queue.drain( eventConsumer );
+	}
+
+	public int getPendingEventCount() {
+		return queue.size();
+	}
+
+	private void dispatch(ContactEvent contact)
+	{
+		final boolean begin = contact.isBeginContact();
+		final Body bodyA = contact.getBodyA();
+		final Body bodyB = contact.getBodyB();
+
+		// bodies may have been destroyed since the event got recorded, use the captured types
+		final int typeA = contact.getItemTypeA().index;
+		final int typeB = contact.getItemTypeB().index;
+
+		final int pair = pairIndex( typeA , typeB );
+		if ( ( subscribedPairs & (1 << pair) ) != 0 ) {
+			invoke( pairSubscribers[pair] , contact , begin );
+		}
+
+		final int bodyTypeMask = (1 << typeA) | (1 << typeB);
+		if ( ( subscribedBodyTypes & bodyTypeMask ) != 0 )
+		{
+			final IContactCallback[] subscribersA = bodySubscribers.get( bodyA );
+			if ( subscribersA != null ) {
+				invoke( subscribersA , contact , begin );
+			}
+			final IContactCallback[] subscribersB = bodySubscribers.get( bodyB );
+			if ( subscribersB != null && subscribersB != subscribersA ) {
+				invoke( subscribersB , contact , begin );
+			}
+		}
+
+		if ( toRemoveCount > 0 )
+		{
+			for ( int i = 0 ; i < toRemoveCount ; i++ )
+			{
+				unsubscribe( toRemove[i] );
+				toRemove[i] = null;
+			}
+			toRemoveCount = 0;
+		}
+	}
+
+	private void invoke(IContactCallback[] callbacks,ContactEvent contact,boolean begin)
+	{
+		for ( int i = 0 , len = callbacks.length ; i < len ; i++ )
+		{
+			final IContactCallback cb = callbacks[i];
+			final boolean keep = begin ? cb.beginContact( contact ) : cb.endContact( contact );
+			if ( ! keep )
+			{
+				if ( toRemoveCount == toRemove.length ) {
+					toRemove = Arrays.copyOf( toRemove , toRemove.length*2 );
+				}
+				toRemove[ toRemoveCount++ ] = cb;
+			}
+		}
+	}
+
+	private void addPairSubscriber(IContactCallback cb,int pair)
+	{
+		pairSubscribers[pair] = append( pairSubscribers[pair] , cb );
+		subscribedPairs |= 1 << pair;
+	}
+
+	private static IContactCallback[] append(IContactCallback[] array,IContactCallback cb)
+	{
+		for ( IContactCallback existing : array ) {
+			if ( existing == cb ) {
+				return array;
+			}
+		}
+		final IContactCallback[] result = Arrays.copyOf( array , array.length+1 );
+		result[ array.length ] = cb;
+		return result;
+	}
+
+	private static IContactCallback[] remove(IContactCallback[] array,IContactCallback cb)
+	{
+		for ( int i = 0 ; i < array.length ; i++ )
+		{
+			if ( array[i] == cb )
+			{
+				if ( array.length == 1 ) {
+					return EMPTY;
+				}
+				final IContactCallback[] result = new IContactCallback[ array.length-1 ];
+				System.arraycopy( array , 0 , result , 0 , i );
+				System.arraycopy( array , i+1 , result , i , array.length-i-1 );
+				return result;
+			}
+		}
+		return array;
+	}
+}
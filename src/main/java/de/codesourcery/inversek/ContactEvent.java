@@ -0,0 +1,114 @@
+package de.codesourcery.inversek;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+
+import de.codesourcery.inversek.WorldModel.ItemType;
+
+/**
+ * A begin/end contact event as recorded during a physics step.
+ *
+ * Box2D re-uses its {@link com.badlogic.gdx.physics.box2d.Contact} instances, so contacts
+ * get copied into a {@link ContactEventQueue} while the world is stepping and are
+ * handed to {@link IContactCallback}s only after the step completed.
+ *
+ * Instances are flyweights that get re-populated for every event, callbacks must not hold
+ * on to them. Fixtures are not exposed since they may have been destroyed (and re-used by libgdx)
+ * by the time the event gets delivered, their user data is captured instead. For the same reason the item
+ * types of both bodies are captured as well, a destroyed body no longer carries its type as user data.
+ */
+public final class ContactEvent
+{
+	private Body bodyA;
+	private Body bodyB;
+	private ItemType typeA;
+	private ItemType typeB;
+	private Object fixtureUserDataA;
+	private Object fixtureUserDataB;
+	private boolean begin;
+	private boolean touching;
+	private final Vector2 normal = new Vector2();
+
+	void populate(boolean begin,Body bodyA,Body bodyB,ItemType typeA,ItemType typeB,Object fixtureUserDataA,Object fixtureUserDataB,boolean touching,float normalX,float normalY)
+	{
+		this.begin = begin;
+		this.bodyA = bodyA;
+		this.bodyB = bodyB;
+		this.typeA = typeA;
+		this.typeB = typeB;
+		this.fixtureUserDataA = fixtureUserDataA;
+		this.fixtureUserDataB = fixtureUserDataB;
+		this.touching = touching;
+		this.normal.set( normalX , normalY );
+	}
+
+	void clear()
+	{
+		this.bodyA = null;
+		this.bodyB = null;
+		this.typeA = null;
+		this.typeB = null;
+		this.fixtureUserDataA = null;
+		this.fixtureUserDataB = null;
+	}
+
+	public boolean isBeginContact() {
+		return begin;
+	}
+
+	public boolean isEndContact() {
+		return ! begin;
+	}
+
+	/**
+	 * Returns the user data fixture A had when the contact got recorded.
+	 */
+	public Object getFixtureUserDataA() {
+		return fixtureUserDataA;
+	}
+
+	/**
+	 * Returns the user data fixture B had when the contact got recorded.
+	 */
+	public Object getFixtureUserDataB() {
+		return fixtureUserDataB;
+	}
+
+	public Body getBodyA() {
+		return bodyA;
+	}
+
+	public Body getBodyB() {
+		return bodyB;
+	}
+
+	/**
+	 * Returns the item type body A had when the contact got recorded.
+	 */
+	public ItemType getItemTypeA() {
+		return typeA;
+	}
+
+	/**
+	 * Returns the item type body B had when the contact got recorded.
+	 */
+	public ItemType getItemTypeB() {
+		return typeB;
+	}
+
+	public boolean isTouching() {
+		return touching;
+	}
+
+	/**
+	 * Returns the world manifold normal at the time the contact got recorded.
+	 */
+	public Vector2 getNormal() {
+		return normal;
+	}
+
+	@Override
+	public String toString() {
+		return ( begin ? "BEGIN" : "END" )+" contact "+fixtureUserDataA+" <-> "+fixtureUserDataB+( touching ? " (touching)" : "" );
+	}
+}
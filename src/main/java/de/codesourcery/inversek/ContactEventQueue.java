@@ -0,0 +1,402 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Contact;
+import com.badlogic.gdx.physics.box2d.Fixture;
+
+import de.codesourcery.inversek.WorldModel.ItemType;
+
+/**
+ * Ring buffer of contact events recorded while the world is stepping.
+ *
+ * All storage is preallocated and only grows if a single step produces more
+ * events than the buffer can hold. Events are drained in one batch after the step.
+ *
+ * Box2D reports contacts per pair of fixtures, the queue collapses them per pair of bodies: it keeps track
+ * of how many fixture pairs of each body pair are touching and delivers at most one event per body pair
+ * and batch, a begin when the bodies started touching and an end when they stopped touching. A body made
+ * of several fixtures (like the gripper's base plate) touching a ball thus produces a single event, and
+ * a fixture pair that stops touching while another one of the same bodies starts produces none.
+ * An end of contact for a body pair not known to be touching (because it started touching before
+ * anybody subscribed to it) is delivered as-is.
+ *
+ * Bodies, their item types and fixture user data are captured when the event gets recorded. Destroying
+ * a body clears its user data and returns the body and its fixtures to libgdx's object pool, so none of
+ * them gets dereferenced when the event is delivered. Bodies are only used as identity keys, Box2D reports
+ * the end of all contacts of a body when it gets destroyed so no body pair stays tracked once one of its
+ * bodies is gone.
+ */
+public final class ContactEventQueue
+{
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private static final int MIN_PAIR_CAPACITY = 64;
+
+	private static final byte SLOT_FREE = 0;
+	private static final byte SLOT_USED = 1;
+	private static final byte SLOT_DELETED = 2;
+
+	private boolean[] begin;
+	private boolean[] touching;
+	private Body[] bodiesA;
+	private Body[] bodiesB;
+	private ItemType[] typesA;
+	private ItemType[] typesB;
+	private Object[] userDataA;
+	private Object[] userDataB;
+	private float[] normals;
+	// slot in the pair table, assigned to all events of the current batch before they get delivered
+	private int[] pairSlots;
+
+	private int readPtr;
+	private int size;
+
+	// open-addressing hash map from (unordered) body pair to the number of touching fixture pairs
+	private Body[] pairA;
+	private Body[] pairB;
+	private byte[] pairState;
+	private int[] pairCount;
+	private int pairsUsed;
+	private int pairsDeleted;
+
+	// state of a body pair within the current batch, only valid if the stamp matches the current batch
+	private int[] pairStamp;
+	private int[] pairCountBefore;
+	private boolean[] pairUnknownEnd;
+	private boolean[] pairDelivered;
+	private int batchStamp;
+
+	// pair table slots touched by the current batch
+	private int[] batchSlots = new int[ DEFAULT_CAPACITY ];
+	private int batchSlotCount;
+
+	private final ContactEvent event = new ContactEvent();
+
+	private long collapsedEvents;
+
+	@FunctionalInterface
+	public interface IEventConsumer
+	{
+		public void consume(ContactEvent event);
+	}
+
+	public ContactEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ContactEventQueue(int capacity)
+	{
+		if ( capacity < 1 ) {
+			throw new IllegalArgumentException("Capacity must be >= 1");
+		}
+		allocate( Integer.highestOneBit( Math.max( 1 , capacity-1 ) ) << 1 );
+		allocatePairs( MIN_PAIR_CAPACITY );
+	}
+
+	private void allocate(int capacity)
+	{
+		begin = new boolean[capacity];
+		touching = new boolean[capacity];
+		bodiesA = new Body[capacity];
+		bodiesB = new Body[capacity];
+		typesA = new ItemType[capacity];
+		typesB = new ItemType[capacity];
+		userDataA = new Object[capacity];
+		userDataB = new Object[capacity];
+		normals = new float[capacity*2];
+		pairSlots = new int[capacity];
+	}
+
+	private void allocatePairs(int capacity)
+	{
+		pairA = new Body[capacity];
+		pairB = new Body[capacity];
+		pairState = new byte[capacity];
+		pairCount = new int[capacity];
+		pairStamp = new int[capacity];
+		pairCountBefore = new int[capacity];
+		pairUnknownEnd = new boolean[capacity];
+		pairDelivered = new boolean[capacity];
+		pairsUsed = 0;
+		pairsDeleted = 0;
+		batchStamp = 0;
+	}
+
+	private void grow()
+	{
+		final int oldCapacity = begin.length;
+		final boolean[] oldBegin = begin;
+		final boolean[] oldTouching = touching;
+		final Body[] oldBodiesA = bodiesA;
+		final Body[] oldBodiesB = bodiesB;
+		final ItemType[] oldTypesA = typesA;
+		final ItemType[] oldTypesB = typesB;
+		final Object[] oldUserDataA = userDataA;
+		final Object[] oldUserDataB = userDataB;
+		final float[] oldNormals = normals;
+		final int[] oldPairSlots = pairSlots;
+
+		allocate( oldCapacity*2 );
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			final int src = (readPtr+i) & (oldCapacity-1);
+			begin[i] = oldBegin[src];
+			touching[i] = oldTouching[src];
+			bodiesA[i] = oldBodiesA[src];
+			bodiesB[i] = oldBodiesB[src];
+			typesA[i] = oldTypesA[src];
+			typesB[i] = oldTypesB[src];
+			userDataA[i] = oldUserDataA[src];
+			userDataB[i] = oldUserDataB[src];
+			normals[i*2] = oldNormals[src*2];
+			normals[i*2+1] = oldNormals[src*2+1];
+			pairSlots[i] = oldPairSlots[src];
+		}
+		readPtr = 0;
+	}
+
+	/**
+	 * Records a contact event.
+	 *
+	 * Must only be called from within Box2D's contact listener since the
+	 * contact instance gets re-used by Box2D afterwards.
+	 */
+	public void record(Contact contact,boolean isBegin)
+	{
+		if ( size == begin.length ) {
+			grow();
+		}
+		final int idx = (readPtr+size) & (begin.length-1);
+		begin[idx] = isBegin;
+		final Fixture a = contact.getFixtureA();
+		final Fixture b = contact.getFixtureB();
+		bodiesA[idx] = a.getBody();
+		bodiesB[idx] = b.getBody();
+		typesA[idx] = WorldModel.getItemType( bodiesA[idx] );
+		typesB[idx] = WorldModel.getItemType( bodiesB[idx] );
+		userDataA[idx] = a.getUserData();
+		userDataB[idx] = b.getUserData();
+		final boolean isTouching = contact.isTouching();
+		touching[idx] = isTouching;
+		if ( isBegin && isTouching )
+		{
+			final Vector2 normal = contact.getWorldManifold().getNormal();
+			normals[idx*2] = normal.x;
+			normals[idx*2+1] = normal.y;
+		} else {
+			normals[idx*2] = 0;
+			normals[idx*2+1] = 0;
+		}
+		size++;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of events that did not get delivered because they did not change
+	 * whether their pair of bodies is touching.
+	 */
+	public long getCollapsedEvents() {
+		return collapsedEvents;
+	}
+
+	/**
+	 * Hands all queued events to a consumer and empties the queue.
+	 *
+	 * Events recorded while draining (because a consumer destroyed a body and Box2D reported
+	 * the resulting end of contacts) will be delivered as part of the same batch, after all
+	 * events that were queued before.
+	 */
+	public void drain(IEventConsumer consumer)
+	{
+		while ( size > 0 )
+		{
+			final int count = size;
+			countTouchingPairs( count );
+
+			// deliver the first event of each body pair that matches the pair's net change
+			for ( int i = 0 ; i < count ; i++ )
+			{
+				final int idx = readPtr;
+				readPtr = (readPtr+1) & (begin.length-1);
+				size--;
+
+				final int slot = pairSlots[idx];
+				final boolean isBegin = begin[idx];
+				final boolean deliver;
+				if ( pairDelivered[slot] ) {
+					deliver = false;
+				}
+				else
+				{
+					final int before = pairCountBefore[slot];
+					final int after = pairCount[slot];
+					if ( isBegin ) {
+						deliver = before == 0 && after > 0;
+					} else {
+						deliver = ( before > 0 && after == 0 ) || ( before == 0 && after == 0 && pairUnknownEnd[slot] );
+					}
+				}
+
+				final Body bodyA = bodiesA[idx];
+				final Body bodyB = bodiesB[idx];
+				final ItemType typeA = typesA[idx];
+				final ItemType typeB = typesB[idx];
+				final Object dataA = userDataA[idx];
+				final Object dataB = userDataB[idx];
+				bodiesA[idx] = null;
+				bodiesB[idx] = null;
+				typesA[idx] = null;
+				typesB[idx] = null;
+				userDataA[idx] = null;
+				userDataB[idx] = null;
+
+				if ( ! deliver )
+				{
+					collapsedEvents++;
+					continue;
+				}
+				pairDelivered[slot] = true;
+				event.populate( isBegin , bodyA , bodyB , typeA , typeB , dataA , dataB , touching[idx] , normals[idx*2] , normals[idx*2+1] );
+				consumer.consume( event );
+			}
+			forgetSeparatedPairs();
+		}
+		event.clear();
+		readPtr = 0;
+	}
+
+	/**
+	 * Applies the first <code>count</code> queued events to the touching fixture pair counts of their body pairs,
+	 * remembering each pair's count before the batch.
+	 */
+	private void countTouchingPairs(int count)
+	{
+		// make sure the table does not need to be re-hashed while slots are being handed out
+		if ( ( pairsUsed + pairsDeleted + count )*2 > pairA.length ) {
+			rehash( count );
+		}
+		if ( ++batchStamp == 0 ) // wrap-around, clear stale stamps
+		{
+			Arrays.fill( pairStamp , 0 );
+			batchStamp = 1;
+		}
+		if ( batchSlots.length < count ) {
+			batchSlots = new int[ Math.max( count , batchSlots.length*2 ) ];
+		}
+		batchSlotCount = 0;
+
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final int idx = (readPtr+i) & (begin.length-1);
+			final int slot = findOrAddPair( bodiesA[idx] , bodiesB[idx] );
+			pairSlots[idx] = slot;
+			if ( pairStamp[slot] != batchStamp )
+			{
+				pairStamp[slot] = batchStamp;
+				pairCountBefore[slot] = pairCount[slot];
+				pairUnknownEnd[slot] = false;
+				pairDelivered[slot] = false;
+				batchSlots[ batchSlotCount++ ] = slot;
+			}
+			if ( begin[idx] ) {
+				pairCount[slot]++;
+			} else if ( pairCount[slot] > 0 ) {
+				pairCount[slot]--;
+			} else {
+				pairUnknownEnd[slot] = true;
+			}
+		}
+	}
+
+	/**
+	 * Removes all body pairs of the current batch that are no longer touching.
+	 */
+	private void forgetSeparatedPairs()
+	{
+		for ( int i = 0 ; i < batchSlotCount ; i++ )
+		{
+			final int slot = batchSlots[i];
+			if ( pairCount[slot] == 0 && pairState[slot] == SLOT_USED )
+			{
+				pairState[slot] = SLOT_DELETED;
+				pairA[slot] = null;
+				pairB[slot] = null;
+				pairsUsed--;
+				pairsDeleted++;
+			}
+		}
+		batchSlotCount = 0;
+	}
+
+	private static int hash(Body a,Body b)
+	{
+		// order-independent
+		final int h = ( System.identityHashCode( a ) + System.identityHashCode( b ) ) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int findOrAddPair(Body a,Body b)
+	{
+		final int mask = pairA.length-1;
+		int slot = hash( a , b ) & mask;
+		int firstDeleted = -1;
+		while ( pairState[slot] != SLOT_FREE )
+		{
+			if ( pairState[slot] == SLOT_USED )
+			{
+				if ( ( pairA[slot] == a && pairB[slot] == b ) || ( pairA[slot] == b && pairB[slot] == a ) ) {
+					return slot;
+				}
+			}
+			else if ( firstDeleted == -1 ) {
+				firstDeleted = slot;
+			}
+			slot = (slot+1) & mask;
+		}
+		if ( firstDeleted != -1 )
+		{
+			slot = firstDeleted;
+			pairsDeleted--;
+		}
+		pairState[slot] = SLOT_USED;
+		pairA[slot] = a;
+		pairB[slot] = b;
+		pairCount[slot] = 0;
+		pairStamp[slot] = 0;
+		pairsUsed++;
+		return slot;
+	}
+
+	/**
+	 * Re-builds the pair table without deleted slots and with room for <code>additionalPairs</code> more pairs.
+	 */
+	private void rehash(int additionalPairs)
+	{
+		final Body[] oldA = pairA;
+		final Body[] oldB = pairB;
+		final byte[] oldState = pairState;
+		final int[] oldCount = pairCount;
+
+		int capacity = MIN_PAIR_CAPACITY;
+		while ( capacity < ( pairsUsed + additionalPairs )*4 ) {
+			capacity <<= 1;
+		}
+		allocatePairs( capacity );
+		for ( int i = 0 ; i < oldA.length ; i++ )
+		{
+			if ( oldState[i] == SLOT_USED ) {
+				pairCount[ findOrAddPair( oldA[i] , oldB[i] ) ] = oldCount[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package de.codesourcery.inversek;
+
+import java.awt.Rectangle;
+
+/**
+ * Set of screen-space rectangles that need to be redrawn.
+ *
+ * Overlapping or touching rectangles get merged as they are added. Once there are more than {@link #MAX_RECTANGLES}
+ * rectangles or they cover more than half of the view, the region collapses into a single rectangle covering
+ * the whole view. Adding rectangles does not allocate memory.
+ */
+final class DirtyRegion
+{
+	private static final int MAX_RECTANGLES = 16;
+
+	private final Rectangle[] rectangles = new Rectangle[ MAX_RECTANGLES ];
+	private int count;
+	private int area;
+	private boolean full;
+
+	private int viewWidth;
+	private int viewHeight;
+
+	private final Rectangle tmp = new Rectangle();
+
+	public DirtyRegion()
+	{
+		for ( int i = 0 ; i < rectangles.length ; i++ ) {
+			rectangles[i] = new Rectangle();
+		}
+	}
+
+	/**
+	 * Removes all rectangles and sets the size of the view rectangles get clipped to.
+	 */
+	public void clear(int viewWidth,int viewHeight)
+	{
+		this.viewWidth = viewWidth;
+		this.viewHeight = viewHeight;
+		count = 0;
+		area = 0;
+		full = false;
+	}
+
+	/**
+	 * Marks the whole view as dirty.
+	 */
+	public void addAll()
+	{
+		full = true;
+		count = 1;
+		rectangles[0].setBounds( 0 , 0 , viewWidth , viewHeight );
+		area = viewWidth*viewHeight;
+	}
+
+	public void add(Rectangle r) {
+		add( r.x , r.y , r.width , r.height );
+	}
+
+	public void add(int x,int y,int width,int height)
+	{
+		if ( full ) {
+			return;
+		}
+
+		// clip to view
+		int x0 = Math.max( 0 , x );
+		int y0 = Math.max( 0 , y );
+		int x1 = Math.min( viewWidth , x + width );
+		int y1 = Math.min( viewHeight , y + height );
+		if ( x1 <= x0 || y1 <= y0 ) {
+			return;
+		}
+
+		// merge with all rectangles the new one touches, repeat since the union may touch others
+		boolean merged;
+		do
+		{
+			merged = false;
+			for ( int i = 0 ; i < count ; i++ )
+			{
+				final Rectangle r = rectangles[i];
+				if ( x0 <= r.x + r.width && r.x <= x1 && y0 <= r.y + r.height && r.y <= y1 )
+				{
+					x0 = Math.min( x0 , r.x );
+					y0 = Math.min( y0 , r.y );
+					x1 = Math.max( x1 , r.x + r.width );
+					y1 = Math.max( y1 , r.y + r.height );
+					removeAt( i );
+					merged = true;
+					break;
+				}
+			}
+		}
+		while ( merged );
+
+		if ( count == MAX_RECTANGLES || area + (x1-x0)*(y1-y0) > viewWidth*viewHeight/2 )
+		{
+			addAll();
+			return;
+		}
+		rectangles[ count++ ].setBounds( x0 , y0 , x1 - x0 , y1 - y0 );
+		area += (x1-x0)*(y1-y0);
+	}
+
+	private void removeAt(int index)
+	{
+		final Rectangle removed = rectangles[index];
+		area -= removed.width*removed.height;
+		count--;
+		rectangles[index] = rectangles[count];
+		rectangles[count] = removed;
+	}
+
+	/**
+	 * Adds all rectangles of another region.
+	 */
+	public void add(DirtyRegion other)
+	{
+		if ( other.full ) {
+			addAll();
+			return;
+		}
+		for ( int i = 0 ; i < other.count ; i++ ) {
+			tmp.setBounds( other.rectangles[i] );
+			add( tmp );
+		}
+	}
+
+	/**
+	 * Replaces the contents of this region with a copy of another region.
+	 */
+	public void set(DirtyRegion other)
+	{
+		clear( other.viewWidth , other.viewHeight );
+		full = other.full;
+		count = other.count;
+		area = other.area;
+		for ( int i = 0 ; i < count ; i++ ) {
+			rectangles[i].setBounds( other.rectangles[i] );
+		}
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Returns whether an area overlaps any of the rectangles.
+	 */
+	public boolean intersects(float minX,float minY,float maxX,float maxY)
+	{
+		if ( full ) {
+			return true;
+		}
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final Rectangle r = rectangles[i];
+			if ( maxX >= r.x && minX <= r.x + r.width && maxY >= r.y && minY <= r.y + r.height ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the whole view is dirty.
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a rectangle, the result must not be modified.
+	 */
+	public Rectangle get(int index) {
+		return rectangles[index];
+	}
+}
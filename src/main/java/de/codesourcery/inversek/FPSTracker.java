@@ -5,29 +5,63 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 
+/**
+ * Records frame times into a {@link TimingHistogram} and renders a scrolling frame time chart.
+ *
+ * Reports p50/p95/p99/max frame times over the most recent frames and counts frames whose rendering
+ * took longer than the frame time budget. Frame times include the time the main loop waits for the
+ * next frame to be due, so they cannot tell whether rendering kept up. The chart is scrolled by one pixel per frame with only the new
+ * column being drawn, the statistics text only gets updated a few times per second.
+ */
 public class FPSTracker {
 
-	private static final int RINGBUFFER_SIZE=150;
+	private static final int CHART_WIDTH = 250;
+	private static final int TEXT_HEIGHT = 32;
+	private static final int CHART_HEIGHT = 40;
 
-	private final BufferedImage image;
-	private final Graphics2D graphics;
+	// number of recent frames the percentiles are calculated from
+	private static final int WINDOW_SIZE = 1000;
 
-	private final float[] ringBuffer = new float[RINGBUFFER_SIZE];
+	// avoid distorting measurements by skipping some frames until the JIT compiler has kicked in
+	private static final int WARMUP_FRAMES = 20;
 
-	private float maxFps = 0;
-	private long frameCount = 0;
+	private static final int TEXT_UPDATE_INTERVAL = 15; // frames
 
-	private int readPtr;
-	private int writePtr;
-	private int elementsInBuffer;
+	private static final Color BACKGROUND = Color.BLACK;
+	private static final Color IN_BUDGET = Color.GREEN;
+	private static final Color OVER_BUDGET = Color.RED;
+	private static final Color BUDGET_LINE = Color.GRAY;
 
+	private final BufferedImage image;
+	private final Graphics2D graphics;
 	private final Dimension size;
 
-	public FPSTracker()
+	private long budgetNanos;
+	private final TimingHistogram histogram = new TimingHistogram( WINDOW_SIZE );
+
+	private long previousFrameNanos = -1;
+	private long frameCount;
+	private long overBudgetCount;
+
+	public FPSTracker() {
+		this( 1_000_000_000L / Main.DESIRED_FPS );
+	}
+
+	/**
+	 * @param budgetNanos max. time a frame may take
+	 */
+	public FPSTracker(long budgetNanos)
 	{
-		this.image = new BufferedImage(RINGBUFFER_SIZE,50,BufferedImage.TYPE_INT_RGB);
+		if ( budgetNanos <= 0 ) {
+			throw new IllegalArgumentException("Budget must be > 0");
+		}
+		this.budgetNanos = budgetNanos;
+		this.image = new BufferedImage(CHART_WIDTH,TEXT_HEIGHT+CHART_HEIGHT,BufferedImage.TYPE_INT_RGB);
 		this.graphics = image.createGraphics();
 		this.size = new Dimension(image.getWidth(),image.getHeight());
+
+		graphics.setColor( BACKGROUND );
+		graphics.fillRect( 0 , 0 , image.getWidth() , image.getHeight() );
 	}
 
 	public BufferedImage getImage() {
@@ -38,55 +72,125 @@ public class FPSTracker {
 		return size;
 	}
 
-	public void renderFPS(float deltaSeconds)
+	/**
+	 * Records a frame.
+	 *
+	 * @param frameStartNanos time rendering of the frame started, as returned by {@link System#nanoTime()}
+	 * @param renderNanos time it took to render the frame
+	 */
+	public void frameFinished(long frameStartNanos,long renderNanos)
 	{
-		final float fps = 1.0f/deltaSeconds;
+		final long previous = previousFrameNanos;
+		previousFrameNanos = frameStartNanos;
+		if ( previous == -1 ) {
+			return;
+		}
 		frameCount++;
+		if ( frameCount <= WARMUP_FRAMES ) {
+			return;
+		}
 
-		ringBuffer[ writePtr ] = fps;
-		writePtr = (writePtr+1) % RINGBUFFER_SIZE;
+		final long frameNanos = frameStartNanos - previous;
+		histogram.record( frameNanos );
+		final boolean overBudget = renderNanos > budgetNanos;
+		if ( overBudget ) {
+			overBudgetCount++;
+		}
 
-		elementsInBuffer = Math.max( elementsInBuffer+1, RINGBUFFER_SIZE );
-		if ( elementsInBuffer == RINGBUFFER_SIZE ) {
-			readPtr = (readPtr+1) % RINGBUFFER_SIZE;
+		renderColumn( frameNanos , overBudget );
+		if ( ( frameCount % TEXT_UPDATE_INTERVAL ) == 0 ) {
+			renderText();
 		}
+	}
 
-		if ( frameCount > 20 ) { // avoid distorting measurements by skipping some frames until the JIT compiler has kicked in
-			maxFps = Math.max( fps ,  maxFps );
+	/**
+	 * Records that no frame was rendered since nothing changed, the time until the next
+	 * call to {@link #frameFinished(long,long)} does not count as frame time.
+	 */
+	public void frameSkipped() {
+		previousFrameNanos = -1;
+	}
+
+	private void renderColumn(long frameNanos,boolean overBudget)
+	{
+		// chart shows frame times up to twice the budget
+		final int x = CHART_WIDTH-1;
+		final int y0 = TEXT_HEIGHT + CHART_HEIGHT - 1;
+		final int height = (int) Math.min( CHART_HEIGHT , frameNanos * CHART_HEIGHT / (2*budgetNanos) );
+
+		graphics.copyArea( 1 , TEXT_HEIGHT , CHART_WIDTH-1 , CHART_HEIGHT , -1 , 0 );
+		graphics.setColor( BACKGROUND );
+		graphics.drawLine( x , TEXT_HEIGHT , x , y0 );
+		graphics.setColor( overBudget ? OVER_BUDGET : IN_BUDGET );
+		if ( height > 0 ) {
+			graphics.drawLine( x , y0 , x , y0 - height + 1 );
 		}
+		image.setRGB( x , y0 - CHART_HEIGHT/2 , BUDGET_LINE.getRGB() );
+	}
+
+	private void renderText()
+	{
+		graphics.setColor( BACKGROUND );
+		graphics.fillRect( 0 , 0 , CHART_WIDTH , TEXT_HEIGHT );
+
+		graphics.setColor( Color.WHITE );
+		graphics.drawString( String.format( "p50/p95/p99: %.1f / %.1f / %.1f ms" ,
+				toMillis( getPercentile( 50 ) ) , toMillis( getPercentile( 95 ) ) , toMillis( getPercentile( 99 ) ) ) , 5 , 13 );
+		graphics.drawString( String.format( "max: %.1f ms , over budget: %d (%.1f%%)" ,
+				toMillis( getMaxFrameNanos() ) , overBudgetCount , getOverBudgetPercentage() ) , 5 , 27 );
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1_000_000d;
+	}
+
+	/**
+	 * Returns the frame time (in nanoseconds) below which the given percentage of recent frames fall.
+	 */
+	public long getPercentile(double percentile) {
+		return histogram.getPercentile( percentile );
+	}
+
+	/**
+	 * Returns the max. frame time (in nanoseconds) of recent frames.
+	 */
+	public long getMaxFrameNanos() {
+		return histogram.getMax();
+	}
+
+	/**
+	 * Returns the number of frames whose rendering exceeded the budget since tracking started.
+	 */
+	public long getOverBudgetCount() {
+		return overBudgetCount;
+	}
 
-		final float range = maxFps;
-
-		// clear render buffer
-		graphics.setColor(Color.BLACK);
-		graphics.fillRect(0,0,image.getWidth(),image.getHeight());
-
-		// render chart
-		final int yOffset = 20;
-		final int imageHeight = image.getHeight()-  yOffset;
-		final int y0 = image.getHeight();
-		graphics.setColor(Color.GREEN);
-
-		float bufferMinFps = 10000;
-		float bufferMaxFps = 0;
-		float bufferSumFps = 0;
-		for ( int i = elementsInBuffer, x= 0 , ptr = readPtr ; i > 0 ; i--,x++)
-		{
-			final float value = ringBuffer[ ptr ];
-			ptr = (ptr+1) % RINGBUFFER_SIZE;
-
-			bufferSumFps += value;
-			bufferMinFps = value < bufferMinFps ? value : bufferMinFps;
-			bufferMaxFps = value > bufferMaxFps ? value : bufferMaxFps;
-
-			final float percentage = value / range;
-			final int y= y0 - (int) (imageHeight*percentage);
-			graphics.drawLine(x,y0,x,y);
+	public double getOverBudgetPercentage()
+	{
+		final long measured = frameCount - WARMUP_FRAMES;
+		return measured <= 0 ? 0 : overBudgetCount * 100d / measured;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * Sets the max. time rendering a frame may take.
+	 */
+	public void setBudgetNanos(long budgetNanos)
+	{
+		if ( budgetNanos <= 0 ) {
+			throw new IllegalArgumentException("Budget must be > 0");
 		}
-		final float bufferAvgFps = bufferSumFps / elementsInBuffer;
+		this.budgetNanos = budgetNanos;
+	}
 
-		// draw FPS string
-		graphics.setColor(Color.WHITE);
-		graphics.drawString("FPS: "+(int) bufferMinFps+" / "+(int) bufferAvgFps+" / "+(int) bufferMaxFps,5,15);
+	public TimingHistogram getHistogram() {
+		return histogram;
 	}
 }
@@ -37,6 +37,13 @@ public class Gripper extends Bone
 	private PrismaticJoint lowerJoint;
 	private PrismaticJoint upperJoint;
 	
+	// slots in PhysicsState
+	private int basePlateSlot = -1;
+	private int lowerClawSlot = -1;
+	private int upperClawSlot = -1;
+	private int lowerJointSlot = -1;
+	private int upperJointSlot = -1;
+	
 	private Gripper(Gripper other, Joint jointA, Joint jointB) 
 	{
 		super(other, jointA, jointB);
@@ -49,6 +56,11 @@ public class Gripper extends Bone
 		this.upperClawBody = other.upperClawBody;
 		this.lowerJoint = other.lowerJoint;
 		this.upperJoint = other.upperJoint;
+		this.basePlateSlot = other.basePlateSlot;
+		this.lowerClawSlot = other.lowerClawSlot;
+		this.upperClawSlot = other.upperClawSlot;
+		this.lowerJointSlot = other.lowerJointSlot;
+		this.upperJointSlot = other.upperJointSlot;
 	}
 
 	public Gripper(String name, Joint jointA, Joint jointB, float armLength, float basePlateLength,float clawLength) {
@@ -141,19 +153,57 @@ public class Gripper extends Bone
 		this.openPercentage = open;
 	}
 	
+	/**
+	 * Binds the gripper's Box2D parts to their slots in a {@link PhysicsState}, the
+	 * bone body itself is bound through {@link #bindPhysicsState(PhysicsState, int)}.
+	 */
+	public void bindPartSlots(int basePlateSlot,int lowerClawSlot,int upperClawSlot,int lowerJointSlot,int upperJointSlot) 
+	{
+		this.basePlateSlot = basePlateSlot;
+		this.lowerClawSlot = lowerClawSlot;
+		this.upperClawSlot = upperClawSlot;
+		this.lowerJointSlot = lowerJointSlot;
+		this.upperJointSlot = upperJointSlot;
+	}
+	
+	public int getBasePlateSlot() {
+		return basePlateSlot;
+	}
+	
+	public int getLowerClawSlot() {
+		return lowerClawSlot;
+	}
+	
+	public int getUpperClawSlot() {
+		return upperClawSlot;
+	}
+	
+	public float getLowerJointTranslation() 
+	{
+		if ( hasPhysicsState() ) {
+			return getPhysicsState().getJointTranslation( lowerJointSlot );
+		}
+		return getLowerJoint().getJointTranslation();
+	}
+	
+	public float getUpperJointTranslation() 
+	{
+		if ( hasPhysicsState() ) {
+			return getPhysicsState().getJointTranslation( upperJointSlot );
+		}
+		return getUpperJoint().getJointTranslation();
+	}
+	
 	public float getLowerClawOpenPercentage() {
-		final PrismaticJoint lowerJoint = getLowerJoint();
-
 		// translation = 0 => claw fully open
-		final float lowerOpenPercentage = 1.0f - lowerJoint.getJointTranslation() / getMaxBox2dJointTranslation();
+		final float lowerOpenPercentage = 1.0f - getLowerJointTranslation() / getMaxBox2dJointTranslation();
 		return lowerOpenPercentage;
 	}
 	
 	public float getUpperClawOpenPercentage() 
 	{
-		final PrismaticJoint upperJoint = getUpperJoint();
 		// translation = 0 => claw fully open
-		final float upperOpenPercentage = 1.0f - upperJoint.getJointTranslation() / getMaxBox2dJointTranslation();
+		final float upperOpenPercentage = 1.0f - getUpperJointTranslation() / getMaxBox2dJointTranslation();
 		return upperOpenPercentage;
 	}
 	
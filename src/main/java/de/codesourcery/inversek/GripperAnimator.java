@@ -1,10 +1,9 @@
 package de.codesourcery.inversek;
 
-import com.badlogic.gdx.physics.box2d.Contact;
-import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.joints.PrismaticJoint;
 
-import de.codesourcery.inversek.WorldModel.Ball;
+import de.codesourcery.inversek.WorldModel.ItemType;
 
 public class GripperAnimator implements ITickListener , IContactCallback {
 
@@ -84,7 +83,7 @@ public class GripperAnimator implements ITickListener , IContactCallback {
 		if ( ! contactCallbackRegistered ) 
 		{
 			if ( isClosing() ) {
-				worldModel.addContactCallback( this );
+				worldModel.addContactCallback( this , gripper.getLowerClawBody() , gripper.getUpperClawBody() );
 			}
 			contactCallbackRegistered = true;
 		}
@@ -164,32 +163,32 @@ public class GripperAnimator implements ITickListener , IContactCallback {
 	}
 
 	@Override
-	public boolean endContact(Contact contact) {
+	public boolean endContact(ContactEvent contact) {
 		return true;
 	}
 
 	@Override
-	public boolean beginContact(Contact contact) 
+	public boolean beginContact(ContactEvent contact) 
 	{
 		if ( ! contact.isTouching() ) {
 			return true;
 		}
 		
-		final Fixture fixtureA = contact.getFixtureA();
-		final Fixture fixtureB = contact.getFixtureB();
+		final Body bodyA = contact.getBodyA();
+		final Body bodyB = contact.getBodyB();
 		
-		Fixture claw = null;
-		if ( isBall( fixtureA ) ) 
+		Body claw = null;
+		if ( contact.getItemTypeA() == ItemType.BALL ) 
 		{
-			claw = isClaw( fixtureB ) ? fixtureB : null;
+			claw = isClaw( bodyB ) ? bodyB : null;
 		} 
-		else if ( isBall( fixtureB ) ) 
+		else if ( contact.getItemTypeB() == ItemType.BALL ) 
 		{
-			claw = isClaw( fixtureA ) ? fixtureA : null;
+			claw = isClaw( bodyA ) ? bodyA : null;
 		}
 		
 		if ( claw == null ) {
-			System.out.println("*** Ignored contact "+contact.getFixtureA().getUserData()+" vs. "+contact.getFixtureB().getUserData()+" ***");
+			System.out.println("*** Ignored contact "+contact.getFixtureUserDataA()+" vs. "+contact.getFixtureUserDataB()+" ***");
 			return true;
 		}
 		
@@ -197,7 +196,7 @@ public class GripperAnimator implements ITickListener , IContactCallback {
 		{
 			if ( ! lowerClawContact ) 
 			{
-				System.out.println("*** lower claw touched ball *** normal = "+contact.getWorldManifold().getNormal());
+				System.out.println("*** lower claw touched ball *** normal = "+contact.getNormal());
 				lowerClawContact = true;
 			}
 		} 
@@ -205,37 +204,24 @@ public class GripperAnimator implements ITickListener , IContactCallback {
 		{
 			if ( ! upperClawContact ) 
 			{
-				System.out.println("*** Upper claw touched ball *** normal = "+contact.getWorldManifold().getNormal());
+				System.out.println("*** Upper claw touched ball *** normal = "+contact.getNormal());
 				upperClawContact = true;
 			}
 		}
 		return true;
 	}
 	
-	private boolean isBall(Fixture fixture) 
-	{
-		return fixture.getUserData() instanceof Ball;
-	}
-	
-	private boolean isClaw(Fixture fixture) {
-		return isLowerClaw( fixture ) || isUpperClaw(fixture);
+	private boolean isClaw(Body body) {
+		return isLowerClaw( body ) || isUpperClaw(body);
 	}
 	
-	private boolean isLowerClaw(Fixture fixture) 
+	private boolean isLowerClaw(Body body) 
 	{
-		if ( fixture.getUserData() instanceof Gripper) 
-		{
-			return fixture.getBody() == gripper.getLowerClawBody();
-		}
-		return false;
+		return body == gripper.getLowerClawBody();
 	}
 	
-	private boolean isUpperClaw(Fixture fixture) 
+	private boolean isUpperClaw(Body body) 
 	{
-		if ( fixture.getUserData() instanceof Gripper) 
-		{
-			return fixture.getBody() == gripper.getUpperClawBody();
-		}
-		return false;
+		return body == gripper.getUpperClawBody();
 	}	
 }
\ No newline at end of file
@@ -1,10 +1,20 @@
 package de.codesourcery.inversek;
 
-import com.badlogic.gdx.physics.box2d.Contact;
-
+/**
+ * Receives contact events.
+ * 
+ * Events are delivered in batches after a physics step has completed, so
+ * implementations are free to modify the world.
+ */
 public interface IContactCallback 
 {
-	public boolean endContact(Contact contact);
+	/**
+	 * @return <code>false</code> to unsubscribe this callback
+	 */
+	public boolean endContact(ContactEvent contact);
 	
-	public boolean beginContact(Contact contact);
+	/**
+	 * @return <code>false</code> to unsubscribe this callback
+	 */
+	public boolean beginContact(ContactEvent contact);
 }
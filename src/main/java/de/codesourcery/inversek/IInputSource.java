@@ -0,0 +1,17 @@
+package de.codesourcery.inversek;
+
+/**
+ * Delivers input events to the main loop.
+ *
+ * Events are only ever handed to {@link MouseInput} / {@link KeyboardInput} at the start of a tick,
+ * this way a session can be replayed tick-by-tick without depending on when the AWT thread happened to run.
+ */
+public interface IInputSource
+{
+	/**
+	 * Delivers all events that belong to the given tick.
+	 *
+	 * @param tick number of the main loop iteration that is about to run
+	 */
+	public void dispatch(long tick,MouseInput mouse,KeyboardInput keyboard);
+}
@@ -0,0 +1,115 @@
+package de.codesourcery.inversek;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * A single mouse or keyboard event, stamped with the main loop tick it was delivered in.
+ *
+ * Mouse events carry both the view coordinates they were delivered at and the corresponding
+ * model coordinates. Only the model coordinates get recorded, so a replay hits the same
+ * spots in the world regardless of the size of the window it runs in.
+ *
+ * @see AwtInputSource
+ * @see InputRecorder
+ * @see InputPlayer
+ */
+public final class InputEvent
+{
+	public static enum Type
+	{
+		MOUSE_MOVED(1),
+		MOUSE_CLICKED(2),
+		KEY_PRESSED(3),
+		KEY_RELEASED(4);
+
+		public final int code;
+
+		private Type(int code) {
+			this.code = code;
+		}
+
+		public static Type fromCode(int code)
+		{
+			for ( Type t : values() ) {
+				if ( t.code == code ) {
+					return t;
+				}
+			}
+			throw new IllegalArgumentException("Unknown event type "+code);
+		}
+	}
+
+	/**
+	 * Converts between view and model coordinates.
+	 */
+	public interface IViewMapping
+	{
+		public Vector2 viewToModel(int x,int y,Vector2 result);
+
+		public Vector2 modelToView(float x,float y,Vector2 result);
+	}
+
+	public long tick;
+	public Type type;
+	// view coordinates
+	public int x;
+	public int y;
+	// model coordinates, only valid for mouse events
+	public float modelX;
+	public float modelY;
+	// mouse button ordinal or key code
+	public int code;
+
+	InputEvent() {
+	}
+
+	public InputEvent(long tick,Type type, int x, int y, int code)
+	{
+		set( tick , type , x , y , code );
+	}
+
+	public void set(long tick,Type type, int x, int y, int code)
+	{
+		if ( type == null ) {
+			throw new IllegalArgumentException("type must not be NULL");
+		}
+		this.tick = tick;
+		this.type = type;
+		this.x = x;
+		this.y = y;
+		this.code = code;
+	}
+
+	public boolean isMouseEvent() {
+		return type == Type.MOUSE_MOVED || type == Type.MOUSE_CLICKED;
+	}
+
+	/**
+	 * Forwards this event to the input state it affects.
+	 */
+	public void applyTo(MouseInput mouse,KeyboardInput keyboard)
+	{
+		switch( type )
+		{
+			case MOUSE_MOVED:
+				mouse.setCurrentPosition( x , y );
+				break;
+			case MOUSE_CLICKED:
+				mouse.buttonClicked( MouseInput.Button.values()[ code ] , x , y );
+				break;
+			case KEY_PRESSED:
+				keyboard.keyPressed( code );
+				break;
+			case KEY_RELEASED:
+				keyboard.keyReleased( code );
+				break;
+			default:
+				throw new RuntimeException("Unhandled switch/case: "+type);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "tick "+tick+": "+type+" ("+x+","+y+") , model ("+modelX+","+modelY+") , code "+code;
+	}
+}
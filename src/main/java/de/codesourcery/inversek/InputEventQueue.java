@@ -0,0 +1,106 @@
+package de.codesourcery.inversek;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer for handing input events from exactly one producer thread (the AWT event thread)
+ * to exactly one consumer thread (the main loop).
+ *
+ * All event instances are preallocated and get reused. The producer never waits for the consumer: mouse
+ * movements are dropped once the buffer is three quarters full (the next movement supersedes them anyway),
+ * leaving room for clicks and key events which only get dropped once the buffer is completely full.
+ */
+public final class InputEventQueue
+{
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private final InputEvent[] slots;
+	private final int mask;
+
+	// sequence numbers of the next slot to be written/read, only ever increase
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+
+	private long writeSeq; // only accessed by producer
+	private long cachedConsumed; // only accessed by producer
+
+	// only written by producer
+	private volatile long droppedEvents;
+
+	@FunctionalInterface
+	public interface IEventConsumer
+	{
+		public void consume(InputEvent event);
+	}
+
+	public InputEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity max. number of events that can be queued, gets rounded up to the next power of two
+	 */
+	public InputEventQueue(int capacity)
+	{
+		if ( capacity < 2 ) {
+			throw new IllegalArgumentException("Capacity must be >= 2");
+		}
+		final int size = Integer.highestOneBit( capacity-1 ) << 1;
+		slots = new InputEvent[ size ];
+		for ( int i = 0 ; i < size ; i++ ) {
+			slots[i] = new InputEvent();
+		}
+		mask = size-1;
+	}
+
+	/**
+	 * Enqueues an event, must only be called by the producer thread.
+	 *
+	 * @return <code>false</code> if the event got dropped because the consumer fell behind
+	 */
+	public boolean offer(InputEvent.Type type,int x,int y,int code)
+	{
+		final int limit = type == InputEvent.Type.MOUSE_MOVED ? slots.length - slots.length/4 : slots.length;
+		if ( writeSeq - cachedConsumed >= limit )
+		{
+			cachedConsumed = consumed.get();
+			if ( writeSeq - cachedConsumed >= limit )
+			{
+				droppedEvents++;
+				return false;
+			}
+		}
+		slots[ (int) (writeSeq & mask) ].set( 0 , type , x , y , code );
+		published.lazySet( ++writeSeq );
+		return true;
+	}
+
+	/**
+	 * Hands all events queued so far to a consumer, must only be called by the consumer thread.
+	 *
+	 * The event instances passed to the consumer get reused as soon as this method returns.
+	 *
+	 * @return number of events consumed
+	 */
+	public int drain(IEventConsumer consumer)
+	{
+		final long start = consumed.get();
+		final long end = published.get();
+		for ( long seq = start ; seq < end ; seq++ ) {
+			consumer.consume( slots[ (int) (seq & mask) ] );
+		}
+		consumed.lazySet( end );
+		return (int) (end - start);
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Returns the number of events dropped because the buffer was full.
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents;
+	}
+}
@@ -0,0 +1,105 @@
+package de.codesourcery.inversek;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Replays a file written by {@link InputRecorder}, delivering every event in the same tick it was originally delivered in.
+ *
+ * Mouse events are recorded in model coordinates and get mapped to the view coordinates of the
+ * current window right before they are delivered.
+ */
+public final class InputPlayer implements IInputSource
+{
+	private final List<InputEvent> events = new ArrayList<>();
+	private final float secondsPerTick;
+	private final long endTick;
+
+	private int next;
+
+	private InputEvent.IViewMapping viewMapping;
+	private final Vector2 tmp = new Vector2();
+
+	public InputPlayer(Path file) throws IOException
+	{
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) )
+		{
+			if ( in.readInt() != InputRecorder.MAGIC ) {
+				throw new IOException("Not an input recording: "+file);
+			}
+			final int version = in.readInt();
+			if ( version != InputRecorder.VERSION ) {
+				throw new IOException("Unsupported input recording version "+version+" in "+file);
+			}
+			secondsPerTick = in.readFloat();
+
+			while ( true )
+			{
+				final long tick = in.readLong();
+				final int type = in.readInt();
+				if ( type == 0 ) {
+					endTick = tick;
+					break;
+				}
+				final float modelX = in.readFloat();
+				final float modelY = in.readFloat();
+				final InputEvent event = new InputEvent( tick , InputEvent.Type.fromCode( type ) , 0 , 0 , in.readInt() );
+				event.modelX = modelX;
+				event.modelY = modelY;
+				events.add( event );
+			}
+		}
+	}
+
+	@Override
+	public void dispatch(long tick, MouseInput mouse, KeyboardInput keyboard)
+	{
+		while ( next < events.size() && events.get( next ).tick <= tick )
+		{
+			final InputEvent event = events.get( next++ );
+			if ( event.isMouseEvent() )
+			{
+				if ( viewMapping == null ) {
+					throw new IllegalStateException("Replaying mouse events requires a view mapping");
+				}
+				viewMapping.modelToView( event.modelX , event.modelY , tmp );
+				event.x = Math.round( tmp.x );
+				event.y = Math.round( tmp.y );
+			}
+			event.applyTo( mouse , keyboard );
+		}
+	}
+
+	/**
+	 * Sets the mapping used to turn the recorded model coordinates into view coordinates.
+	 */
+	public void setViewMapping(InputEvent.IViewMapping viewMapping) {
+		this.viewMapping = viewMapping;
+	}
+
+	/**
+	 * Returns whether the given tick is past the end of the recorded session.
+	 */
+	public boolean isFinished(long tick) {
+		return tick > endTick;
+	}
+
+	public float getSecondsPerTick() {
+		return secondsPerTick;
+	}
+
+	public int getEventCount() {
+		return events.size();
+	}
+
+	public long getEndTick() {
+		return endTick;
+	}
+}
@@ -0,0 +1,84 @@
+package de.codesourcery.inversek;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes input events to a file so that the session can later be replayed by {@link InputPlayer}.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * int   magic ('IKIN')
+ * int   version
+ * float seconds per tick
+ * (long tick, int type, float modelX, float modelY, int code) * n
+ * long  tick the recording ended at, int 0
+ * </pre>
+ *
+ * Mouse events are stored in model coordinates, see {@link InputEvent}.
+ */
+public final class InputRecorder implements AutoCloseable
+{
+	public static final int MAGIC = 0x494b494e; // 'IKIN'
+	public static final int VERSION = 2;
+
+	private final DataOutputStream out;
+	private long lastTick;
+	private int eventCount;
+	private boolean closed;
+
+	public InputRecorder(Path file,float secondsPerTick) throws IOException
+	{
+		out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file ) ) );
+		out.writeInt( MAGIC );
+		out.writeInt( VERSION );
+		out.writeFloat( secondsPerTick );
+	}
+
+	public synchronized void record(InputEvent event)
+	{
+		if ( closed ) {
+			return;
+		}
+		try
+		{
+			out.writeLong( event.tick );
+			out.writeInt( event.type.code );
+			out.writeFloat( event.modelX );
+			out.writeFloat( event.modelY );
+			out.writeInt( event.code );
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException( e );
+		}
+		lastTick = event.tick;
+		eventCount++;
+	}
+
+	/**
+	 * Sets the tick the current session has reached, gets stored as end of the recording.
+	 */
+	public synchronized void setCurrentTick(long tick) {
+		this.lastTick = tick;
+	}
+
+	public synchronized int getEventCount() {
+		return eventCount;
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if ( ! closed )
+		{
+			closed = true;
+			out.writeLong( lastTick );
+			out.writeInt( 0 );
+			out.close();
+		}
+	}
+}
@@ -31,6 +31,7 @@ public class Joint extends Node<RevoluteJoint> implements IMathSupport
 		this.successor = successor;
 		this.predecessor = predecessor;
 		this.range = that.range;
+		copyPhysicsState( that );
 	}
 	
 	public Joint createCopy() {
@@ -277,13 +278,24 @@ public class Joint extends Node<RevoluteJoint> implements IMathSupport
 	
 	public float getBox2dOrientationDegrees() 
 	{
-		float angle = radToDeg( getBody().getJointAngle() );
+		float angle = radToDeg( getBox2dJointAngle() );
 		if ( angle < 0 ) {
 			angle = 360+angle;
 		}
 		return normalizeAngleInDeg( angle );
 	}
 	
+	/**
+	 * Returns the Box2D joint angle in radians, served from the {@link PhysicsState} cache if this joint is bound to one.
+	 */
+	public float getBox2dJointAngle() 
+	{
+		if ( hasPhysicsState() ) {
+			return getPhysicsState().getJointAngle( getPhysicsSlot() );
+		}
+		return getBody().getJointAngle();
+	}
+	
 	public float getSumOrientationDegreesBox2d() 
 	{
 		return predecessor == null ? getBox2dOrientationDegrees() : getBox2dOrientationDegrees() + predecessor.jointA.getSumOrientationDegreesBox2d();  
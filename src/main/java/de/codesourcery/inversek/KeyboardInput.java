@@ -1,53 +1,43 @@
 package de.codesourcery.inversek;
 
-import java.awt.Component;
-import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.HashSet;
-import java.util.Set;
 
-public class KeyboardInput extends KeyAdapter {
+/**
+ * Key presses as seen by the main loop, fed by an {@link IInputSource}.
+ *
+ * Only ever accessed by the main loop thread. A key press is remembered until it has been
+ * queried, even if the key got released again in the meantime.
+ */
+public class KeyboardInput {
 
-	private final Set<Integer> pressed = new HashSet<>();
-	
-	public void attach(Component c) {
-		c.addKeyListener( this );
-	}
+	private static final int MAX_KEY_CODE = 1023;
+
+	private final boolean[] pressed = new boolean[ MAX_KEY_CODE+1 ];
 	
-	@Override
-	public void keyPressed(KeyEvent e) 
+	public void keyPressed(int keyCode) 
 	{
-		synchronized( pressed ) {
-			pressed.add( e.getKeyCode() );
+		if ( keyCode >= 0 && keyCode <= MAX_KEY_CODE ) {
+			pressed[ keyCode ] = true;
 		}
 	}
 	
-	@Override
-	public void keyReleased(KeyEvent e) {
-		synchronized( pressed ) {
-			pressed.remove( e.getKeyCode() );
-		}
+	public void keyReleased(int keyCode) {
+		// nothing to do, presses are kept until queried
 	}
 	
 	public boolean isIncAnglePressed() 
 	{
-		synchronized( pressed ) {
-			return getAndClear( KeyEvent.VK_PLUS);
-		}
+		return getAndClear( KeyEvent.VK_PLUS);
 	}
 	
 	public boolean isDecAnglePressed() 
 	{
-		synchronized( pressed ) {
-			return getAndClear( KeyEvent.VK_MINUS );
-		}
+		return getAndClear( KeyEvent.VK_MINUS );
 	}	
 	
 	public boolean isOpenGripper() 
 	{
-		synchronized( pressed ) {
-			return getAndClear( KeyEvent.VK_O );
-		}
+		return getAndClear( KeyEvent.VK_O );
 	}
 	
 	public boolean isEmergencyStop() 
@@ -57,14 +47,20 @@ public class KeyboardInput extends KeyAdapter {
 	
 	private boolean getAndClear(int keyCode) 
 	{
-		synchronized( pressed ) {
-			final boolean result = pressed.contains( keyCode );
-			pressed.remove( keyCode );
-			return result;
-		}
+		final boolean result = pressed[ keyCode ];
+		pressed[ keyCode ] = false;
+		return result;
 	}
 	
 	public boolean isCloseGripper() {
 		return getAndClear( KeyEvent.VK_C );
 	}	
+	
+	public boolean isSaveRecording() {
+		return getAndClear( KeyEvent.VK_R );
+	}
+
+	public boolean isToggleProfiler() {
+		return getAndClear( KeyEvent.VK_P );
+	}
 }
@@ -0,0 +1,249 @@
+package de.codesourcery.inversek;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the main loop, telling it when to advance the simulation and when to render a frame.
+ *
+ * Simulation ticks and frames are due at fixed rates. Deadlines are tracked in {@link System#nanoTime()}
+ * resolution and reached by sleeping until shortly before the deadline and spin-waiting the rest of the time.
+ * The spin phase is sized from the measured sleep overshoot, so most of the waiting is done without
+ * burning CPU while deadlines are still met precisely.
+ *
+ * The time between a deadline and the moment the loop actually wakes up is recorded as jitter.
+ *
+ * Events are always reported in deadline order (with simulation ticks first if both are due at once),
+ * so with {@link Pacing#REAL_TIME_LOCKSTEP} or {@link Pacing#UNTHROTTLED} the interleaving of simulation
+ * ticks and frames does not depend on the wall clock.
+ */
+public final class LoopScheduler
+{
+	public static final int SIMULATE = 1;
+	public static final int RENDER = 2;
+
+	public static enum Pacing
+	{
+		/**
+		 * Follow the wall clock. If the loop falls behind by more than {@link LoopScheduler#MAX_CATCH_UP_TICKS} simulation ticks
+		 * the missed time gets skipped, missed frames are always skipped.
+		 */
+		REAL_TIME,
+		/**
+		 * Follow the wall clock but never skip anything, a loop that fell behind runs late events back-to-back.
+		 */
+		REAL_TIME_LOCKSTEP,
+		/**
+		 * Do not wait at all, deadlines just define the order of events.
+		 */
+		UNTHROTTLED
+	}
+
+	// max. number of simulation ticks run back-to-back to catch up
+	static final int MAX_CATCH_UP_TICKS = 5;
+
+	// bounds of the time spent spin-waiting before a deadline
+	private static final long MIN_SPIN_NANOS = 100_000;
+	private static final long MAX_SPIN_NANOS = 4_000_000;
+
+	private final long simulationPeriodNanos;
+	private final long renderPeriodNanos;
+	private final Pacing pacing;
+
+	private long startNanos;
+	// deadlines relative to startNanos
+	private long nextSimulation;
+	private long nextRender;
+
+	// moving average of how much longer sleeping took than requested
+	private long sleepOvershootNanos = 500_000;
+	private long spinNanos = 1_000_000;
+
+	private final TimingHistogram jitter = new TimingHistogram( 1000 );
+	private Profiler.Section jitterSection;
+
+	private long simulationTicks;
+	private long renderTicks;
+	private long skippedSimulationTicks;
+	private long skippedRenderTicks;
+
+	/**
+	 * @param simulationRate simulation ticks per second
+	 * @param renderRate frames per second
+	 */
+	public LoopScheduler(double simulationRate,double renderRate,Pacing pacing)
+	{
+		if ( simulationRate <= 0 || renderRate <= 0 ) {
+			throw new IllegalArgumentException("Rates must be > 0");
+		}
+		if ( pacing == null ) {
+			throw new IllegalArgumentException("pacing must not be NULL");
+		}
+		this.simulationPeriodNanos = Math.round( 1_000_000_000d / simulationRate );
+		this.renderPeriodNanos = Math.round( 1_000_000_000d / renderRate );
+		this.pacing = pacing;
+		start();
+	}
+
+	/**
+	 * Restarts the schedule, the first simulation tick and frame are due immediately.
+	 */
+	public void start()
+	{
+		startNanos = System.nanoTime();
+		nextSimulation = 0;
+		nextRender = 0;
+	}
+
+	/**
+	 * Attaches a profiler that receives the jitter of every deadline.
+	 *
+	 * @param profiler profiler or <code>null</code>
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.jitterSection = profiler == null ? null : profiler.getSection( "loop: wake-up jitter" );
+	}
+
+	/**
+	 * Waits until the next simulation tick or frame is due.
+	 *
+	 * @return bit mask of {@link #SIMULATE} and {@link #RENDER}
+	 */
+	public int awaitNext()
+	{
+		long deadline = Math.min( nextSimulation , nextRender );
+		if ( pacing != Pacing.UNTHROTTLED )
+		{
+			final long deadlineNanos = startNanos + deadline;
+			waitUntil( deadlineNanos );
+
+			final long late = System.nanoTime() - deadlineNanos;
+			jitter.record( late );
+			if ( jitterSection != null ) {
+				jitterSection.record( late );
+			}
+
+			if ( pacing == Pacing.REAL_TIME ) {
+				deadline = skipMissedDeadlines( deadline + late );
+			}
+		}
+
+		int result = 0;
+		if ( nextSimulation <= deadline )
+		{
+			nextSimulation += simulationPeriodNanos;
+			simulationTicks++;
+			result |= SIMULATE;
+		}
+		if ( nextRender <= deadline )
+		{
+			nextRender += renderPeriodNanos;
+			renderTicks++;
+			result |= RENDER;
+		}
+		return result;
+	}
+
+	/**
+	 * Drops deadlines the loop is too far behind on.
+	 *
+	 * @param now current time relative to startNanos
+	 * @return deadline of the event to report now
+	 */
+	private long skipMissedDeadlines(long now)
+	{
+		final long simulationBacklog = (now - nextSimulation) / simulationPeriodNanos;
+		if ( simulationBacklog > MAX_CATCH_UP_TICKS )
+		{
+			final long skipped = simulationBacklog - MAX_CATCH_UP_TICKS;
+			nextSimulation += skipped * simulationPeriodNanos;
+			skippedSimulationTicks += skipped;
+		}
+
+		// a late frame is rendered only once
+		final long renderBacklog = (now - nextRender) / renderPeriodNanos;
+		if ( renderBacklog > 0 )
+		{
+			nextRender += renderBacklog * renderPeriodNanos;
+			skippedRenderTicks += renderBacklog;
+		}
+		return Math.min( nextSimulation , nextRender );
+	}
+
+	private void waitUntil(long deadlineNanos)
+	{
+		long remaining = deadlineNanos - System.nanoTime();
+		while ( remaining > spinNanos )
+		{
+			final long sleepNanos = remaining - spinNanos;
+			final long start = System.nanoTime();
+			LockSupport.parkNanos( sleepNanos );
+			final long now = System.nanoTime();
+			if ( Thread.currentThread().isInterrupted() ) {
+				return;
+			}
+
+			// parkNanos() may return early, only oversleeping tells something about the timer resolution
+			final long overshoot = (now - start) - sleepNanos;
+			if ( overshoot > 0 )
+			{
+				sleepOvershootNanos += (overshoot - sleepOvershootNanos) / 8;
+				spinNanos = Math.max( MIN_SPIN_NANOS , Math.min( MAX_SPIN_NANOS , 2*sleepOvershootNanos ) );
+			}
+			remaining = deadlineNanos - now;
+		}
+
+		while ( System.nanoTime() < deadlineNanos ) {
+			Thread.yield();
+		}
+	}
+
+	public long getSimulationPeriodNanos() {
+		return simulationPeriodNanos;
+	}
+
+	public float getSimulationPeriodSeconds() {
+		return simulationPeriodNanos / 1_000_000_000f;
+	}
+
+	public long getRenderPeriodNanos() {
+		return renderPeriodNanos;
+	}
+
+	public float getRenderPeriodSeconds() {
+		return renderPeriodNanos / 1_000_000_000f;
+	}
+
+	public Pacing getPacing() {
+		return pacing;
+	}
+
+	/**
+	 * Returns how late the loop woke up for its most recent deadlines.
+	 */
+	public TimingHistogram getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Returns the time currently reserved for spin-waiting before each deadline.
+	 */
+	public long getSpinNanos() {
+		return spinNanos;
+	}
+
+	public long getSimulationTicks() {
+		return simulationTicks;
+	}
+
+	public long getRenderTicks() {
+		return renderTicks;
+	}
+
+	public long getSkippedSimulationTicks() {
+		return skippedSimulationTicks;
+	}
+
+	public long getSkippedRenderTicks() {
+		return skippedRenderTicks;
+	}
+}
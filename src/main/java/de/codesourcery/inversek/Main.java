@@ -2,6 +2,9 @@ package de.codesourcery.inversek;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.swing.JFrame;
 
 import com.badlogic.gdx.math.Vector2;
@@ -15,31 +18,175 @@ public class Main implements IMathSupport
 	public static final boolean DEBUG = false;
 	public static final int DESIRED_FPS = 70;
 
-	public static void main(String[] args)
+	// size of the in-memory recording buffer, press 'R' to save it to disk
+	private static final int RECORDING_BUFFER_SIZE = 64*1024*1024;
+
+	// seconds per main loop iteration when running with a fixed clock
+	private static final float FIXED_TICK_SECONDS = Constants.PHYSICS_TIMESTEP;
+
+	public static void main(String[] args) throws IOException
 	{
-		new Main().run();
+		Path recordInput = null;
+		Path replayInput = null;
+		boolean activeRendering = true;
+		boolean adaptiveQuality = true;
+		boolean simulateMotions = false;
+		double simulationRate = 1 / Constants.PHYSICS_TIMESTEP;
+		double renderRate = DESIRED_FPS;
+		for ( int i = 0 ; i < args.length ; i++ )
+		{
+			if ( "--record-input".equals( args[i] ) && i+1 < args.length ) {
+				recordInput = Paths.get( args[++i] );
+			} else if ( "--replay-input".equals( args[i] ) && i+1 < args.length ) {
+				replayInput = Paths.get( args[++i] );
+			} else if ( "--passive-rendering".equals( args[i] ) ) {
+				activeRendering = false;
+			} else if ( "--fixed-quality".equals( args[i] ) ) {
+				adaptiveQuality = false;
+			} else if ( "--simulate-motions".equals( args[i] ) ) {
+				simulateMotions = true;
+			} else if ( "--simulation-rate".equals( args[i] ) && i+1 < args.length ) {
+				simulationRate = Double.parseDouble( args[++i] );
+			} else if ( "--render-rate".equals( args[i] ) && i+1 < args.length ) {
+				renderRate = Double.parseDouble( args[++i] );
+			} else {
+				System.err.println("Usage: [--record-input <file> | --replay-input <file>] [--passive-rendering] [--fixed-quality] [--simulate-motions] "+
+						"[--simulation-rate <ticks per second>] [--render-rate <frames per second>]");
+				System.exit(1);
+			}
+		}
+
+		// the sandbox delivers its result in whatever tick the background thread happens to finish,
+		// which would make recorded input replay differently
+		if ( simulateMotions && ( recordInput != null || replayInput != null ) ) {
+			System.err.println("--simulate-motions cannot be combined with --record-input or --replay-input");
+			System.exit(1);
+		}
+
+		final Main main = new Main( activeRendering );
+		main.panel.setAdaptiveQuality( adaptiveQuality );
+		if ( simulateMotions ) {
+			main.robotArm.setSandbox( new WorldSandbox() );
+		}
+		main.setRates( simulationRate , renderRate );
+		if ( recordInput != null ) {
+			main.recordInput( recordInput );
+		} else if ( replayInput != null ) {
+			main.replayInput( replayInput );
+		}
+		main.run();
 	}
 
 	private final WorldModel worldModel;
 	private final RobotArm robotArm;
 
 	private final KeyboardInput keyboardInput = new KeyboardInput();
+	private final AwtInputSource awtInput = new AwtInputSource();
+	private IInputSource inputSource = awtInput;
+	private InputRecorder inputRecorder;
+	private InputPlayer inputPlayer;
+
+	// time per simulation tick when recording/replaying input, 0 to use the wall clock
+	private float fixedTickSeconds;
+	private double simulationRate = 1 / Constants.PHYSICS_TIMESTEP;
+	private double renderRate = DESIRED_FPS;
 	private final MyPanel panel;
 	private final TickListenerContainer listenerContainer = new TickListenerContainer();
+	private final Profiler profiler = new Profiler();
+
+	private final TripleBuffer<WorldSnapshot> snapshots = new TripleBuffer<>( WorldSnapshot::new );
+	private long lastSnapshotStep = -1;
+
+	private KinematicsChain debugChain;
+	private boolean debugChainChanged;
 
-	public Main()
+	public Main() {
+		this(true);
+	}
+
+	/**
+	 * @param activeRendering whether to render using a buffer strategy instead of Swing's painting
+	 */
+	public Main(boolean activeRendering)
 	{
 		Box2D.init();
 
 		worldModel = new WorldModel();
+		worldModel.setRecorder( new StepRecorder( RECORDING_BUFFER_SIZE ) );
 
 		robotArm = new RobotArm( worldModel );
 
-		panel = new MyPanel( robotArm , worldModel );
-		keyboardInput.attach( panel );
+		panel = new MyPanel( snapshots , activeRendering );
+		awtInput.attach( panel );
+		if ( panel.getCanvas() != null ) {
+			awtInput.attach( panel.getCanvas() );
+		}
+		awtInput.setViewMapping( panel );
 
 		listenerContainer.add( robotArm );
 		listenerContainer.add( worldModel );
+
+		listenerContainer.setProfiler( profiler );
+		robotArm.setProfiler( profiler );
+		panel.setProfiler( profiler );
+	}
+
+	/**
+	 * Sets how often the main loop advances the simulation and renders a frame.
+	 *
+	 * The simulation rate is ignored when recording or replaying input, the recording's fixed clock is used instead.
+	 *
+	 * @param simulationRate simulation ticks per second
+	 * @param renderRate frames per second
+	 */
+	public void setRates(double simulationRate,double renderRate)
+	{
+		if ( simulationRate <= 0 || renderRate <= 0 ) {
+			throw new IllegalArgumentException("Rates must be > 0");
+		}
+		this.simulationRate = simulationRate;
+		this.renderRate = renderRate;
+	}
+
+	/**
+	 * Records all input events, the main loop switches to a fixed clock so that
+	 * the session can be replayed deterministically using {@link #replayInput(Path)}.
+	 */
+	public void recordInput(Path file) throws IOException
+	{
+		inputRecorder = new InputRecorder( file , FIXED_TICK_SECONDS );
+		awtInput.setRecorder( inputRecorder );
+		fixedTickSeconds = FIXED_TICK_SECONDS;
+
+		Runtime.getRuntime().addShutdownHook( new Thread( () ->
+		{
+			try {
+				inputRecorder.close();
+				System.out.println("Recorded "+inputRecorder.getEventCount()+" input events to "+file.toAbsolutePath()+
+						" ("+awtInput.getDroppedEvents()+" dropped)");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}));
+	}
+
+	/**
+	 * Replays input events recorded by {@link #recordInput(Path)} as fast as possible,
+	 * prints timing statistics and exits once the end of the recording has been reached.
+	 */
+	public void replayInput(Path file) throws IOException
+	{
+		inputPlayer = new InputPlayer( file );
+		inputPlayer.setViewMapping( panel );
+		inputSource = inputPlayer;
+
+		// nobody drains the AWT queue while replaying
+		awtInput.detach( panel );
+		if ( panel.getCanvas() != null ) {
+			awtInput.detach( panel.getCanvas() );
+		}
+		fixedTickSeconds = inputPlayer.getSecondsPerTick();
+		System.out.println("Replaying "+inputPlayer.getEventCount()+" input events over "+inputPlayer.getEndTick()+" ticks");
 	}
 
 	public void run() {
@@ -53,36 +200,116 @@ public class Main implements IMathSupport
 		frame.pack();
 		frame.setLocationRelativeTo(null);
 		frame.setVisible(true);
+		if ( panel.getCanvas() != null ) {
+			panel.getCanvas().requestFocus();
+		}
 
-		// main loop
-		long previous = System.currentTimeMillis();
-		float sumSeconds=0;
+		final LoopScheduler scheduler = createScheduler();
+		scheduler.setProfiler( profiler );
+		panel.setFrameBudgetNanos( scheduler.getRenderPeriodNanos() );
+		if ( inputPlayer == null )
+		{
+			Runtime.getRuntime().addShutdownHook( new Thread( () -> printSchedulerStatistics( scheduler ) ) );
+		}
 
+		// main loop
+		final float simulationSeconds = scheduler.getSimulationPeriodSeconds();
+		final float renderSeconds = scheduler.getRenderPeriodSeconds();
 		final MouseInput.State mouseState = new MouseInput.State();
 
+		final long startNanos = System.nanoTime();
+		scheduler.start();
+		long tick = 0;
 		while ( true )
 		{
-			final long now = System.currentTimeMillis();
-			final float deltaSeconds = (now - previous)/1000f;
-			sumSeconds += deltaSeconds;
-			previous = now;
+			final int due = scheduler.awaitNext();
+			if ( ( due & LoopScheduler.SIMULATE ) != 0 )
+			{
+				if ( inputPlayer != null && inputPlayer.isFinished( tick ) )
+				{
+					printReplayResults( tick , System.nanoTime() - startNanos );
+					System.exit(0);
+				}
+				if ( inputRecorder != null ) {
+					inputRecorder.setCurrentTick( tick );
+				}
 
-			processMouseInput(mouseState);
+				inputSource.dispatch( tick , panel.mouseInput , keyboardInput );
 
-			processKeyboardInput();
+				processMouseInput(mouseState);
 
-			listenerContainer.tick( deltaSeconds );
+				processKeyboardInput();
 
-			robotArm.getModel().getChains().forEach( chain -> chain.syncWithBox2d() );
+				listenerContainer.tick( simulationSeconds );
 
-			if ( sumSeconds >= 1.0f/DESIRED_FPS )
-			{
-				panel.tick( sumSeconds );
-				sumSeconds = 0;
+				publishSnapshot();
+				tick++;
+			}
+
+			if ( ( due & LoopScheduler.RENDER ) != 0 ) {
+				panel.tick( renderSeconds );
 			}
 		}
 	}
 
+	private LoopScheduler createScheduler()
+	{
+		if ( fixedTickSeconds <= 0 ) {
+			return new LoopScheduler( simulationRate , renderRate , LoopScheduler.Pacing.REAL_TIME );
+		}
+		// frames are scheduled in simulation time so they happen at the same ticks when replaying
+		if ( inputPlayer != null ) {
+			return new LoopScheduler( 1 / fixedTickSeconds , renderRate , LoopScheduler.Pacing.UNTHROTTLED );
+		}
+		// keep the simulation at real-time speed while a human is providing the input
+		return new LoopScheduler( 1 / fixedTickSeconds , renderRate , LoopScheduler.Pacing.REAL_TIME_LOCKSTEP );
+	}
+
+	private static void printSchedulerStatistics(LoopScheduler scheduler)
+	{
+		final TimingHistogram jitter = scheduler.getJitter();
+		System.out.println( String.format( "Main loop: %d simulation ticks (%d skipped), %d frames (%d skipped)" ,
+				scheduler.getSimulationTicks() , scheduler.getSkippedSimulationTicks() ,
+				scheduler.getRenderTicks() , scheduler.getSkippedRenderTicks() ) );
+		System.out.println( String.format( "Wake-up jitter p50/p95/p99/max: %.3f / %.3f / %.3f / %.3f ms , spin-wait %.3f ms" ,
+				jitter.getPercentile( 50 ) / 1_000_000d , jitter.getPercentile( 95 ) / 1_000_000d , jitter.getPercentile( 99 ) / 1_000_000d ,
+				jitter.getMax() / 1_000_000d , scheduler.getSpinNanos() / 1_000_000d ) );
+	}
+
+	private void printReplayResults(long ticks,long elapsedNanos)
+	{
+		final double elapsedMillis = elapsedNanos / 1_000_000d;
+		System.out.println("Replayed "+ticks+" ticks ("+worldModel.getStepCount()+" physics steps, "+worldModel.getDroppedSteps()+" dropped) in "+
+				String.format("%.1f ms , %.3f ms/tick" , elapsedMillis , elapsedMillis / Math.max( 1 , ticks ) ) );
+
+		final FPSTracker frames = panel.getFPSTracker();
+		System.out.println( String.format( "Frame time p50/p95/p99/max: %.2f / %.2f / %.2f / %.2f ms , %d frames took longer to render than the budget" ,
+				frames.getPercentile( 50 ) / 1_000_000d , frames.getPercentile( 95 ) / 1_000_000d , frames.getPercentile( 99 ) / 1_000_000d ,
+				frames.getMaxFrameNanos() / 1_000_000d , frames.getOverBudgetCount() ) );
+		System.out.println("Render quality at end of replay: "+panel.getRenderQuality()+( panel.isAdaptiveQuality() ? " (adaptive)" : "" ) );
+	}
+
+	private void publishSnapshot()
+	{
+		final long stepCount = worldModel.getStepCount();
+		if ( stepCount != lastSnapshotStep ) {
+			robotArm.getModel().getChains().forEach( KinematicsChain::syncWithBox2d );
+		}
+		if ( stepCount != lastSnapshotStep || debugChainChanged )
+		{
+			snapshots.getWriteBuffer().capture( robotArm , worldModel , debugChain );
+			snapshots.publish();
+			lastSnapshotStep = stepCount;
+			debugChainChanged = false;
+		}
+	}
+
+	private void setDebugChain(KinematicsChain chain)
+	{
+		this.debugChain = chain;
+		this.debugChainChanged = true;
+	}
+
 	private void processKeyboardInput()
 	{
 		if ( keyboardInput.isEmergencyStop() ) {
@@ -90,6 +317,14 @@ public class Main implements IMathSupport
 			robotArm.emergencyStop();
 		}
 
+		if ( keyboardInput.isSaveRecording() ) {
+			saveRecording();
+		}
+
+		if ( keyboardInput.isToggleProfiler() ) {
+			panel.setShowProfilerOverlay( ! panel.isShowProfilerOverlay() );
+		}
+
 		if ( keyboardInput.isOpenGripper() )
 		{
 			if ( robotArm.setClaw( 1.0f ) ) {
@@ -125,32 +360,64 @@ public class Main implements IMathSupport
 		}
 	}
 
+	private void saveRecording()
+	{
+		final Path file = Paths.get( "inversek-"+System.currentTimeMillis()+".rec" );
+		try
+		{
+			worldModel.getRecorder().flush( file );
+			System.out.println("Saved recording to "+file.toAbsolutePath());
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to save recording to "+file.toAbsolutePath());
+			e.printStackTrace();
+		}
+	}
+
 	private void processMouseInput(MouseInput.State state)
 	{
-		panel.mouseInput.getState(state);
-		panel.mouseInput.clearInput();
+		final MouseInput mouseInput = panel.mouseInput;
+		mouseInput.getState(state);
+		for ( int i = 0 , len = mouseInput.getClickCount() ; i < len ; i++ ) {
+			processClick( mouseInput.getClickButton( i ) , mouseInput.getClickX( i ) , mouseInput.getClickY( i ) );
+		}
+		mouseInput.clearInput();
+
+		if ( state.mouseMoved )
+		{
+				panel.currentMousePosition = new Point(state.mouseX,state.mouseY);
+
+				final Node<?> n = panel.getNodeAt( state.mouseX , state.mouseY);
+				if ( panel.hoveredNode != n ) {
+					panel.hoveredNode = n;
+				}
+		}
+	}
 
-		if ( state.button == MouseInput.Button.LEFT )
+	private void processClick(MouseInput.Button button,int mouseX,int mouseY)
+	{
+		if ( button == MouseInput.Button.LEFT )
 		{
-			final Node<?> n = panel.getNodeAt( state.mouseX , state.mouseY );
+			final Node<?> n = panel.getNodeAt( mouseX , mouseY );
 			if ( n != null && panel.selectedNode != n )
 			{
 				panel.selectedNode = n;
 			}
 		}
-		else if ( state.button == MouseInput.Button.MIDDLE )
+		else if ( button == MouseInput.Button.MIDDLE )
 		{
-			Vector2 modelCoords = panel.viewToModel( new Point( state.mouseX , state.mouseY ) );
+			Vector2 modelCoords = panel.viewToModel( new Point( mouseX , mouseY ) );
 			if ( modelCoords.y > 0 ) {
 				worldModel.addBall( modelCoords.x , modelCoords.y );
 			}
 		}
-		else if ( state.button == MouseInput.Button.RIGHT )
+		else if ( button == MouseInput.Button.RIGHT )
 		{
 			final Point desired = panel.desiredPosition;
-			if ( desired == null || desired.x != state.mouseX || desired.y != state.mouseY )
+			if ( desired == null || desired.x != mouseX || desired.y != mouseY )
 			{
-				final Point p = new Point( state.mouseX , state.mouseY );
+				final Point p = new Point( mouseX , mouseY );
 				panel.desiredPosition = p;
 
 				final Vector2 worldCoords = panel.viewToModel( p );
@@ -168,10 +435,10 @@ public class Main implements IMathSupport
 						switch (outcome)
 						{
 							case SUCCESS:
-								panel.setDebugRender( solver.getChain() );
+								setDebugChain( solver.getChain() );
 								break;
 							case FAILURE:
-								panel.setDebugRender( null );
+								setDebugChain( null );
 								break;
 							default:
 								throw new IllegalStateException("Unexpected outcome: "+outcome);
@@ -186,15 +453,5 @@ public class Main implements IMathSupport
 				}
 			}
 		}
-
-		if ( state.mouseMoved )
-		{
-				panel.currentMousePosition = new Point(state.mouseX,state.mouseY);
-
-				final Node<?> n = panel.getNodeAt( state.mouseX , state.mouseY);
-				if ( panel.hoveredNode != n ) {
-					panel.hoveredNode = n;
-				}
-		}
 	}
 }
\ No newline at end of file
@@ -1,104 +1,89 @@
 package de.codesourcery.inversek;
 
-import java.awt.Component;
-import java.awt.Point;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
+import java.util.Arrays;
 
+/**
+ * Mouse state as seen by the main loop, fed by an {@link IInputSource}.
+ *
+ * Only ever accessed by the main loop thread. All clicks since the last call to {@link #clearInput()} are
+ * kept, not just the most recent one.
+ */
 public class MouseInput
 {
 	public static enum Button { LEFT,RIGHT,MIDDLE }
 
-	private final Object LOCK = new Object();
+	private static final Button[] BUTTONS = Button.values();
 
 	public static final class State
 	{
 		public int mouseX;
 		public int mouseY;
-		public Button button;
 		public boolean mouseMoved;
 
 		public State() {
 		}
 
-		public void set(int mouseX, int mouseY, Button button, boolean mouseMoved) {
+		public void set(int mouseX, int mouseY, boolean mouseMoved) {
 			this.mouseX = mouseX;
 			this.mouseY = mouseY;
-			this.button = button;
 			this.mouseMoved = mouseMoved;
 		}
 	}
 
 	private int currentX;
 	private int currentY;
-	private Button button;
 	private boolean mouseMoved = true;
 
-	private final MouseAdapter adapter = new MouseAdapter()
-	{
-		@Override
-		public void mouseMoved(MouseEvent e)
-		{
-			setCurrentPosition( e.getPoint() );
-		}
+	// clicks as (button ordinal,x,y) tuples
+	private int[] clicks = new int[ 3*4 ];
+	private int clickCount;
 
-		@Override
-		public void mouseClicked(java.awt.event.MouseEvent e)
-		{
-			final Button b;
-			switch( e.getButton() )
-			{
-				case MouseEvent.BUTTON1: b = Button.LEFT; break;
-				case MouseEvent.BUTTON2: b = Button.MIDDLE; break;
-				case MouseEvent.BUTTON3: b = Button.RIGHT; break;
-				default:
-					return;
-			}
-			buttonClicked(b,e.getPoint());
-		}
-	};
-
-	public void attach(Component c)
+	public void setCurrentPosition(int x,int y)
 	{
-		c.addMouseListener( adapter );
-		c.addMouseMotionListener( adapter );
+		this.mouseMoved |= this.currentX != x || this.currentY != y;
+		this.currentX = x;
+		this.currentY = y;
 	}
 
-	public void setCurrentPosition(Point p)
-	{
-		synchronized(LOCK)
-		{
-			this.mouseMoved |= this.currentX != p.x || this.currentY != p.y;
-			this.currentX = p.x;
-			this.currentY = p.y;
-		}
-	}
-
-	public void buttonClicked(Button button,Point p)
+	public void buttonClicked(Button button,int x,int y)
 	{
 		if ( button == null ) {
 			throw new IllegalArgumentException("button must not be NULL");
 		}
-		synchronized(LOCK)
-		{
-			this.button = button;
-			setCurrentPosition(p);
+		if ( clickCount*3 == clicks.length ) {
+			clicks = Arrays.copyOf( clicks , clicks.length*2 );
 		}
+		clicks[ clickCount*3 ] = button.ordinal();
+		clicks[ clickCount*3+1 ] = x;
+		clicks[ clickCount*3+2 ] = y;
+		clickCount++;
+		setCurrentPosition(x,y);
 	}
 
 	public void getState(State state)
 	{
-		synchronized(LOCK)
-		{
-			state.set( currentX , currentY, button, mouseMoved);
-		}
+		state.set( currentX , currentY, mouseMoved);
+	}
+
+	public int getClickCount() {
+		return clickCount;
+	}
+
+	public Button getClickButton(int index) {
+		return BUTTONS[ clicks[ index*3 ] ];
+	}
+
+	public int getClickX(int index) {
+		return clicks[ index*3+1 ];
+	}
+
+	public int getClickY(int index) {
+		return clicks[ index*3+2 ];
 	}
 
 	public void clearInput()
 	{
-		synchronized(LOCK) {
-			this.button = null;
-			this.mouseMoved = false;
-		}
+		this.clickCount = 0;
+		this.mouseMoved = false;
 	}
-}
\ No newline at end of file
+}
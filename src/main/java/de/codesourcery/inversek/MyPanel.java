@@ -1,50 +1,34 @@
 package de.codesourcery.inversek;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
-import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.utils.SharedLibraryLoader;
 
-import de.codesourcery.inversek.WorldModel.Ball;
-
-public final class MyPanel extends JPanel implements ITickListener , IMathSupport
+public final class MyPanel extends JPanel implements ITickListener , IMathSupport , InputEvent.IViewMapping
 {
-	private static final Color BACKGROUND_COLOR = Color.WHITE;
-
-	private static final Color ROBOT_BASE_COLOR = Color.BLACK;
-
-	private static final Color JOINT_COLOR = Color.RED;
-
-	private static final Color BALL_COLOR = Color.GREEN;
-
-	private static final Color GRIPPER_BONE_COLOR = Color.BLACK;
-	private static final Color GRIPPER_BASEPLATE_COLOR = Color.YELLOW;
-	private static final Color GRIPPER_LOWER_CLAW_COLOR = Color.RED;
-	private static final Color GRIPPER_UPPER_CLAW_COLOR = Color.CYAN;
+	private static final Font PROFILER_FONT = new Font( Font.MONOSPACED , Font.PLAIN , 12 );
 
-	private static final Color BONE_COLOR = Color.BLUE;
+	// baselines of the overlay texts, each text line covers a full-width strip of TEXT_LINE_HEIGHT pixels above it
+	private static final int SELECTION_TEXT_Y = 15;
+	private static final int MOUSE_TEXT_Y = 35;
+	private static final int TEXT_LINE_HEIGHT = 20;
 
-	protected static final Color SELECTION_COLOR = Color.GREEN;
-	protected static final Color HOVER_COLOR = Color.MAGENTA;
-
-	protected static final Box tmpBox = new Box();
-
-	private final RobotArm robotModel;
+	private static final int PROFILER_OVERLAY_WIDTH = 330;
+	private static final int PROFILER_LINE_HEIGHT = 15;
 
 	private final Object RENDER_LOCK = new Object();
 
@@ -52,13 +36,70 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 
 	private final FPSTracker fpsTracker = new FPSTracker();
 
-	private final WorldModel worldModel;
+	private Profiler profiler;
+	private Profiler.Section overlaysSection;
+	private Profiler.Section swapSection;
+	private volatile boolean showProfilerOverlay;
+
+	private final TripleBuffer<WorldSnapshot> snapshots;
+
+	// snapshot used for the most recent frame, owned by the render thread
+	// and only accessed while holding RENDER_LOCK
+	private WorldSnapshot snapshot;
 
+	// passive rendering: scene gets rendered into one image while Swing paints the other
 	private final BufferedImage[] buffers = new BufferedImage[2];
 	private final Graphics2D[] graphics = new Graphics2D[2];
 	private int bufferIdx = 0;
 
-	private KinematicsChain debugChain;
+	// active rendering: scene gets rendered straight into the canvas' buffer strategy
+	private final Canvas canvas;
+	private volatile boolean activeRendering;
+	private BufferStrategy strategy;
+	// if set, all rendering goes here instead of the current back buffer
+	private Graphics2D frameGraphics;
+	private int viewportWidth = -1;
+	private int viewportHeight = -1;
+
+	// draws the world and the robot arm, only accessed while holding RENDER_LOCK
+	private final SceneRenderer sceneRenderer = new SceneRenderer();
+
+	private final Vector2 tmp0 = new Vector2();
+	private final Vector2 tmp1 = new Vector2();
+	private final SceneRenderer.Box pickBox = new SceneRenderer.Box();
+	private final PickingIndex pickingIndex = new PickingIndex( 32 );
+
+	// screen regions that changed since the previous frame, frames without changes are skipped
+	private final SceneChangeTracker changeTracker = new SceneChangeTracker();
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+	// passive rendering: the back buffer still holds the frame before the previous one,
+	// so it misses the changes of both frames
+	private final DirtyRegion previousDirtyRegion = new DirtyRegion();
+	private final DirtyRegion backBufferDirtyRegion = new DirtyRegion();
+	// set if the whole view needs to be redrawn (canvas got exposed etc.)
+	private volatile boolean fullRedrawRequested = true;
+	private final Rectangle profilerOverlayBounds = new Rectangle();
+	// union of the dirty rectangles, used as clip for partial redraws
+	private final Path2D.Float dirtyClip = new Path2D.Float();
+
+	// lowers the level of detail if rendering takes too long
+	private final RenderQualityGovernor qualityGovernor = new RenderQualityGovernor( 1_000_000_000L / Main.DESIRED_FPS );
+	private volatile boolean adaptiveQuality = true;
+
+	// state of the volatile fields below as of the current frame
+	private Node<?> frameSelectedNode;
+	private Node<?> frameHoveredNode;
+	private float frameSelectionAngle;
+	private Point frameMousePosition;
+	private Point frameDesiredPosition;
+	private boolean frameShowProfilerOverlay;
+
+	// overlay texts are only rebuilt when their content changes
+	private Point mouseTextPosition;
+	private String mouseText;
+	private Node<?> selectionTextNode;
+	private float selectionTextAngle;
+	private String selectionText;
 
 	public volatile Node<?> selectedNode;
 	public volatile Node<?> hoveredNode;
@@ -67,153 +108,114 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 
 	public volatile Point desiredPosition;
 
-	private final OrthographicCamera camera;
-
-	static {
-		new SharedLibraryLoader().load("gdx");
-	}
-
 	public final MouseInput mouseInput = new MouseInput();
 
-	protected static final class Box
+	public Node<?> getNodeAt(int x,int y)
 	{
-		public final Vector2 p0 = new Vector2();
-		public final Vector2 p1 = new Vector2();
-		public final Vector2 p2 = new Vector2();
-		public final Vector2 p3 = new Vector2();
-
-		public Box() {
-		}
-
-		public boolean contains(float x,float y)
-		{
-			float xMin = min( min( min( p0.x , p1.x ) , p2.x ) , p3.x );
-			if ( x < xMin ) {
-				return false;
-			}
-
-			float yMin = min( min( min( p0.y , p1.y ) , p2.y ) , p3.y );
-			if ( y < yMin ) {
-				return false;
-			}
-
-			float xMax = max( max( max( p0.x , p1.x ) , p2.x ) , p3.x );
-			if ( x > xMax ) {
-				return false;
-			}
-			float yMax = max( max( max( p0.y , p1.y ) , p2.y ) , p3.y );
-			return y <= yMax;
-		}
-
-		public void getOrientedLine(Vector2 start,Vector2 end)
+		synchronized(RENDER_LOCK)
 		{
-			start.set( p0 ).add( p3 ).scl(0.5f);
-			end.set( p1 ).add( p2 ).scl(0.5f);
-		}
-
-		public Vector2 getMin(Vector2 vec) {
-			vec.x = min( min( min( p0.x , p1.x ) , p2.x ) , p3.x );
-			vec.y = min( min( min( p0.y , p1.y ) , p2.y ) , p3.y );
-			return vec;
-		}
-
-		public Vector2 getMax(Vector2 vec) {
-			vec.x = max( max( max( p0.x , p1.x ) , p2.x ) , p3.x );
-			vec.y = max( max( max( p0.y , p1.y ) , p2.y ) , p3.y );
-			return vec;
-		}
-
-		private static float min(float a,float b) {
-			return a < b ? a : b;
+			return pickingIndex.find( x , y );
 		}
+	}
 
-		private static float max(float a,float b) {
-			return a > b ? a : b;
-		}
+	/**
+	 * Rebuilds the picking index from the screen-space bounding boxes of all joints and bones,
+	 * joints take precedence over bones.
+	 */
+	private void rebuildPickingIndex(WorldSnapshot snapshot)
+	{
+		pickingIndex.clear( getWidth() , getHeight() );
 
-		public Vector2 getCenter(Vector2 vec)
+		final SceneRenderer.Box boundingBox = pickBox;
+		final Vector2 min = tmp0;
+		final Vector2 max = tmp1;
+		for ( int i = 0 ; i < snapshot.jointCount ; i++ )
 		{
-			final Vector2 c0 = p0.cpy().add( p1 ).scl(0.5f);
-			final Vector2 c1 = p2.cpy().add( p3 ).scl(0.5f);
-			vec.set( c0.add( c1 ).scl(0.5f) );
-			return vec;
+			sceneRenderer.getJointBoundingBox( snapshot , i , boundingBox );
+			sceneRenderer.modelToView( boundingBox );
+			boundingBox.getMin( min );
+			boundingBox.getMax( max );
+			pickingIndex.add( snapshot.joints[i] , min.x , min.y , max.x , max.y );
 		}
-
-		public void set(Vector2 centerInWorldCoords,float xExtent,float yExtent,float angleInDegrees)
+		for ( int i = 0 ; i < snapshot.boneCount ; i++ )
 		{
-			p0.set(-xExtent/2, yExtent/2);
-			p1.set( xExtent/2, yExtent/2);
-			p2.set( xExtent/2,-yExtent/2);
-			p3.set(-xExtent/2,-yExtent/2);
-
-			if ( angleInDegrees != 0 )
-			{
-				p0.rotate( angleInDegrees );
-				p1.rotate( angleInDegrees );
-				p2.rotate( angleInDegrees );
-				p3.rotate( angleInDegrees );
-			}
-
-			p0.add( centerInWorldCoords );
-			p1.add( centerInWorldCoords );
-			p2.add( centerInWorldCoords );
-			p3.add( centerInWorldCoords );
+			sceneRenderer.getBoneBoundingBox( snapshot , i , boundingBox );
+			sceneRenderer.modelToView( boundingBox );
+			boundingBox.getMin( min );
+			boundingBox.getMax( max );
+			pickingIndex.add( snapshot.bones[i] , min.x , min.y , max.x , max.y );
 		}
+		pickingIndex.build();
 	}
 
-	public Node<?> getNodeAt(int x,int y)
+	/**
+	 * Creates a panel that renders into off-screen images which get painted by Swing.
+	 */
+	public MyPanel(TripleBuffer<WorldSnapshot> snapshots)
 	{
-		final Box boundingBox = new Box();
-		for ( KinematicsChain chain : robotModel.getModel().getChains() )
-		{
-			final Node<?> n = chain.stream()
-					.filter( node ->
-					{
-						getBoundingBoxInScreenCoords( node , boundingBox );
-						return boundingBox.contains( x,y );
-					})
-					.findFirst().orElse( null );
-			if ( n != null ) {
-				return n;
-			}
-		}
-		return null;
+		this(snapshots,false);
 	}
 
-	public MyPanel(RobotArm arm,WorldModel worldModel)
+	/**
+	 * @param activeRendering whether to render into an accelerated {@link BufferStrategy} of a
+	 * {@link Canvas} instead of going through Swing's painting, falls back to passive
+	 * rendering if no buffer strategy can be created
+	 */
+	public MyPanel(TripleBuffer<WorldSnapshot> snapshots,boolean activeRendering)
 	{
-		camera = new OrthographicCamera( 320 , 240 );
-		updateCamera( camera , 320 , 240 );
+		if ( snapshots == null ) {
+			throw new IllegalArgumentException("snapshots must not be NULL");
+		}
+		this.snapshots = snapshots;
+		this.activeRendering = activeRendering;
+		if ( activeRendering )
+		{
+			canvas = new Canvas()
+			{
+				@Override
+				public void paint(Graphics g) {
+					// rendering is done by the main loop
+					fullRedrawRequested = true;
+				}
 
-		this.robotModel = arm;
-		this.worldModel = worldModel;
-		mouseInput.attach(this);
+				@Override
+				public void update(Graphics g) {
+				}
+			};
+			canvas.setIgnoreRepaint( true );
+			canvas.setFocusable( true );
+			setLayout( new BorderLayout() );
+			add( canvas , BorderLayout.CENTER );
+		} else {
+			canvas = null;
+		}
 		setFocusable(true);
 		requestFocus();
 	}
 
-	protected void getBoundingBoxInScreenCoords(Node<?> node,Box boundingBox)
-	{
-		switch( node.getType() )
-		{
-			case BONE:
-				setBoundingBox( (Bone) node , boundingBox );
-				break;
-			case JOINT:
-				getBoundingBox((Joint) node,boundingBox);
-				break;
-			default:
-				throw new RuntimeException("Internal error,unhandled switch/case: "+node.getType());
-		}
-		modelToView( boundingBox );
+	/**
+	 * Returns the canvas used for active rendering.
+	 *
+	 * @return canvas or <code>null</code> if this panel uses passive rendering. Input
+	 * events on the canvas are not delivered to the panel itself.
+	 */
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	public boolean isActiveRendering() {
+		return activeRendering;
 	}
 
 	@Override
 	protected void paintComponent(Graphics g)
 	{
 		super.paintComponent(g);
-		g.drawImage( getFrontBufferImage() , 0 , 0 , null );
-		Toolkit.getDefaultToolkit().sync();
+		if ( ! activeRendering )
+		{
+			g.drawImage( getFrontBufferImage() , 0 , 0 , null );
+			Toolkit.getDefaultToolkit().sync();
+		}
 	}
 
 	private int debugBones = 10;
@@ -222,155 +224,433 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 	{
 		synchronized(RENDER_LOCK)
 		{
-			clearBackBuffer();
+			snapshot = snapshots.getReadBuffer();
+			snapshot.interpolate( snapshot.getInterpolationAlpha( System.nanoTime() ) );
+
+			if ( ! prepareViewport() ) {
+				return;
+			}
+
+			collectDirtyRegions( snapshot );
+			if ( dirtyRegion.isEmpty() )
+			{
+				// nothing changed, the frame that is on screen is still up-to-date
+				fpsTracker.frameSkipped();
+				return;
+			}
 
-			// render world
-			renderWorld();
+			final long renderStart = System.nanoTime();
+			addOverlayDirtyRegions();
+
+			rebuildPickingIndex( snapshot );
+
+			if ( activeRendering )
+			{
+				renderActive( snapshot );
+			}
+			else
+			{
+				// render everything the back buffer misses
+				backBufferDirtyRegion.set( dirtyRegion );
+				backBufferDirtyRegion.add( previousDirtyRegion );
+				previousDirtyRegion.set( dirtyRegion );
+
+				renderScene( snapshot , backBufferDirtyRegion );
+
+				begin( swapSection );
+				swapBuffers();
+				end( swapSection );
+
+				if ( dirtyRegion.isFull() ) {
+					repaint();
+				}
+				else
+				{
+					for ( int i = 0 , len = dirtyRegion.size() ; i < len ; i++ )
+					{
+						final Rectangle r = dirtyRegion.get( i );
+						repaint( r.x , r.y , r.width , r.height );
+					}
+				}
+			}
+
+			final long renderNanos = System.nanoTime() - renderStart;
+			fpsTracker.frameFinished( renderStart , renderNanos );
+			if ( adaptiveQuality && qualityGovernor.frameRendered( renderNanos ) ) {
+				setRenderQuality( qualityGovernor.getQuality() );
+			}
 
 			// render robot arm
 			if ( debugBones > 0 )
 			{
 				debugBones--;
-				for ( Bone b : robotModel.getModel().getChains().get(0).getBones()) {
-					System.out.println("Bone "+b.getId()+": start="+b.start+" -> end="+b.end+", center: "+b.getCenter() );
+				for ( int i = 0 ; i < snapshot.boneCount ; i++ )
+				{
+					final int offset = i*WorldSnapshot.LINE_SIZE;
+					System.out.println("Bone "+snapshot.bones[i].getId()+": start=("+snapshot.boneLines[offset]+","+snapshot.boneLines[offset+1]+
+							") -> end=("+snapshot.boneLines[offset+2]+","+snapshot.boneLines[offset+3]+")");
 				}
-				for ( Joint j : robotModel.getModel().getChains().get(0).getJoints() ) {
-					System.out.println( j+" @ "+j.position);
+				for ( int i = 0 ; i < snapshot.jointCount ; i++ ) {
+					System.out.println( snapshot.joints[i]+" @ ("+snapshot.jointPositions[i*2]+","+snapshot.jointPositions[i*2+1]+")");
 				}
 				System.out.println("---");
 			}
+		}
+	}
 
-			renderDebugChain();
+	/**
+	 * Makes sure the scene renderer's viewport matches the current size of the drawing area.
+	 *
+	 * @return <code>false</code> if there is nothing to render to
+	 */
+	private boolean prepareViewport()
+	{
+		if ( ! activeRendering )
+		{
+			maybeInit();
+			return true;
+		}
 
-			robotModel.getModel().getChains().forEach( chain -> chain.getBones().forEach( this::renderBone) );
-			robotModel.getModel().getChains().forEach( chain -> chain.getJoints().forEach( this::renderJoint ) );
+		final int width = canvas.getWidth();
+		final int height = canvas.getHeight();
+		if ( width <= 0 || height <= 0 || ! canvas.isDisplayable() ) {
+			return false;
+		}
 
-			renderFPS( deltaSeconds );
+		if ( strategy == null )
+		{
+			try {
+				canvas.createBufferStrategy( 2 );
+				strategy = canvas.getBufferStrategy();
+			}
+			catch(RuntimeException e)
+			{
+				System.err.println("Failed to create buffer strategy, falling back to passive rendering");
+				e.printStackTrace();
+				activeRendering = false;
+				SwingUtilities.invokeLater( () ->
+				{
+					remove( canvas );
+					revalidate();
+					repaint();
+				});
+				return false;
+			}
+			fullRedrawRequested = true;
+		}
 
-			renderMousePosition();
+		if ( width != viewportWidth || height != viewportHeight )
+		{
+			sceneRenderer.setViewport( width , height );
+			viewportWidth = width;
+			viewportHeight = height;
+			fullRedrawRequested = true;
+		}
+		return true;
+	}
 
-			renderSelectionInfo();
+	/**
+	 * Compares the snapshot and overlay state with the previous frame and
+	 * stores the screen regions that need to be redrawn in {@link #dirtyRegion}.
+	 */
+	private void collectDirtyRegions(WorldSnapshot snapshot)
+	{
+		final int width = sceneRenderer.getWidth();
+		dirtyRegion.clear( width , sceneRenderer.getHeight() );
+		if ( fullRedrawRequested )
+		{
+			fullRedrawRequested = false;
+			changeTracker.invalidate();
+		}
 
-			renderDesiredPosition();
+		final Node<?> selected = selectedNode;
+		final Node<?> hovered = hoveredNode;
+		changeTracker.update( snapshot , sceneRenderer , selected , hovered , dirtyRegion );
 
-			swapBuffers();
+		final int selectedJointIdx = selected != null && selected.getType() == Node.NodeType.JOINT ? snapshot.indexOfJoint( selected ) : -1;
+		final float selectionAngle = selectedJointIdx == -1 ? 0 : snapshot.jointAngles[ selectedJointIdx ];
+		if ( selected != frameSelectedNode || selectionAngle != frameSelectionAngle ) {
+			dirtyRegion.add( 0 , SELECTION_TEXT_Y - TEXT_LINE_HEIGHT + 5 , width , TEXT_LINE_HEIGHT );
+		}
+
+		final Point mouse = currentMousePosition;
+		if ( mouse != frameMousePosition ) {
+			dirtyRegion.add( 0 , MOUSE_TEXT_Y - TEXT_LINE_HEIGHT + 5 , width , TEXT_LINE_HEIGHT );
+		}
+
+		final Point desired = desiredPosition;
+		if ( desired != frameDesiredPosition )
+		{
+			addCrosshairDirtyRegion( frameDesiredPosition );
+			addCrosshairDirtyRegion( desired );
+		}
+
+		final boolean showProfiler = showProfilerOverlay && profiler != null;
+		if ( showProfiler != frameShowProfilerOverlay ) {
+			dirtyRegion.add( getProfilerOverlayBounds( profilerOverlayBounds ) );
+		}
+
+		frameSelectedNode = selected;
+		frameHoveredNode = hovered;
+		frameSelectionAngle = selectionAngle;
+		frameMousePosition = mouse;
+		frameDesiredPosition = desired;
+		frameShowProfilerOverlay = showProfiler;
+	}
+
+	private void addCrosshairDirtyRegion(Point p)
+	{
+		if ( p != null ) {
+			dirtyRegion.add( p.x - 6 , p.y - 6 , 13 , 13 );
 		}
 	}
 
-	private void renderDebugChain()
+	/**
+	 * Adds the overlays whose content changes with every rendered frame.
+	 */
+	private void addOverlayDirtyRegions()
 	{
-		KinematicsChain tmp = debugChain;
-		if ( tmp != null )
+		final int chartHeight = fpsTracker.getSize().height;
+		dirtyRegion.add( 0 , sceneRenderer.getHeight() - chartHeight , fpsTracker.getSize().width , chartHeight );
+
+		if ( frameShowProfilerOverlay )
 		{
-			final Graphics2D graphics = getBackBufferGraphics();
-			graphics.setColor(Color.GREEN);
+			// section count may have changed
+			dirtyRegion.add( profilerOverlayBounds );
+			dirtyRegion.add( getProfilerOverlayBounds( profilerOverlayBounds ) );
+		}
+	}
 
-			final Vector2 p0 = new Vector2();
-			final Vector2 p1 = new Vector2();
-			for ( Bone b : tmp.getBones() )
+	private void renderActive(WorldSnapshot snapshot)
+	{
+		// contents of the back buffer are undefined after it has been shown,
+		// so the whole frame gets rendered
+		do
+		{
+			do
 			{
-				p0.set( b.start );
-				p1.set( b.end );
-				modelToView( p0,p0 );
-				modelToView( p1,p1 );
-				renderLine( p0 , p1 );
+				frameGraphics = (Graphics2D) strategy.getDrawGraphics();
+				try
+				{
+					renderScene( snapshot );
+				}
+				finally
+				{
+					frameGraphics.dispose();
+					frameGraphics = null;
+				}
 			}
+			while ( strategy.contentsRestored() );
 
-			final Gripper endBone = (Gripper) tmp.getEndBone();
-			p0.set( endBone.getPositioningEnd() );
-			modelToView(p0,p0);
-			final float centerX = p0.x;
-			final float centerY = p0.y;
-			graphics.drawLine( (int) centerX -5 , (int)centerY , (int)centerX + 5 , (int)centerY );
-			graphics.drawLine( (int) centerX , (int)centerY-5 , (int)centerX , (int)centerY+5 );
+			begin( swapSection );
+			strategy.show();
+			Toolkit.getDefaultToolkit().sync();
+			end( swapSection );
 		}
+		while ( strategy.contentsLost() );
 	}
 
-	public void setDebugRender(KinematicsChain chain) {
-		this.debugChain = chain;
+	/**
+	 * Attaches a profiler that receives the time spent in each rendering phase.
+	 *
+	 * @param profiler profiler or <code>null</code>
+	 */
+	public void setProfiler(Profiler profiler)
+	{
+		synchronized(RENDER_LOCK)
+		{
+			this.profiler = profiler;
+			sceneRenderer.setProfiler( profiler );
+			overlaysSection = profiler == null ? null : profiler.getSection( "render: overlays" );
+			swapSection = profiler == null ? null : profiler.getSection( "render: swap" );
+		}
 	}
 
-	private void renderWorld() {
+	/**
+	 * Sets the time available per frame, used both for the frame statistics and for adjusting the level of detail.
+	 *
+	 * @param budgetNanos time between two frames
+	 */
+	public void setFrameBudgetNanos(long budgetNanos)
+	{
+		synchronized(RENDER_LOCK)
+		{
+			fpsTracker.setBudgetNanos( budgetNanos );
+			qualityGovernor.setBudgetNanos( budgetNanos );
+		}
+	}
 
-		// render floor
-		final Vector2 p = new Vector2(0,0);
-		modelToView( p , p);
+	/**
+	 * Enables/disables adjusting the level of detail to the time it takes to render a frame.
+	 *
+	 * When disabled, rendering goes back to {@link RenderQuality#HIGH}.
+	 */
+	public void setAdaptiveQuality(boolean adaptiveQuality)
+	{
+		synchronized(RENDER_LOCK)
+		{
+			this.adaptiveQuality = adaptiveQuality;
+			if ( ! adaptiveQuality )
+			{
+				qualityGovernor.reset();
+				setRenderQuality( RenderQuality.HIGH );
+			}
+		}
+	}
 
-		final Graphics2D graphics = getBackBufferGraphics();
-		graphics.setColor(Color.BLACK);
-		graphics.drawLine( 0 , (int) p.y , getWidth() , (int) p.y );
+	public boolean isAdaptiveQuality() {
+		return adaptiveQuality;
+	}
 
-		// render robot arm base
-		final Body robotBase = robotModel.getBase();
-		getBackBufferGraphics().setColor( ROBOT_BASE_COLOR );
-		renderBox( robotBase.getPosition() , Constants.ROBOTBASE_WIDTH , Constants.ROBOTBASE_HEIGHT , true );
+	public RenderQuality getRenderQuality()
+	{
+		synchronized(RENDER_LOCK)
+		{
+			return sceneRenderer.getQuality();
+		}
+	}
 
-		// render world objects
-		final List<Ball> balls = new ArrayList<>( worldModel.getBalls() ); // need to copy here since destroying balls will modify the collection
-		for ( Ball b : balls )
+	private void setRenderQuality(RenderQuality quality)
+	{
+		if ( quality != sceneRenderer.getQuality() )
 		{
-			if ( ! renderBall( b ) ) {
-				worldModel.destroyBall( b );
-			}
+			sceneRenderer.setQuality( quality );
+			fullRedrawRequested = true;
 		}
 	}
 
-	private void renderBox(Vector2 centerInWorldCoords,float xExtent,float yExtent,boolean filled)
+	/**
+	 * Enables/disables rendering profiler timings on top of the scene.
+	 */
+	public void setShowProfilerOverlay(boolean show) {
+		this.showProfilerOverlay = show;
+	}
+
+	public boolean isShowProfilerOverlay() {
+		return showProfilerOverlay;
+	}
+
+	public FPSTracker getFPSTracker() {
+		return fpsTracker;
+	}
+
+	private static void begin(Profiler.Section section)
 	{
-		renderBox(centerInWorldCoords,xExtent,yExtent,Vector2.Zero,0,filled);
+		if ( section != null ) {
+			section.begin();
+		}
 	}
 
-	private void renderBox(Vector2 centerInWorldCoords,float xExtent,float yExtent,Vector2 rotationCenter,float angleInDegrees,boolean filled)
+	private static void end(Profiler.Section section)
 	{
-		tmpBox.set( centerInWorldCoords , xExtent , yExtent , angleInDegrees );
-		renderBox( tmpBox , filled );
+		if ( section != null ) {
+			section.end();
+		}
 	}
 
-	private void renderBox(Box box,boolean filled)
+	/**
+	 * Renders only the given regions of a frame.
+	 *
+	 * The scene is drawn in a single pass clipped to the union of all rectangles, balls outside
+	 * of the rectangles are not drawn at all.
+	 */
+	private void renderScene(WorldSnapshot snapshot,DirtyRegion region)
 	{
-		final int x[] = new int[4];
-		final int y[] = new int[4];
+		if ( region.isFull() )
+		{
+			renderScene( snapshot );
+			return;
+		}
+
+		// rectangles of a dirty region never overlap
+		dirtyClip.reset();
+		for ( int i = 0 , len = region.size() ; i < len ; i++ ) {
+			dirtyClip.append( region.get( i ) , false );
+		}
+
+		final Graphics2D graphics = getBackBufferGraphics();
+		graphics.setClip( dirtyClip );
+		try {
+			drawScene( snapshot , region );
+		}
+		finally {
+			graphics.setClip( null );
+		}
+	}
 
-		final Vector2 tmp = new Vector2();
+	private void renderScene(WorldSnapshot snapshot) {
+		drawScene( snapshot , null );
+	}
 
-		modelToView( tmpBox.p0 , tmp );
-		x[0] = (int) tmp.x;
-		y[0] = (int) tmp.y;
+	/**
+	 * @param region region to render or <code>null</code> to render everything
+	 */
+	private void drawScene(WorldSnapshot snapshot,DirtyRegion region)
+	{
+		sceneRenderer.setGraphicsConfiguration( getGraphicsConfiguration() );
+		sceneRenderer.setHighlightedNodes( frameSelectedNode , frameHoveredNode );
+		sceneRenderer.render( getBackBufferGraphics() , snapshot , region );
 
-		modelToView( tmpBox.p1 , tmp );
-		x[1] = (int) tmp.x;
-		y[1] = (int) tmp.y;
+		begin( overlaysSection );
+		renderMousePosition();
 
-		modelToView( tmpBox.p2 , tmp );
-		x[2] = (int) tmp.x;
-		y[2] = (int) tmp.y;
+		renderSelectionInfo( snapshot );
 
-		modelToView( tmpBox.p3 , tmp );
-		x[3] = (int) tmp.x;
-		y[3] = (int) tmp.y;
+		renderDesiredPosition();
 
-		if ( filled ) {
-			getBackBufferGraphics().fillPolygon( x , y , 4 );
-		} else {
-			getBackBufferGraphics().drawPolygon( x , y , 4 );
-		}
+		renderFPS();
+
+		renderProfilerOverlay();
+		end( overlaysSection );
 	}
 
-	private boolean renderBall(Ball ball)
+	private Rectangle getProfilerOverlayBounds(Rectangle result)
 	{
-		getBackBufferGraphics().setColor( BALL_COLOR );
-		return renderCircle( ball.getPosition() , ball.radius );
+		final int sectionCount = profiler == null ? 0 : profiler.getSectionCount();
+		result.setBounds( sceneRenderer.getWidth() - PROFILER_OVERLAY_WIDTH - 5 , 5 ,
+				PROFILER_OVERLAY_WIDTH , (sectionCount+1)*PROFILER_LINE_HEIGHT + 5 );
+		return result;
 	}
 
-	private void renderFPS(float deltaSeconds)
+	private void renderProfilerOverlay()
 	{
-		fpsTracker.renderFPS( deltaSeconds );
-		final BufferedImage image = getBackBufferImage();
-		getBackBufferGraphics().drawImage( fpsTracker.getImage() , 0, image.getHeight() - fpsTracker.getSize().height , null );
+		if ( ! frameShowProfilerOverlay ) {
+			return;
+		}
+
+		final Graphics2D graphics = getBackBufferGraphics();
+		final int lineHeight = PROFILER_LINE_HEIGHT;
+		final Rectangle bounds = getProfilerOverlayBounds( profilerOverlayBounds );
+		final int x = bounds.x;
+		final int sectionCount = profiler.getSectionCount();
+
+		graphics.setColor( Color.BLACK );
+		graphics.fillRect( bounds.x , bounds.y , bounds.width , bounds.height );
+
+		final Font oldFont = graphics.getFont();
+		graphics.setFont( PROFILER_FONT );
+		graphics.setColor( Color.WHITE );
+		graphics.drawString( "section (ms)               p50      p95      max" , x+5 , 5+lineHeight );
+		for ( int i = 0 ; i < sectionCount ; i++ )
+		{
+			final Profiler.Section section = profiler.getSection( i );
+			final TimingHistogram h = section.getHistogram();
+			final String line = String.format( "%-24s %7.3f  %7.3f  %7.3f" , section.getName() ,
+					h.getPercentile( 50 ) / 1_000_000d , h.getPercentile( 95 ) / 1_000_000d , h.getMax() / 1_000_000d );
+			graphics.drawString( line , x+5 , 5+(i+2)*lineHeight );
+		}
+		graphics.setFont( oldFont );
+	}
+
+	private void renderFPS()
+	{
+		final Graphics2D graphics = getBackBufferGraphics();
+		graphics.drawImage( fpsTracker.getImage() , 0, sceneRenderer.getHeight() - fpsTracker.getSize().height , null );
 	}
 
 	private void renderDesiredPosition()
 	{
+		final Point desiredPosition = frameDesiredPosition;
 		if ( desiredPosition == null ) {
 			return;
 		}
@@ -382,12 +662,29 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 		graphics.drawLine( desiredPosition.x , desiredPosition.y-5 , desiredPosition.x, desiredPosition.y+5 );
 	}
 
-	private void renderSelectionInfo()
+	private void renderSelectionInfo(WorldSnapshot snapshot)
 	{
+		final Node<?> selectedNode = frameSelectedNode;
 		if ( selectedNode == null ) {
 			return;
 		}
 
+		final float selectedAngle = frameSelectionAngle;
+		if ( selectedNode != selectionTextNode || selectedAngle != selectionTextAngle || selectionText == null )
+		{
+			selectionText = "SELECTION: "+selectedNode.getId()+getSelectionDetails( snapshot , selectedNode );
+			selectionTextNode = selectedNode;
+			selectionTextAngle = selectedAngle;
+		}
+
+		final Graphics2D graphics = getBackBufferGraphics();
+
+		graphics.setColor(Color.BLACK);
+		graphics.drawString( selectionText , 5 , SELECTION_TEXT_Y );
+	}
+
+	private String getSelectionDetails(WorldSnapshot snapshot,Node<?> selectedNode)
+	{
 		String details="";
 		switch(selectedNode.getType()) {
 			case BONE:
@@ -400,8 +697,12 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 				break;
 			case JOINT:
 				final Joint joint = ((Joint) selectedNode);
+				final int jointIdx = snapshot.indexOfJoint( joint );
+				if ( jointIdx == -1 ) {
+					break;
+				}
 
-				final float angleRad = joint.getBody().getJointAngle();
+				final float angleRad = snapshot.jointAngles[ jointIdx ];
 				float angleDeg = radToDeg( angleRad );
 				float angle = angleDeg;
 				if ( angle < 0 ) {
@@ -414,218 +715,45 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 			default:
 				break;
 		}
-
-		final Graphics2D graphics = getBackBufferGraphics();
-
-		graphics.setColor(Color.BLACK);
-		graphics.drawString( "SELECTION: "+selectedNode.getId()+details, 5 , 15 );
+		return details;
 	}
 
 	private void renderMousePosition()
 	{
-		final Point tmp = currentMousePosition;
+		final Point tmp = frameMousePosition;
 		if ( tmp == null ) {
 			return;
 		}
 
-		final Vector2 modelCoords = viewToModel( tmp );
-		final Vector2 viewCoords = new Vector2();
-		modelToView( modelCoords , viewCoords );
-
-		final Graphics2D graphics = getBackBufferGraphics();
-		graphics.setColor(Color.BLACK);
-		graphics.drawString( "Mouse @ "+tmp+" (model: "+modelCoords+" / converted: "+viewCoords+")", 5 , 35 );
-	}
-
-	private void renderJoint(Joint joint)
-	{
-		getBackBufferGraphics().setColor( getNodeColor(joint,JOINT_COLOR) );
-		renderCircle( getJointPosition(joint) , Constants.JOINT_RENDER_RADIUS );
-	}
-
-	private Vector2 getJointPosition(Joint joint)
-	{
-		final Vector2 jointPosition = new Vector2();
-
-		if ( joint.predecessor == null )
+		if ( tmp != mouseTextPosition )
 		{
-			jointPosition.set( 0 , Constants.ROBOTBASE_HEIGHT + Constants.JOINT_RADIUS );
+			final Vector2 modelCoords = viewToModel( tmp.x , tmp.y , tmp0 );
+			final Vector2 viewCoords = sceneRenderer.modelToView( modelCoords , tmp1 );
+			mouseText = "Mouse @ "+tmp+" (model: "+modelCoords+" / converted: "+viewCoords+")";
+			mouseTextPosition = tmp;
 		}
-		else
-		{
-			// calculate joint position by
-			// intersecting lines through the two bones
-			// it connects
-			tmpBox.set( joint.predecessor.getBody().getPosition() ,
-					joint.predecessor.length ,
-					Constants.BONE_THICKNESS ,
-					radToDeg( joint.predecessor.getBody().getAngle() ) );
-
-			final Vector2 start = new Vector2();
-			final Vector2 end = new Vector2();
-			tmpBox.getOrientedLine( start , end );
 
-			final Vector2 direction = end.cpy().sub( start ).nor().scl( Constants.JOINT_RADIUS);
-			jointPosition.set( end ).add( direction );
-		}
-		return jointPosition;
-	}
-
-	private boolean renderCircle(Vector2 modelCenterCoords,float modelRadius)
-	{
-		final Vector2 screenPos = new Vector2();
-		modelToView( modelCenterCoords , screenPos );
-
-		final float centerX = screenPos.x;
-		final float centerY = screenPos.y;
-
-		final boolean isOnScreen = !( centerX < 0 || centerY < 0 || centerX > getWidth() || centerY > getHeight() );
-
-		if ( isOnScreen )
-		{
-			tmpBox.set( modelCenterCoords , 2*modelRadius , 2*modelRadius , 0 );
-			modelToView( tmpBox );
-
-			final Vector2 min = tmpBox.getMin( new Vector2() );
-			final Vector2 max = tmpBox.getMax( new Vector2() );
-
-			final Graphics2D graphics = getBackBufferGraphics();
-			graphics.fillArc( (int) min.x , (int) min.y , (int) (max.x-min.x) , (int) (max.y - min.y) , 0 , 360 );
-			graphics.setColor(Color.BLACK);
-
-			graphics.drawLine( (int) centerX -5 , (int) centerY , (int) centerX + 5 , (int)centerY );
-			graphics.drawLine( (int) centerX , (int)  centerY-5 , (int) centerX , (int)centerY+5 );
-		}
-		return isOnScreen;
-	}
-
-	private Color getNodeColor(Node<?> n,Color regular)
-	{
-		if ( selectedNode == n ) {
-			return SELECTION_COLOR;
-		}
-		if ( hoveredNode == n ) {
-			return HOVER_COLOR;
-		}
-		return regular;
-	}
-
-	private void getBoundingBox(Joint joint,Box r)
-	{
-		final Vector2 center = getJointPosition(joint);
-		r.set( center , 2*Constants.JOINT_RENDER_RADIUS , 2*Constants.JOINT_RENDER_RADIUS , 0);
-	}
-
-	private void setBoundingBox(Bone bone,Box box)
-	{
-		box.set( bone.getBody().getPosition() ,
-				bone.length ,
-				Constants.BONE_THICKNESS ,
-				radToDeg( bone.getBody().getAngle() ) );
-	}
-
-	private void renderBone(Bone bone)
-	{
 		final Graphics2D graphics = getBackBufferGraphics();
-
-		final Color regularColor  = bone instanceof Gripper ? GRIPPER_BONE_COLOR : BONE_COLOR;
-		graphics.setColor( getNodeColor(bone, regularColor ));
-
-		setBoundingBox( bone , tmpBox );
-		renderBox( tmpBox , true );
-
-		// TODO: Remove debug rendering
-		graphics.setColor( Color.RED );
-		Vector2 debugP0 = bone.start.cpy();
-		Vector2 debugP1 = bone.end.cpy();
-		modelToView(debugP0,debugP0);
-		modelToView(debugP1,debugP1);
-		renderLine( debugP0 , debugP1 );
-
-		if ( bone instanceof Gripper)
-		{
-			final Gripper gripper = (Gripper) bone;
-
-			// render base plate
-			// TODO: Maybe use gripper.getCurrentBaseplateLength() instead ?
-			graphics.setColor( GRIPPER_BASEPLATE_COLOR );
-			renderBox( gripper.getBasePlateBody().getPosition() , Constants.BASEPLATE_THICKNESS , gripper.getMaxBaseplateLength() ,
-					Vector2.Zero,
-					radToDeg( gripper.getBasePlateBody().getAngle() ) , true );
-
-			// render upper claw
-			graphics.setColor( GRIPPER_UPPER_CLAW_COLOR );
-			renderBox( gripper.getUpperClawBody().getPosition() ,
-					gripper.getClawLength() , Constants.CLAW_THICKNESS ,
-					Vector2.Zero,
-					radToDeg( gripper.getUpperClawBody().getAngle() ) , true );
-
-			// render lower claw
-			graphics.setColor( GRIPPER_LOWER_CLAW_COLOR );
-			renderBox( gripper.getLowerClawBody().getPosition() ,
-					gripper.getClawLength() , Constants.CLAW_THICKNESS ,
-					Vector2.Zero,
-					radToDeg( gripper.getLowerClawBody().getAngle() ) , true );
-
-			graphics.setColor( Color.RED );
-
-			Vector2 tmp = gripper.getPositioningEnd().cpy();
-			modelToView( tmp , tmp );
-			graphics.drawLine( (int) (tmp.x -5), (int) tmp.y, (int) (tmp.x + 5  ) , (int) tmp.y );
-			graphics.drawLine( (int) tmp.x, (int) (tmp.y-5), (int) tmp.x , (int) (tmp.y+5) );
-		}
-	}
-
-	private void renderLine(Vector2 p0,Vector2 p1)
-	{
-		getBackBufferGraphics().drawLine( (int) p0.x , (int) p0.y , (int) p1.x,(int) p1.y );
+		graphics.setColor(Color.BLACK);
+		graphics.drawString( mouseText , 5 , MOUSE_TEXT_Y );
 	}
 
 	public Vector2 viewToModel(Point point)
 	{
-		final Vector3 coords = new Vector3(point.x , getHeight() - point.y,0);
-		unproject( coords , 0 , 0 , getWidth() , getHeight() );
-
-		// libgdx assumes the origin of view coordinates in the LOWER left corner
-		// of the screen, need to fix Y coordinate here
-		return new Vector2(coords.x,coords.y);
-	}
-
-	private void modelToView(Box box)
-	{
-		modelToView( box.p0 , box.p0 );
-		modelToView( box.p1 , box.p1 );
-		modelToView( box.p2 , box.p2 );
-		modelToView( box.p3 , box.p3 );
+		return viewToModel( point.x , point.y , new Vector2() );
 	}
 
-	private void modelToView(Vector2 modelVector,Vector2 viewVector)
+	@Override
+	public Vector2 viewToModel(int x,int y,Vector2 result)
 	{
-		Vector3 result = new Vector3( modelVector , 0 );
-		camera.project( result  , 0 , 0 , getWidth() , getHeight() );
-
-		viewVector.x = result.x;
-		viewVector.y = result.y+1;
-	}
-
-	public Vector3 unproject (Vector3 screenCoords, float viewportX, float viewportY, float viewportWidth, float viewportHeight) {
-		float x = screenCoords.x, y = screenCoords.y;
-		x = x - viewportX;
-		y = viewportHeight - y - 1;
-		y = y - viewportY;
-		screenCoords.x = (2 * x) / viewportWidth - 1;
-		screenCoords.y = (2 * y) / viewportHeight - 1;
-		screenCoords.z = 2 * screenCoords.z - 1;
-		screenCoords.prj(camera.invProjectionView);
-		return screenCoords;
+		return sceneRenderer.viewToModel( x , y , result );
 	}
 
-	private void clearBackBuffer()
+	@Override
+	public Vector2 modelToView(float x,float y,Vector2 result)
 	{
-		final BufferedImage buffer = getBackBufferImage();
-		final Graphics2D graphics = getBackBufferGraphics();
-		graphics.setColor( BACKGROUND_COLOR );
-		graphics.fillRect( 0 , 0 , buffer.getWidth() , buffer.getHeight() );
+		result.set( x , y );
+		return sceneRenderer.modelToView( result , result );
 	}
 
 	private BufferedImage getFrontBufferImage()
@@ -636,16 +764,13 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 
 	private Graphics2D getBackBufferGraphics()
 	{
+		if ( frameGraphics != null ) {
+			return frameGraphics;
+		}
 		maybeInit();
 		return graphics[ bufferIdx % 2 ];
 	}
 
-	private BufferedImage getBackBufferImage()
-	{
-		maybeInit();
-		return buffers[ bufferIdx % 2 ];
-	}
-
 	private void swapBuffers()
 	{
 		bufferIdx++;
@@ -672,60 +797,41 @@ public final class MyPanel extends JPanel implements ITickListener , IMathSuppor
 				graphics[0] = buffers[0].createGraphics();
 				graphics[1] = buffers[1].createGraphics();
 
-				final Map<Object,Object> hints = new HashMap<>();
-
-				hints.put( RenderingHints.KEY_ANTIALIASING , RenderingHints.VALUE_ANTIALIAS_ON );
-				hints.put( RenderingHints.KEY_RENDERING , RenderingHints.VALUE_RENDER_QUALITY);
-				hints.put( RenderingHints.KEY_ANTIALIASING , RenderingHints.VALUE_ANTIALIAS_ON );
-				hints.put( RenderingHints.KEY_RENDERING , RenderingHints.VALUE_RENDER_QUALITY);
-
-				graphics[0].addRenderingHints( hints );
-				graphics[1].addRenderingHints( hints );
-
-				graphics[0].setColor( BACKGROUND_COLOR );
+				graphics[0].setColor( SceneRenderer.BACKGROUND_COLOR );
 				graphics[0].fillRect( 0 , 0 , panelWidth , panelHeight );
 
-				graphics[1].setColor( BACKGROUND_COLOR );
+				graphics[1].setColor( SceneRenderer.BACKGROUND_COLOR );
 				graphics[1].fillRect( 0 , 0 , panelWidth , panelHeight );
 
-				updateCamera(camera,panelWidth,panelHeight);
+				sceneRenderer.setViewport(panelWidth,panelHeight);
+
+				// neither buffer holds an up-to-date frame
+				fullRedrawRequested = true;
+				previousDirtyRegion.clear( panelWidth , panelHeight );
+				previousDirtyRegion.addAll();
+
+				initialized = true;
 
-				if ( oldFrontBuffer != null )
+				if ( snapshot != null )
+				{
+					// the renderer only ever reads from snapshots that are no longer touched by the
+					// main thread so we can safely re-render the last frame at the new size
+					renderScene( snapshot );
+					swapBuffers();
+				}
+				else if ( oldFrontBuffer != null )
 				{
-					// doing a render() call here would introduce a race condition
-					// with things happening in the main thread (box2d model updates etc.) that
-					// will sometimes lead to graphics glitching... one (slow) way of fixing this
-					// would be to introduce a global lock that's held while the main loop is not
-					// within the render() call. A quick'n'dirty hack that works ok'ish (assuming the
-					// FPS is not incredibly low) is to just render a scaled version of the
-					// last front buffer and hope that the next render() call happens soon
 					final Graphics2D newFrontBufferGfx = graphics[ (bufferIdx+1) % 2 ];
 					newFrontBufferGfx.drawImage(oldFrontBuffer,0,0,panelWidth,panelHeight,null);
 				}
-				initialized = true;
 			}
 		}
 	}
 
-	private static void updateCamera(OrthographicCamera camera,int viewportWidth,int viewportHeight)
-	{
-		camera.setToOrtho( true , viewportWidth , viewportHeight);
-
-		camera.direction.set( 0 , 0, 1 );
-		camera.position.set(0,0.9f,-5f);
-		camera.near = 0;
-		camera.far = 100;
-		camera.zoom = 0.005f;
-
-		System.out.println("Setting camera viewport to "+viewportWidth+" x "+viewportHeight);
-		camera.update(true);
-	}
-
 	@Override
 	public boolean tick(float deltaSeconds)
 	{
 		render(deltaSeconds);
-		repaint();
 		return true;
 	}
 }
\ No newline at end of file
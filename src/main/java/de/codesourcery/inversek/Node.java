@@ -11,6 +11,9 @@ public abstract class Node<T>
 	private String id;
 	private T body;
 	
+	private PhysicsState physicsState;
+	private int physicsSlot = -1;
+	
 	public Node(T body,String id,NodeType type) {
 		if (type == null) {
 			throw new IllegalArgumentException("type must not be NULL");
@@ -39,6 +42,31 @@ public abstract class Node<T>
 		return body;
 	}
 	
+	/**
+	 * Binds this node to the slot its Box2D body occupies in a {@link PhysicsState} cache.
+	 */
+	public void bindPhysicsState(PhysicsState state,int slot) 
+	{
+		this.physicsState = state;
+		this.physicsSlot = slot;
+	}
+	
+	protected final void copyPhysicsState(Node<T> other) {
+		bindPhysicsState( other.physicsState , other.physicsSlot );
+	}
+	
+	public final boolean hasPhysicsState() {
+		return physicsState != null;
+	}
+	
+	public final PhysicsState getPhysicsState() {
+		return physicsState;
+	}
+	
+	public final int getPhysicsSlot() {
+		return physicsSlot;
+	}
+	
 	@Override
 	public String toString() {
 		return id;
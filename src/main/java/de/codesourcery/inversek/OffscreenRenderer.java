@@ -0,0 +1,185 @@
+package de.codesourcery.inversek;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders {@link WorldSnapshot}s to a sequence of PNG files without opening a window.
+ *
+ * Frames are rendered and encoded on a pool of worker threads, each worker owns a {@link SceneRenderer}
+ * and an image it renders into. Snapshots are taken from a fixed-size pool that is refilled as soon as
+ * a worker is done with a frame, so the thread producing snapshots gets blocked when the
+ * workers cannot keep up.
+ *
+ * Files are named <code>frame-000000.png</code>, <code>frame-000001.png</code> etc.
+ */
+public final class OffscreenRenderer implements AutoCloseable
+{
+	private final int width;
+	private final int height;
+	private final Path outputDirectory;
+
+	private final ExecutorService workers;
+	private final ThreadLocal<Worker> worker;
+	private final BlockingQueue<WorldSnapshot> freeSnapshots;
+
+	private final AtomicInteger framesWritten = new AtomicInteger();
+	private volatile Throwable error;
+
+	private static final class Worker
+	{
+		public final SceneRenderer renderer = new SceneRenderer();
+		public final BufferedImage image;
+		public final Graphics2D graphics;
+
+		public Worker(int width,int height)
+		{
+			renderer.setViewport( width , height );
+			image = new BufferedImage( width , height , BufferedImage.TYPE_INT_RGB );
+			graphics = image.createGraphics();
+		}
+	}
+
+	/**
+	 * @param width frame width in pixels
+	 * @param height frame height in pixels
+	 * @param threadCount number of frames rendered in parallel
+	 * @param outputDirectory directory to write images to, must exist
+	 */
+	public OffscreenRenderer(int width,int height,int threadCount,Path outputDirectory)
+	{
+		if ( width <= 0 || height <= 0 ) {
+			throw new IllegalArgumentException("Frame size must be > 0");
+		}
+		if ( threadCount <= 0 ) {
+			throw new IllegalArgumentException("Thread count must be > 0");
+		}
+		if ( outputDirectory == null ) {
+			throw new IllegalArgumentException("outputDirectory must not be NULL");
+		}
+		this.width = width;
+		this.height = height;
+		this.outputDirectory = outputDirectory;
+		this.worker = ThreadLocal.withInitial( () -> new Worker( this.width , this.height ) );
+
+		// two snapshots per worker so the producer can fill the next one while all workers are busy
+		final int poolSize = threadCount*2;
+		this.freeSnapshots = new ArrayBlockingQueue<>( poolSize );
+		for ( int i = 0 ; i < poolSize ; i++ ) {
+			freeSnapshots.add( new WorldSnapshot() );
+		}
+
+		final AtomicInteger threadId = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool( threadCount , r ->
+		{
+			final Thread t = new Thread( r , "offscreen-renderer-"+threadId.incrementAndGet() );
+			t.setDaemon( true );
+			return t;
+		});
+	}
+
+	/**
+	 * Returns an unused snapshot, blocks until one becomes available.
+	 *
+	 * The snapshot needs to be passed to {@link #submit(WorldSnapshot, int)} afterwards.
+	 */
+	public WorldSnapshot acquireSnapshot() throws InterruptedException {
+		return freeSnapshots.take();
+	}
+
+	/**
+	 * Queues a snapshot for rendering, the snapshot must not be touched afterwards.
+	 *
+	 * @param snapshot snapshot obtained from {@link #acquireSnapshot()}, gets rendered using the
+	 * positions of its most recent physics step
+	 * @param frameNumber number of the frame, used as file name suffix
+	 */
+	public void submit(WorldSnapshot snapshot,int frameNumber) throws IOException
+	{
+		if ( snapshot == null ) {
+			throw new IllegalArgumentException("snapshot must not be NULL");
+		}
+		checkError();
+		workers.execute( () ->
+		{
+			try {
+				renderFrame( snapshot , frameNumber );
+			}
+			catch(Throwable e)
+			{
+				if ( error == null ) {
+					error = e;
+				}
+			}
+			finally {
+				freeSnapshots.add( snapshot );
+			}
+		});
+	}
+
+	private void renderFrame(WorldSnapshot snapshot,int frameNumber) throws IOException
+	{
+		final Worker w = worker.get();
+		snapshot.interpolate( 1f );
+		w.renderer.render( w.graphics , snapshot );
+
+		final Path file = outputDirectory.resolve( String.format( "frame-%06d.png" , frameNumber ) );
+		if ( ! ImageIO.write( w.image , "png" , file.toFile() ) ) {
+			throw new IOException("No PNG writer available");
+		}
+		framesWritten.incrementAndGet();
+	}
+
+	private void checkError() throws IOException
+	{
+		final Throwable e = error;
+		if ( e != null ) {
+			throw new IOException("Failed to render frame",e);
+		}
+	}
+
+	public int getFramesWritten() {
+		return framesWritten.get();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Waits for all queued frames to be written and shuts down the worker threads.
+	 *
+	 * @throws IOException if rendering or writing any of the frames failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		workers.shutdown();
+		try
+		{
+			while ( ! workers.awaitTermination( 1 , TimeUnit.SECONDS ) ) {
+				// keep waiting
+			}
+		}
+		catch (InterruptedException e)
+		{
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		checkError();
+	}
+}
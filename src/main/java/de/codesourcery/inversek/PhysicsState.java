@@ -0,0 +1,337 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.joints.PrismaticJoint;
+import com.badlogic.gdx.physics.box2d.joints.RevoluteJoint;
+
+import de.codesourcery.inversek.WorldModel.Ball;
+
+/**
+ * Per-step cache of Box2D state.
+ *
+ * Every query against a Box2D object is a JNI call, so instead of having
+ * each consumer (joint animators, gripper animator, renderer snapshot, ...) ask Box2D
+ * individually, all registered bodies and joints get read exactly once after
+ * each batch of physics steps and are then served from flat arrays.
+ *
+ * Body transforms and ball positions as of the step before the most recent one are
+ * kept as well so the renderer can interpolate between the two.
+ */
+public final class PhysicsState
+{
+	private Body[] bodies = new Body[16];
+	private float[] transforms = new float[ bodies.length*3 ]; // x,y,angle in radians
+	private float[] prevTransforms = new float[ transforms.length ];
+	private int bodyCount;
+
+	private RevoluteJoint[] revoluteJoints = new RevoluteJoint[8];
+	private float[] jointAngles = new float[ revoluteJoints.length ]; // radians
+	private int revoluteJointCount;
+
+	private PrismaticJoint[] prismaticJoints = new PrismaticJoint[4];
+	private float[] jointTranslations = new float[ prismaticJoints.length ];
+	private int prismaticJointCount;
+
+	private float[] ballPositions = new float[ 64*2 ];
+	private float[] prevBallPositions = new float[ ballPositions.length ];
+	private int ballCount;
+
+	public int register(Body body)
+	{
+		if ( body == null ) {
+			throw new IllegalArgumentException("body must not be NULL");
+		}
+		if ( bodyCount == bodies.length )
+		{
+			bodies = Arrays.copyOf( bodies , bodies.length*2 );
+			transforms = Arrays.copyOf( transforms , bodies.length*3 );
+			prevTransforms = Arrays.copyOf( prevTransforms , bodies.length*3 );
+		}
+		final int slot = bodyCount++;
+		bodies[slot] = body;
+		readTransform( slot );
+		System.arraycopy( transforms , slot*3 , prevTransforms , slot*3 , 3 );
+		return slot;
+	}
+
+	public int register(RevoluteJoint joint)
+	{
+		if ( joint == null ) {
+			throw new IllegalArgumentException("joint must not be NULL");
+		}
+		if ( revoluteJointCount == revoluteJoints.length )
+		{
+			revoluteJoints = Arrays.copyOf( revoluteJoints , revoluteJoints.length*2 );
+			jointAngles = Arrays.copyOf( jointAngles , revoluteJoints.length );
+		}
+		final int slot = revoluteJointCount++;
+		revoluteJoints[slot] = joint;
+		jointAngles[slot] = joint.getJointAngle();
+		return slot;
+	}
+
+	public int register(PrismaticJoint joint)
+	{
+		if ( joint == null ) {
+			throw new IllegalArgumentException("joint must not be NULL");
+		}
+		if ( prismaticJointCount == prismaticJoints.length )
+		{
+			prismaticJoints = Arrays.copyOf( prismaticJoints , prismaticJoints.length*2 );
+			jointTranslations = Arrays.copyOf( jointTranslations , prismaticJoints.length );
+		}
+		final int slot = prismaticJointCount++;
+		prismaticJoints[slot] = joint;
+		jointTranslations[slot] = joint.getJointTranslation();
+		return slot;
+	}
+
+	/**
+	 * Reads the current state of all registered bodies/joints and all balls.
+	 *
+	 * @param balls balls to read, positions are indexed by their position in this list
+	 */
+	public void refresh(List<Ball> balls)
+	{
+		for ( int i = 0 ; i < bodyCount ; i++ ) {
+			readTransform( i );
+		}
+		for ( int i = 0 ; i < revoluteJointCount ; i++ ) {
+			jointAngles[i] = revoluteJoints[i].getJointAngle();
+		}
+		for ( int i = 0 ; i < prismaticJointCount ; i++ ) {
+			jointTranslations[i] = prismaticJoints[i].getJointTranslation();
+		}
+
+		final int count = balls.size();
+		ensureBallCapacity( count );
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final Vector2 position = balls.get(i).getBody().getPosition();
+			ballPositions[i*2] = position.x;
+			ballPositions[i*2+1] = position.y;
+		}
+		ballCount = count;
+	}
+
+	/**
+	 * Remembers the current body transforms and ball positions as the previous ones,
+	 * to be called right before the last physics step of a batch.
+	 */
+	public void savePrevious()
+	{
+		System.arraycopy( transforms , 0 , prevTransforms , 0 , bodyCount*3 );
+		System.arraycopy( ballPositions , 0 , prevBallPositions , 0 , ballCount*2 );
+	}
+
+	/**
+	 * Counts registered bodies and balls that moved more than the given distance/angle
+	 * between the previous and the current step.
+	 */
+	public int countMovingBodies(float minDistance,float minAngle)
+	{
+		final float minDistance2 = minDistance*minDistance;
+		int result = 0;
+		for ( int i = 0 , len = bodyCount*3 ; i < len ; i += 3 )
+		{
+			final float dx = transforms[i] - prevTransforms[i];
+			final float dy = transforms[i+1] - prevTransforms[i+1];
+			if ( dx*dx + dy*dy > minDistance2 || Math.abs( transforms[i+2] - prevTransforms[i+2] ) > minAngle ) {
+				result++;
+			}
+		}
+		for ( int i = 0 , len = ballCount*2 ; i < len ; i += 2 )
+		{
+			final float dx = ballPositions[i] - prevBallPositions[i];
+			final float dy = ballPositions[i+1] - prevBallPositions[i+1];
+			if ( dx*dx + dy*dy > minDistance2 ) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private void readTransform(int slot)
+	{
+		final Body body = bodies[slot];
+		final Vector2 position = body.getPosition();
+		final int offset = slot*3;
+		transforms[offset] = position.x;
+		transforms[offset+1] = position.y;
+		transforms[offset+2] = body.getAngle();
+	}
+
+	private void ensureBallCapacity(int count)
+	{
+		if ( ballPositions.length < count*2 )
+		{
+			ballPositions = Arrays.copyOf( ballPositions , Math.max( count*2 , ballPositions.length*2 ) );
+			prevBallPositions = Arrays.copyOf( prevBallPositions , ballPositions.length );
+		}
+	}
+
+	/**
+	 * Updates the cached (current and previous) position of a single ball without going through Box2D,
+	 * used when balls get added between refreshes.
+	 */
+	public void setBallPosition(int index,float x,float y)
+	{
+		ensureBallCapacity( index+1 );
+		ballPositions[index*2] = x;
+		ballPositions[index*2+1] = y;
+		prevBallPositions[index*2] = x;
+		prevBallPositions[index*2+1] = y;
+		ballCount = Math.max( ballCount , index+1 );
+	}
+
+	/**
+	 * Moves the cached (current and previous) position of a ball to a different index.
+	 */
+	public void moveBall(int fromIndex,int toIndex)
+	{
+		ballPositions[toIndex*2] = ballPositions[fromIndex*2];
+		ballPositions[toIndex*2+1] = ballPositions[fromIndex*2+1];
+		prevBallPositions[toIndex*2] = prevBallPositions[fromIndex*2];
+		prevBallPositions[toIndex*2+1] = prevBallPositions[fromIndex*2+1];
+	}
+
+	public void setBallCount(int count) {
+		this.ballCount = count;
+	}
+
+	/**
+	 * Replaces all cached state with recorded data, previous and current state
+	 * will be identical afterwards.
+	 *
+	 * The number of bodies/joints must match the number of registered bodies/joints.
+	 */
+	public void load(float[] recordedTransforms,float[] recordedJointAngles,float[] recordedJointTranslations,float[] recordedBallPositions,int recordedBallCount)
+	{
+		System.arraycopy( recordedTransforms , 0 , transforms , 0 , bodyCount*3 );
+		System.arraycopy( recordedTransforms , 0 , prevTransforms , 0 , bodyCount*3 );
+		System.arraycopy( recordedJointAngles , 0 , jointAngles , 0 , revoluteJointCount );
+		System.arraycopy( recordedJointTranslations , 0 , jointTranslations , 0 , prismaticJointCount );
+
+		ensureBallCapacity( recordedBallCount );
+		System.arraycopy( recordedBallPositions , 0 , ballPositions , 0 , recordedBallCount*2 );
+		System.arraycopy( recordedBallPositions , 0 , prevBallPositions , 0 , recordedBallCount*2 );
+		ballCount = recordedBallCount;
+	}
+
+	/**
+	 * Returns the flat array of body transforms (x0,y0,angle0,x1,y1,angle1,...).
+	 *
+	 * Only the first {@link #getBodyCount()} entries are valid.
+	 */
+	public float[] getTransforms() {
+		return transforms;
+	}
+
+	/**
+	 * Returns the angles (in radians) of all registered revolute joints.
+	 *
+	 * Only the first {@link #getRevoluteJointCount()} entries are valid.
+	 */
+	public float[] getJointAngles() {
+		return jointAngles;
+	}
+
+	/**
+	 * Returns the translations of all registered prismatic joints.
+	 *
+	 * Only the first {@link #getPrismaticJointCount()} entries are valid.
+	 */
+	public float[] getJointTranslations() {
+		return jointTranslations;
+	}
+
+	public int getBodyCount() {
+		return bodyCount;
+	}
+
+	public Body getBody(int bodySlot) {
+		return bodies[bodySlot];
+	}
+
+	public int getRevoluteJointCount() {
+		return revoluteJointCount;
+	}
+
+	public RevoluteJoint getRevoluteJoint(int jointSlot) {
+		return revoluteJoints[jointSlot];
+	}
+
+	public int getPrismaticJointCount() {
+		return prismaticJointCount;
+	}
+
+	public PrismaticJoint getPrismaticJoint(int jointSlot) {
+		return prismaticJoints[jointSlot];
+	}
+
+	public float getX(int bodySlot) {
+		return transforms[bodySlot*3];
+	}
+
+	public float getY(int bodySlot) {
+		return transforms[bodySlot*3+1];
+	}
+
+	public float getAngle(int bodySlot) {
+		return transforms[bodySlot*3+2];
+	}
+
+	public float getPrevX(int bodySlot) {
+		return prevTransforms[bodySlot*3];
+	}
+
+	public float getPrevY(int bodySlot) {
+		return prevTransforms[bodySlot*3+1];
+	}
+
+	public float getPrevAngle(int bodySlot) {
+		return prevTransforms[bodySlot*3+2];
+	}
+
+	public float getJointAngle(int jointSlot) {
+		return jointAngles[jointSlot];
+	}
+
+	public float getJointTranslation(int jointSlot) {
+		return jointTranslations[jointSlot];
+	}
+
+	public float getBallX(int index) {
+		return ballPositions[index*2];
+	}
+
+	public float getBallY(int index) {
+		return ballPositions[index*2+1];
+	}
+
+	public int getBallCount() {
+		return ballCount;
+	}
+
+	/**
+	 * Returns the flat array of ball positions (x0,y0,x1,y1,...).
+	 *
+	 * Only the first {@link #getBallCount()} entries are valid.
+	 */
+	public float[] getBallPositions() {
+		return ballPositions;
+	}
+
+	/**
+	 * Returns the flat array of ball positions as of the step before the most recent one.
+	 *
+	 * Only the first {@link #getBallCount()} entries are valid.
+	 */
+	public float[] getPrevBallPositions() {
+		return prevBallPositions;
+	}
+}
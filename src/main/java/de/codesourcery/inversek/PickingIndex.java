@@ -0,0 +1,172 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+
+/**
+ * Screen-space uniform grid of node bounding boxes, used for hit-testing.
+ *
+ * Nodes are added in priority order (earlier nodes win if bounding boxes overlap) and
+ * sorted into grid cells by a counting sort in {@link #build()}. Lookups only need to test the
+ * few entries in the cell under the cursor. Rebuilding and lookups do not allocate memory once the
+ * internal arrays are large enough.
+ */
+final class PickingIndex
+{
+	private final int cellSize;
+
+	private int columns;
+	private int rows;
+	private int[] cellStart = new int[1];
+	private int[] cellFill = new int[0];
+	private int[] cellEntries = new int[0];
+
+	private Node<?>[] nodes = new Node<?>[16];
+	private float[] bounds = new float[16*4]; // (minX,minY,maxX,maxY) per entry
+	private int entryCount;
+
+	public PickingIndex(int cellSize)
+	{
+		if ( cellSize < 1 ) {
+			throw new IllegalArgumentException("Cell size must be >= 1");
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Removes all nodes and sets the size of the area covered by the grid.
+	 */
+	public void clear(int viewWidth,int viewHeight)
+	{
+		Arrays.fill( nodes , 0 , entryCount , null );
+		entryCount = 0;
+		columns = Math.max( 1 , (viewWidth + cellSize - 1) / cellSize );
+		rows = Math.max( 1 , (viewHeight + cellSize - 1) / cellSize );
+		final int cellCount = columns*rows;
+		if ( cellFill.length < cellCount )
+		{
+			cellFill = new int[ cellCount ];
+			cellStart = new int[ cellCount+1 ];
+		}
+	}
+
+	public void add(Node<?> node,float minX,float minY,float maxX,float maxY)
+	{
+		if ( entryCount == nodes.length )
+		{
+			nodes = Arrays.copyOf( nodes , entryCount*2 );
+			bounds = Arrays.copyOf( bounds , entryCount*2*4 );
+		}
+		nodes[ entryCount ] = node;
+		final int offset = entryCount*4;
+		bounds[ offset ] = minX;
+		bounds[ offset+1 ] = minY;
+		bounds[ offset+2 ] = maxX;
+		bounds[ offset+3 ] = maxY;
+		entryCount++;
+	}
+
+	private int minColumn(int entry) {
+		return clamp( (int) Math.floor( bounds[entry*4] / cellSize ) , columns );
+	}
+
+	private int minRow(int entry) {
+		return clamp( (int) Math.floor( bounds[entry*4+1] / cellSize ) , rows );
+	}
+
+	private int maxColumn(int entry) {
+		return clamp( (int) Math.floor( bounds[entry*4+2] / cellSize ) , columns );
+	}
+
+	private int maxRow(int entry) {
+		return clamp( (int) Math.floor( bounds[entry*4+3] / cellSize ) , rows );
+	}
+
+	private static int clamp(int value,int count) {
+		return value < 0 ? 0 : value >= count ? count-1 : value;
+	}
+
+	/**
+	 * Sorts all nodes added since the last call to {@link #clear(int, int)} into the grid.
+	 */
+	public void build()
+	{
+		final int cellCount = columns*rows;
+		Arrays.fill( cellFill , 0 , cellCount , 0 );
+
+		// count entries per cell
+		int total = 0;
+		for ( int i = 0 ; i < entryCount ; i++ )
+		{
+			for ( int row = minRow(i) , maxRow = maxRow(i) ; row <= maxRow ; row++ )
+			{
+				for ( int col = minColumn(i) , maxCol = maxColumn(i) ; col <= maxCol ; col++ ) {
+					cellFill[ row*columns + col ]++;
+				}
+			}
+		}
+		for ( int cell = 0 ; cell < cellCount ; cell++ )
+		{
+			cellStart[cell] = total;
+			total += cellFill[cell];
+			cellFill[cell] = 0;
+		}
+		cellStart[ cellCount ] = total;
+		if ( cellEntries.length < total ) {
+			cellEntries = new int[ total*2 ];
+		}
+
+		// entries are added in priority order so each cell ends up sorted by priority as well
+		for ( int i = 0 ; i < entryCount ; i++ )
+		{
+			for ( int row = minRow(i) , maxRow = maxRow(i) ; row <= maxRow ; row++ )
+			{
+				for ( int col = minColumn(i) , maxCol = maxColumn(i) ; col <= maxCol ; col++ )
+				{
+					final int cell = row*columns + col;
+					cellEntries[ cellStart[cell] + cellFill[cell]++ ] = i;
+				}
+			}
+		}
+	}
+
+	private boolean contains(int entry,float x,float y)
+	{
+		final int offset = entry*4;
+		return x >= bounds[offset] && y >= bounds[offset+1] && x <= bounds[offset+2] && y <= bounds[offset+3];
+	}
+
+	/**
+	 * Returns the node with the highest priority whose bounding box contains the given point.
+	 *
+	 * @return node or <code>null</code>
+	 */
+	public Node<?> find(int x,int y)
+	{
+		final int col = (int) Math.floor( x / (float) cellSize );
+		final int row = (int) Math.floor( y / (float) cellSize );
+		if ( col < 0 || row < 0 || col >= columns || row >= rows )
+		{
+			// outside of the grid, cells at the border hold everything that extends past the view
+			for ( int i = 0 ; i < entryCount ; i++ )
+			{
+				if ( contains( i , x , y ) ) {
+					return nodes[i];
+				}
+			}
+			return null;
+		}
+		final int cell = row*columns + col;
+		for ( int i = cellStart[cell] , end = cellStart[cell+1] ; i < end ; i++ )
+		{
+			final int entry = cellEntries[i];
+			if ( contains( entry , x , y ) ) {
+				return nodes[entry];
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return entryCount;
+	}
+}
@@ -0,0 +1,111 @@
+package de.codesourcery.inversek;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects timings of named code sections into rolling {@link TimingHistogram}s.
+ *
+ * Sections should be looked up once and then be kept around, timing a section does not allocate memory.
+ * Must only be used by the main loop thread.
+ */
+public final class Profiler
+{
+	private static final int WINDOW_SIZE = 256; // samples per section
+
+	private final Map<String,Section> sections = new LinkedHashMap<>();
+	private final List<Section> sectionList = new ArrayList<>();
+
+	private boolean enabled = true;
+
+	public final class Section
+	{
+		private final String name;
+		private final TimingHistogram histogram = new TimingHistogram( WINDOW_SIZE );
+		private long startNanos;
+
+		private Section(String name) {
+			this.name = name;
+		}
+
+		public void begin()
+		{
+			if ( enabled ) {
+				startNanos = System.nanoTime();
+			}
+		}
+
+		public void end()
+		{
+			if ( enabled ) {
+				histogram.record( System.nanoTime() - startNanos );
+			}
+		}
+
+		public void record(long nanos)
+		{
+			if ( enabled ) {
+				histogram.record( nanos );
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public TimingHistogram getHistogram() {
+			return histogram;
+		}
+	}
+
+	/**
+	 * Returns the section with the given name, creating it if necessary.
+	 */
+	public Section getSection(String name)
+	{
+		if ( name == null ) {
+			throw new IllegalArgumentException("name must not be NULL");
+		}
+		Section result = sections.get( name );
+		if ( result == null )
+		{
+			result = new Section( name );
+			sections.put( name , result );
+			sectionList.add( result );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all sections in the order they were created.
+	 */
+	public List<Section> getSections() {
+		return Collections.unmodifiableList( sectionList );
+	}
+
+	public int getSectionCount() {
+		return sectionList.size();
+	}
+
+	public Section getSection(int index) {
+		return sectionList.get( index );
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void reset()
+	{
+		for ( int i = 0 , len = sectionList.size() ; i < len ; i++ ) {
+			sectionList.get(i).histogram.reset();
+		}
+	}
+}
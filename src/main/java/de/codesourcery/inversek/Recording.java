@@ -0,0 +1,119 @@
+package de.codesourcery.inversek;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader for files written by {@link StepRecorder#flush(Path)}.
+ */
+public final class Recording
+{
+	private final MappedByteBuffer data;
+	private final int dataEnd;
+
+	/**
+	 * A single decoded record, arrays only get re-allocated when they are too small.
+	 */
+	public static final class Frame
+	{
+		public long stepCount;
+
+		public int bodyCount;
+		public float[] transforms = new float[0];
+
+		public int revoluteJointCount;
+		public float[] jointAngles = new float[0];
+
+		public int prismaticJointCount;
+		public float[] jointTranslations = new float[0];
+
+		public int ballCount;
+		public float[] ballPositions = new float[0];
+
+		public int eventCount;
+		public StepRecorder.Event[] events = new StepRecorder.Event[0];
+		public float[] eventValues = new float[0];
+	}
+
+	public Recording(Path file) throws IOException
+	{
+		try ( FileChannel channel = FileChannel.open( file , StandardOpenOption.READ ) )
+		{
+			data = channel.map( FileChannel.MapMode.READ_ONLY , 0 , channel.size() );
+		}
+		data.order( ByteOrder.BIG_ENDIAN );
+
+		if ( data.remaining() < StepRecorder.FILE_HEADER_SIZE || data.getInt() != StepRecorder.MAGIC ) {
+			throw new IOException("Not a recording: "+file);
+		}
+		final int version = data.getInt();
+		if ( version != StepRecorder.VERSION ) {
+			throw new IOException("Unsupported recording version "+version+" in "+file);
+		}
+		final int dataLength = data.getInt();
+		data.getInt(); // reserved
+		dataEnd = StepRecorder.FILE_HEADER_SIZE + dataLength;
+		if ( dataEnd > data.limit() ) {
+			throw new IOException("Truncated recording: "+file);
+		}
+	}
+
+	public void rewind() {
+		data.position( StepRecorder.FILE_HEADER_SIZE );
+	}
+
+	public boolean hasNext() {
+		return data.position() < dataEnd;
+	}
+
+	/**
+	 * Decodes the next record.
+	 *
+	 * @return <code>false</code> if the end of the recording has been reached
+	 */
+	public boolean next(Frame frame)
+	{
+		if ( ! hasNext() ) {
+			return false;
+		}
+		data.getInt(); // record length
+		final long low = data.getInt() & 0xffffffffL;
+		final long high = data.getInt();
+		frame.stepCount = (high << 32) | low;
+
+		frame.bodyCount = data.getInt();
+		frame.revoluteJointCount = data.getInt();
+		frame.prismaticJointCount = data.getInt();
+		frame.ballCount = data.getInt();
+		frame.eventCount = data.getInt();
+
+		frame.transforms = readFloats( frame.transforms , frame.bodyCount*3 );
+		frame.jointAngles = readFloats( frame.jointAngles , frame.revoluteJointCount );
+		frame.jointTranslations = readFloats( frame.jointTranslations , frame.prismaticJointCount );
+		frame.ballPositions = readFloats( frame.ballPositions , frame.ballCount*2 );
+
+		if ( frame.events.length < frame.eventCount )
+		{
+			frame.events = new StepRecorder.Event[ frame.eventCount ];
+			frame.eventValues = new float[ frame.eventCount ];
+		}
+		for ( int i = 0 ; i < frame.eventCount ; i++ )
+		{
+			frame.events[i] = StepRecorder.Event.fromCode( data.getInt() );
+			frame.eventValues[i] = data.getFloat();
+		}
+		return true;
+	}
+
+	private float[] readFloats(float[] array,int count)
+	{
+		final float[] result = array.length >= count ? array : new float[ count ];
+		data.asFloatBuffer().get( result , 0 , count );
+		data.position( data.position() + count*4 );
+		return result;
+	}
+}
@@ -0,0 +1,43 @@
+package de.codesourcery.inversek;
+
+/**
+ * Level of detail {@link SceneRenderer} draws the scene with, from most to least expensive.
+ */
+public enum RenderQuality
+{
+	/**
+	 * Antialiasing, all details.
+	 */
+	HIGH(true,false),
+	/**
+	 * No antialiasing.
+	 */
+	MEDIUM(false,false),
+	/**
+	 * No antialiasing, gripper parts drawn as lines, no debug chain or forward kinematics lines.
+	 */
+	LOW(false,true);
+
+	public final boolean antialiasing;
+	public final boolean simplified;
+
+	private RenderQuality(boolean antialiasing,boolean simplified)
+	{
+		this.antialiasing = antialiasing;
+		this.simplified = simplified;
+	}
+
+	/**
+	 * Returns the next lower quality level, this level if it is the lowest already.
+	 */
+	public RenderQuality lower() {
+		return ordinal() == values().length - 1 ? this : values()[ ordinal() + 1 ];
+	}
+
+	/**
+	 * Returns the next higher quality level, this level if it is the highest already.
+	 */
+	public RenderQuality higher() {
+		return ordinal() == 0 ? this : values()[ ordinal() - 1 ];
+	}
+}
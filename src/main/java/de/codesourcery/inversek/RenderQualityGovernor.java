@@ -0,0 +1,132 @@
+package de.codesourcery.inversek;
+
+/**
+ * Adjusts the {@link RenderQuality} based on measured render times.
+ *
+ * Render times are evaluated in windows of {@link #WINDOW_SIZE} frames. If the 95th percentile of a window exceeds
+ * {@link #STEP_DOWN_LOAD} of the frame budget, quality is lowered by one level. Quality is raised again once
+ * several consecutive windows stayed below {@link #STEP_UP_LOAD} of the budget. If raising the quality
+ * immediately causes it to be lowered again, the number of windows required before the next attempt doubles.
+ */
+final class RenderQualityGovernor
+{
+	// number of frames evaluated at once
+	static final int WINDOW_SIZE = 60;
+
+	// fractions of the frame budget, the rest of each frame is needed for simulation
+	static final double STEP_DOWN_LOAD = 0.5;
+	static final double STEP_UP_LOAD = 0.2;
+
+	private static final int MIN_STEP_UP_WINDOWS = 3;
+	private static final int MAX_STEP_UP_WINDOWS = 64;
+
+	private long budgetNanos;
+	private final TimingHistogram histogram = new TimingHistogram( WINDOW_SIZE );
+
+	private RenderQuality quality = RenderQuality.HIGH;
+	private int framesInWindow;
+	private int headroomWindows;
+	private int stepUpWindows = MIN_STEP_UP_WINDOWS;
+	private boolean steppedUp;
+
+	/**
+	 * @param budgetNanos max. time a frame may take
+	 */
+	public RenderQualityGovernor(long budgetNanos)
+	{
+		if ( budgetNanos <= 0 ) {
+			throw new IllegalArgumentException("Budget must be > 0");
+		}
+		this.budgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Records the time it took to render a frame.
+	 *
+	 * @return <code>true</code> if the quality level changed
+	 */
+	public boolean frameRendered(long renderNanos)
+	{
+		histogram.record( renderNanos );
+		if ( ++framesInWindow < WINDOW_SIZE ) {
+			return false;
+		}
+		framesInWindow = 0;
+
+		final long p95 = histogram.getPercentile( 95 );
+		if ( p95 > budgetNanos * STEP_DOWN_LOAD )
+		{
+			headroomWindows = 0;
+			if ( steppedUp ) {
+				// the higher level is still too expensive, wait longer before trying again
+				stepUpWindows = Math.min( stepUpWindows*2 , MAX_STEP_UP_WINDOWS );
+			}
+			steppedUp = false;
+			return setLevel( quality.lower() );
+		}
+
+		steppedUp = false;
+		if ( p95 < budgetNanos * STEP_UP_LOAD )
+		{
+			if ( ++headroomWindows >= stepUpWindows )
+			{
+				headroomWindows = 0;
+				steppedUp = quality != RenderQuality.HIGH;
+				return setLevel( quality.higher() );
+			}
+		} else {
+			headroomWindows = 0;
+		}
+		return false;
+	}
+
+	private boolean setLevel(RenderQuality newQuality)
+	{
+		if ( newQuality == quality ) {
+			return false;
+		}
+		if ( Main.DEBUG ) {
+			System.out.println("Render quality: "+quality+" -> "+newQuality+" (p95 render time "+
+					histogram.getPercentile( 95 ) / 1_000_000d+" ms, budget "+budgetNanos / 1_000_000d+" ms)");
+		}
+		quality = newQuality;
+		// times measured at the old level say nothing about the new one
+		histogram.reset();
+		return true;
+	}
+
+	public RenderQuality getQuality() {
+		return quality;
+	}
+
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * Sets the max. time a frame may take, discards measurements made against the old budget.
+	 */
+	public void setBudgetNanos(long budgetNanos)
+	{
+		if ( budgetNanos <= 0 ) {
+			throw new IllegalArgumentException("Budget must be > 0");
+		}
+		this.budgetNanos = budgetNanos;
+		histogram.reset();
+		framesInWindow = 0;
+		headroomWindows = 0;
+	}
+
+	/**
+	 * Goes back to {@link RenderQuality#HIGH} and discards all measurements.
+	 */
+	public void reset()
+	{
+		quality = RenderQuality.HIGH;
+		histogram.reset();
+		framesInWindow = 0;
+		headroomWindows = 0;
+		stepUpWindows = MIN_STEP_UP_WINDOWS;
+		steppedUp = false;
+	}
+}
@@ -0,0 +1,238 @@
+package de.codesourcery.inversek;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.swing.JFrame;
+
+import com.badlogic.gdx.physics.box2d.Box2D;
+
+/**
+ * Plays back a file written by {@link StepRecorder}.
+ *
+ * Usage: <code>ReplayTool [--headless] [--render &lt;directory&gt; [--size &lt;width&gt;x&lt;height&gt;] [--fps &lt;fps&gt;] [--threads &lt;count&gt;]] &lt;file&gt;</code>
+ *
+ * Recorded physics state is loaded into the {@link PhysicsState} of a freshly set up world (which
+ * is never stepped) and turned into {@link WorldSnapshot}s, either to be displayed by
+ * {@link MyPanel} at the original speed, rendered to PNG files by an {@link OffscreenRenderer}
+ * or, in headless mode, just decoded as fast as possible.
+ */
+public class ReplayTool
+{
+	private final Recording recording;
+	private final WorldModel worldModel;
+	private final RobotArm robotArm;
+
+	private final Recording.Frame frame = new Recording.Frame();
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean headless = false;
+		Path renderDirectory = null;
+		int width = 640;
+		int height = 480;
+		// one frame per physics step by default
+		int fps = Math.round( 1f / Constants.PHYSICS_TIMESTEP );
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path file = null;
+		try
+		{
+			for ( int i = 0 ; i < args.length ; i++ )
+			{
+				switch( args[i] )
+				{
+					case "--headless":
+						headless = true;
+						break;
+					case "--render":
+						renderDirectory = Paths.get( args[++i] );
+						break;
+					case "--size":
+						final String[] parts = args[++i].split( "x" );
+						width = Integer.parseInt( parts[0] );
+						height = Integer.parseInt( parts[1] );
+						break;
+					case "--fps":
+						fps = Integer.parseInt( args[++i] );
+						break;
+					case "--threads":
+						threads = Integer.parseInt( args[++i] );
+						break;
+					default:
+						if ( file != null || args[i].startsWith("--") ) {
+							throw new IllegalArgumentException("Unexpected argument: "+args[i]);
+						}
+						file = Paths.get( args[i] );
+				}
+			}
+			if ( file == null ) {
+				throw new IllegalArgumentException("No file given");
+			}
+		}
+		catch(RuntimeException e)
+		{
+			System.err.println( e.getMessage() );
+			System.err.println("Usage: [--headless] [--render <directory> [--size <width>x<height>] [--fps <fps>] [--threads <count>]] <file>");
+			System.exit(1);
+		}
+
+		if ( renderDirectory != null ) {
+			// no window needed
+			System.setProperty( "java.awt.headless" , "true" );
+		}
+
+		final ReplayTool tool = new ReplayTool( new Recording( file ) );
+		if ( renderDirectory != null )
+		{
+			Files.createDirectories( renderDirectory );
+			try ( OffscreenRenderer renderer = new OffscreenRenderer( width , height , threads , renderDirectory ) ) {
+				tool.render( renderer , fps );
+			}
+		}
+		else if ( headless ) {
+			tool.runHeadless();
+		} else {
+			tool.run();
+		}
+	}
+
+	public ReplayTool(Recording recording)
+	{
+		Box2D.init();
+
+		this.recording = recording;
+		this.worldModel = new WorldModel();
+		this.robotArm = new RobotArm( worldModel );
+	}
+
+	/**
+	 * Loads the next frame of the recording.
+	 *
+	 * @return <code>false</code> if the end of the recording has been reached
+	 */
+	private boolean loadNextFrame()
+	{
+		if ( ! recording.next( frame ) ) {
+			return false;
+		}
+
+		final PhysicsState state = worldModel.getPhysicsState();
+		if ( frame.bodyCount != state.getBodyCount() ||
+			 frame.revoluteJointCount != state.getRevoluteJointCount() ||
+			 frame.prismaticJointCount != state.getPrismaticJointCount() )
+		{
+			throw new IllegalStateException("Recording does not match the current robot arm ("+frame.bodyCount+" bodies/"+
+					frame.revoluteJointCount+" revolute joints/"+frame.prismaticJointCount+" prismatic joints)");
+		}
+		state.load( frame.transforms , frame.jointAngles , frame.jointTranslations , frame.ballPositions , frame.ballCount );
+		robotArm.getModel().getChains().forEach( KinematicsChain::syncWithBox2d );
+
+		for ( int i = 0 ; i < frame.eventCount ; i++ ) {
+			System.out.println("Step "+frame.stepCount+": "+frame.events[i]+" ("+frame.eventValues[i]+")");
+		}
+		return true;
+	}
+
+	public void runHeadless()
+	{
+		final WorldSnapshot snapshot = new WorldSnapshot();
+
+		final long start = System.nanoTime();
+		int frames = 0;
+		long firstStep = -1;
+		while ( loadNextFrame() )
+		{
+			if ( firstStep == -1 ) {
+				firstStep = frame.stepCount;
+			}
+			snapshot.capture( robotArm , worldModel , null );
+			frames++;
+		}
+		final long elapsedMillis = (System.nanoTime() - start)/1_000_000;
+		System.out.println("Replayed "+frames+" frames (steps "+firstStep+" - "+frame.stepCount+") in "+elapsedMillis+" ms");
+	}
+
+	/**
+	 * Renders the recording to images, sampled at a fixed frame rate.
+	 *
+	 * Every frame shows the most recent recorded physics step at its point in simulation time. If the
+	 * recording has gaps larger than a frame (or the frame rate is higher than the step rate) that step
+	 * gets rendered repeatedly, so the resulting image sequence always plays back at the original speed.
+	 */
+	public void render(OffscreenRenderer renderer,int fps) throws IOException
+	{
+		if ( fps <= 0 ) {
+			throw new IllegalArgumentException("FPS must be > 0");
+		}
+
+		final long start = System.nanoTime();
+		long firstStep = -1;
+		int frameNumber = 0;
+		while ( loadNextFrame() )
+		{
+			if ( firstStep == -1 ) {
+				firstStep = frame.stepCount;
+			}
+			final double seconds = ( frame.stepCount - firstStep ) * (double) Constants.PHYSICS_TIMESTEP;
+			// number of frames due up to and including this step, tolerating rounding errors
+			final long framesDue = (long) Math.floor( seconds * fps + 1e-6 ) + 1;
+			while ( frameNumber < framesDue )
+			{
+				final WorldSnapshot snapshot;
+				try {
+					snapshot = renderer.acquireSnapshot();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+				snapshot.capture( robotArm , worldModel , null );
+				renderer.submit( snapshot , frameNumber++ );
+			}
+		}
+		renderer.close();
+		final long elapsedMillis = (System.nanoTime() - start)/1_000_000;
+		System.out.println("Rendered "+renderer.getFramesWritten()+" frames ("+renderer.getWidth()+"x"+renderer.getHeight()+
+				" @ "+fps+" fps) in "+elapsedMillis+" ms");
+	}
+
+	public void run()
+	{
+		final TripleBuffer<WorldSnapshot> snapshots = new TripleBuffer<>( WorldSnapshot::new );
+		final MyPanel panel = new MyPanel( snapshots );
+		panel.setPreferredSize( new Dimension(640,480 ) );
+
+		final JFrame window = new JFrame("Replay");
+		window.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
+		window.getContentPane().add( panel );
+		window.pack();
+		window.setLocationRelativeTo(null);
+		window.setVisible(true);
+
+		long previousStep = -1;
+		while ( loadNextFrame() )
+		{
+			// play back at the speed the frames were recorded at
+			if ( previousStep != -1 )
+			{
+				final long millis = (long) ( (frame.stepCount - previousStep) * Constants.PHYSICS_TIMESTEP * 1000 );
+				try {
+					Thread.sleep( millis );
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			previousStep = frame.stepCount;
+
+			snapshots.getWriteBuffer().capture( robotArm , worldModel , null );
+			snapshots.publish();
+			panel.tick( Constants.PHYSICS_TIMESTEP );
+		}
+		System.out.println("End of recording reached.");
+	}
+}
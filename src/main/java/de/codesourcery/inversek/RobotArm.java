@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
@@ -11,9 +12,13 @@ import com.badlogic.gdx.physics.box2d.Body;
 import de.codesourcery.inversek.ISolver.ICompletionCallback;
 import de.codesourcery.inversek.ISolver.Outcome;
 import de.codesourcery.inversek.Joint.MovementRange;
+import de.codesourcery.inversek.WorldModel.Ball;
 
 public class RobotArm implements ITickListener , IMathSupport {
 
+	// max. time a motion may take when being simulated in the sandbox 
+	private static final int MAX_SIMULATION_STEPS = (int) (20 / Constants.PHYSICS_TIMESTEP);
+	
 	private final WorldModel worldModel;
 	private final RobotModel model;
 	private float solveTimeSecs;
@@ -22,7 +27,17 @@ public class RobotArm implements ITickListener , IMathSupport {
 	
 	private GripperAnimator gripperAnimator;
 	
+	private Profiler.Section gripperSection;
+	private Profiler.Section jointControllerSection;
+	
 	private Body base;
+	private int baseSlot = -1;
+	
+	private WorldSandbox sandbox;
+	private final WorldState sandboxStartState = new WorldState();
+	private CompletableFuture<WorldSandbox.Result> pendingSimulation;
+	private ISolver pendingSolver;
+	private Map<String,Float> pendingPlan;
 	
 	protected static final class JointController implements ITickListener 
 	{
@@ -33,6 +48,10 @@ public class RobotArm implements ITickListener , IMathSupport {
 		public JointController(Joint joint) {
 			this.joint = joint;
 		}
+
+		public void setProfiler(Profiler profiler) {
+			animators.setProfiler( profiler );
+		}
 		
 		public boolean isMoving() {
 			return ! tasks.isEmpty() || ! animators.isEmpty();
@@ -155,34 +174,7 @@ public class RobotArm implements ITickListener , IMathSupport {
 					return true;
 				}
 				
-				// TODO: simulate actual motion to make sure no invalid configurations occur while moving
-				
-//				final KinematicsChain configToTest = model.getChains().get(0).createCopy();
-//				
-//				final List<JointAnimator> animators = new ArrayList<>();
-//				for ( Joint joint : configToTest.getJoints() ) 
-//				{
-//					final float dstAngle = chainInFinalConfig.getJointByID( joint.getId() ).getOrientationDegrees();
-//					animators.add( new JointAnimator(joint, dstAngle ) );
-//				}
-//				while( ! animators.isEmpty() ) 
-//				{
-//					for (Iterator<JointAnimator> it = animators.iterator(); it.hasNext();) 
-//					{
-//						final JointAnimator m = it.next();
-//						if ( ! m.tick( 1f / Main.DESIRED_FPS ) ) {
-//							it.remove();
-//						}
-//					}
-//					
-//					// recalculate bone positions
-//					configToTest.applyForwardKinematics();
-//					
-//					// validate configuration
-//					if ( isAnyBoneBelowGroundPlane( configToTest ) ) {
-//						return true;
-//					}
-//				}
+				// the motion itself gets simulated in the sandbox (if enabled) once a solution has been found
 				return false; 
 			}
 			
@@ -236,30 +228,94 @@ public class RobotArm implements ITickListener , IMathSupport {
 		if ( outcome == Outcome.SUCCESS )
 		{
 			System.out.println("Found solution in "+solveTimeSecs*1000+" millis");
+			worldModel.recordEvent( StepRecorder.Event.SOLVER_SUCCESS , solveTimeSecs );
 			
+			final Map<String,Float> plan = new HashMap<>();
 			solver.getChain().getJoints().forEach( joint -> 
 			{ 
 				System.out.println("Solution: "+joint.getId()+": "+joint.getBox2dOrientationDegrees()+" -> "+joint.getOrientationDegrees() );
+				plan.put( joint.getId() , joint.getOrientationDegrees() );
 			});
 			
-			solver.getChain().getJoints().forEach( joint -> 
+			if ( sandbox != null ) 
 			{
-				float desiredAngle = joint.getOrientationDegrees();
-//				if ( desiredAngle > 180 ) {
-//					desiredAngle = -(desiredAngle-360);
-//				}
-				if ( ! moveJoint( joint , desiredAngle , false ) ) {
-					System.err.println("Failed to move "+joint+" to "+desiredAngle+"° after finding solution (in range: "+joint.range.isInRange( desiredAngle )+")");
-				}
-			});
+				// simulate the motion before committing to it
+				sandboxStartState.capture( worldModel );
+				pendingSimulation = sandbox.simulate( sandboxStartState , plan , MAX_SIMULATION_STEPS , WorldSandbox.ARM_ABOVE_GROUND );
+				pendingSolver = solver;
+				pendingPlan = plan;
+				return;
+			}
+			executePlan( plan );
 		} 
 		else if ( outcome == Outcome.FAILURE) {
 			System.err.println("Failed to solve motion constraints after "+solveTimeSecs*1000+" millis");
+			worldModel.recordEvent( StepRecorder.Event.SOLVER_FAILURE , solveTimeSecs );
 		}
 		
 		solver.getCompletionCallback().complete( solver , outcome );		
 	}
 	
+	private void executePlan(Map<String,Float> plan) 
+	{
+		final KinematicsChain chain = model.getChains().get(0);
+		plan.forEach( (jointId,desiredAngle) -> 
+		{
+			final Joint joint = chain.getJointByID( jointId );
+			if ( ! moveJoint( joint , desiredAngle , false ) ) {
+				System.err.println("Failed to move "+joint+" to "+desiredAngle+"° after finding solution (in range: "+joint.range.isInRange( desiredAngle )+")");
+			}
+		});
+	}
+	
+	private void checkPendingSimulation() 
+	{
+		if ( pendingSimulation == null || ! pendingSimulation.isDone() ) {
+			return;
+		}
+		
+		final ISolver solver = pendingSolver;
+		final Map<String,Float> plan = pendingPlan;
+		WorldSandbox.Result result;
+		try {
+			result = pendingSimulation.join();
+		} 
+		catch(RuntimeException e) 
+		{
+			e.printStackTrace();
+			result = null;
+		}
+		pendingSimulation = null;
+		pendingSolver = null;
+		pendingPlan = null;
+		
+		// a motion that did not finish in time is not known to be invalid
+		if ( result != null && ( result.outcome == WorldSandbox.Outcome.COMPLETED || result.outcome == WorldSandbox.Outcome.TIMEOUT ) ) 
+		{
+			if ( Main.DEBUG ) {
+				System.out.println("Simulated motion: "+result);
+			}
+			executePlan( plan );
+			solver.getCompletionCallback().complete( solver , Outcome.SUCCESS );
+		} 
+		else 
+		{
+			System.err.println("Rejecting solution, simulated motion: "+result);
+			worldModel.recordEvent( StepRecorder.Event.SIMULATION_REJECTED , result != null ? result.steps : -1 );
+			solver.getCompletionCallback().complete( solver , Outcome.FAILURE );
+		}
+	}
+	
+	/**
+	 * Enables simulating motions in a sandbox world before executing them, motions the simulation
+	 * finds to move the arm into an invalid configuration get rejected. Disabled by default.
+	 * 
+	 * @param sandbox sandbox to use, <code>null</code> to execute motions right away
+	 */
+	public void setSandbox(WorldSandbox sandbox) {
+		this.sandbox = sandbox;
+	}
+	
 	public boolean moveJoint(Joint joint,float angleInDegrees) 
 	{
 		return moveJoint(joint,angleInDegrees,true);
@@ -275,9 +331,33 @@ public class RobotArm implements ITickListener , IMathSupport {
 		return false;
 	}
 	
+	/**
+	 * Moves multiple joints at once.
+	 * 
+	 * @param anglesByJointId desired orientation in degrees by joint ID
+	 * @return <code>false</code> if the arm is still moving or any of the angles is out of range,
+	 * no joint will be moved in this case
+	 */
+	public boolean moveJoints(Map<String,Float> anglesByJointId) 
+	{
+		if ( ! hasFinishedMoving() ) {
+			return false;
+		}
+		final KinematicsChain chain = model.getChains().get(0);
+		for ( Map.Entry<String,Float> entry : anglesByJointId.entrySet() ) 
+		{
+			final Joint joint = chain.getJointByID( entry.getKey() );
+			if ( ! joint.range.isInRange( entry.getValue() ) ) {
+				return false;
+			}
+		}
+		anglesByJointId.forEach( (id,angle) -> moveJoint( chain.getJointByID( id ) , angle , false ) );
+		return true;
+	}
+	
 	public boolean hasFinishedMoving() 
 	{
-		return currentSolver == null && noJointIsMoving();
+		return currentSolver == null && pendingSimulation == null && noJointIsMoving();
 	}
 	
 	private boolean noJointIsMoving() {
@@ -288,25 +368,96 @@ public class RobotArm implements ITickListener , IMathSupport {
 	public boolean tick(float deltaSeconds) 
 	{
 		solve(deltaSeconds);
+		checkPendingSimulation();
 		if ( gripperAnimator != null ) 
 		{
-			if ( ! gripperAnimator.tick( deltaSeconds ) ) {
+			if ( gripperSection != null ) {
+				gripperSection.begin();
+			}
+			final boolean keep = gripperAnimator.tick( deltaSeconds );
+			if ( gripperSection != null ) {
+				gripperSection.end();
+			}
+			if ( ! keep ) {
 				gripperAnimator = null;
 			}
 		}
-		jointControllers.values().forEach( act -> act.tick( deltaSeconds ) );
-		model.getChains().forEach( chain -> chain.syncWithBox2d() );
+		for ( JointController controller : jointControllers.values() ) 
+		{
+			if ( jointControllerSection != null ) {
+				jointControllerSection.begin();
+			}
+			controller.tick( deltaSeconds );
+			if ( jointControllerSection != null ) {
+				jointControllerSection.end();
+			}
+		}
 		return true;
 	}
 	
-	public void setBase(Body base) {
+	/**
+	 * Attaches a profiler that receives the time spent animating the gripper and joints.
+	 * 
+	 * @param profiler profiler or <code>null</code>
+	 */
+	public void setProfiler(Profiler profiler) 
+	{
+		gripperSection = profiler == null ? null : profiler.getSection( GripperAnimator.class.getSimpleName() );
+		jointControllerSection = profiler == null ? null : profiler.getSection( JointController.class.getSimpleName() );
+		jointControllers.values().forEach( c -> c.setProfiler( profiler ) );
+	}
+	
+	public void setBase(Body base,int physicsSlot) {
 		this.base = base;
+		this.baseSlot = physicsSlot;
 	}
 	
 	public Body getBase() {
 		return base;
 	}
 	
+	public int getBaseSlot() {
+		return baseSlot;
+	}
+	
+	/**
+	 * Returns the max. distance from the root joint the gripper can reach.
+	 */
+	public float getMaxReach() 
+	{
+		float reach = 0;
+		for ( Bone bone : model.getChains().get(0).getBones() ) 
+		{
+			reach += bone.length + bone.jointA.radius;
+			if ( bone instanceof Gripper ) {
+				reach += ((Gripper) bone).getClawLength();
+			}
+		}
+		return reach;
+	}
+	
+	/**
+	 * Returns the ball closest to the gripper.
+	 * 
+	 * @return ball or <code>null</code> if there is no ball within <code>maxDistance</code>
+	 */
+	public Ball findNearestBallToGripper(float maxDistance) 
+	{
+		final Vector2 end = model.getChains().get(0).getEndBone().getPositioningEnd();
+		return worldModel.findNearestBall( end.x , end.y , maxDistance );
+	}
+	
+	/**
+	 * Adds all balls within reach of the arm to a list.
+	 * 
+	 * @return number of balls found
+	 */
+	public int findReachableBalls(List<Ball> result) 
+	{
+		final Vector2 root = model.getChains().get(0).getRootJoint().position;
+		return worldModel.findBallsInRadius( root.x , root.y , getMaxReach() , result );
+	}
+	
 	public boolean setClaw(float open) {
 		if ( open < 0 || open > 1.0f ) {
 			throw new IllegalArgumentException("Percentage value must be in range 0...1");
@@ -317,12 +468,55 @@ public class RobotArm implements ITickListener , IMathSupport {
 		
 		final Gripper gripper = (Gripper) model.getChains().get(0).getEndBone();
 		gripperAnimator = new GripperAnimator( worldModel, gripper , open ); 
+		worldModel.recordEvent( StepRecorder.Event.GRIPPER_MOVE , open );
 		return true;
 	}
 	
+	/**
+	 * Stops all motions without recording an event and updates the gripper's opening from Box2D.
+	 * 
+	 * To be called after the Box2D state of the world got replaced, see {@link WorldSandbox}.
+	 */
+	void resetMotion() 
+	{
+		currentSolver = null;
+		if ( pendingSimulation != null ) 
+		{
+			pendingSimulation.cancel( false );
+			pendingSimulation = null;
+			pendingSolver = null;
+			pendingPlan = null;
+		}
+		if ( gripperAnimator != null ) {
+			gripperAnimator.emergencyStop();
+			gripperAnimator = null;
+		}
+		jointControllers.values().forEach( JointController::emergencyStop );
+		
+		for ( KinematicsChain chain : model.getChains() ) 
+		{
+			for ( Bone bone : chain.getBones() ) 
+			{
+				if ( bone instanceof Gripper ) {
+					((Gripper) bone).updateOpenPercentage();
+				}
+			}
+		}
+	}
+	
 	public void emergencyStop() 
 	{
 		System.out.println("*** Emergency stop ***");
+		worldModel.recordEvent( StepRecorder.Event.EMERGENCY_STOP , 0 );
+		
+		if ( pendingSimulation != null ) 
+		{
+			pendingSimulation.cancel( false );
+			pendingSolver.getCompletionCallback().complete( pendingSolver , Outcome.FAILURE );
+			pendingSimulation = null;
+			pendingSolver = null;
+			pendingPlan = null;
+		}
 		
 		if ( gripperAnimator != null ) {
 			gripperAnimator.emergencyStop();
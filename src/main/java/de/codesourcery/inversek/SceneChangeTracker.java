@@ -0,0 +1,278 @@
+package de.codesourcery.inversek;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Detects which parts of the scene drawn by {@link SceneRenderer} changed since the previous frame.
+ *
+ * Keeps a copy of the interpolated state of every bone, joint and ball together with the screen area it
+ * was drawn to. Items whose state changed contribute both their previous and their current screen area
+ * to the dirty region, as do nodes that got selected/deselected or hovered. Does not allocate memory
+ * once the internal arrays are large enough.
+ */
+final class SceneChangeTracker
+{
+	// transform, forward kinematics line, gripper part transforms, gripper positioning end, bone/baseplate/claw lengths
+	private static final int BONE_STATE_SIZE = WorldSnapshot.TRANSFORM_SIZE + WorldSnapshot.LINE_SIZE +
+			WorldSnapshot.GRIPPER_PARTS*WorldSnapshot.TRANSFORM_SIZE + 2 + 3;
+
+	private static final int JOINT_STATE_SIZE = 2;
+
+	// position, radius
+	private static final int BALL_STATE_SIZE = 3;
+
+	private boolean valid;
+
+	private float baseX;
+	private float baseY;
+
+	private int boneCount;
+	private float[] boneStates = new float[0];
+	private Rectangle[] boneBounds = new Rectangle[0];
+
+	private int jointCount;
+	private float[] jointStates = new float[0];
+	private Rectangle[] jointBounds = new Rectangle[0];
+
+	private int ballCount;
+	private float[] ballStates = new float[0];
+	private Rectangle[] ballBounds = new Rectangle[0];
+
+	private int debugStateSize;
+	private float[] debugState = new float[0];
+	private final Rectangle debugBounds = new Rectangle();
+
+	private Node<?> selectedNode;
+	private Node<?> hoveredNode;
+
+	private final float[] tmpState = new float[ Math.max( BONE_STATE_SIZE , BALL_STATE_SIZE ) ];
+
+	/**
+	 * Forgets the previous frame, the next call to {@link #update} marks the whole view as dirty.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Compares a snapshot with the one passed on the previous invocation and adds the screen areas
+	 * that need to be redrawn.
+	 *
+	 * @param selectedNode currently selected node or <code>null</code>
+	 * @param hoveredNode currently hovered node or <code>null</code>
+	 */
+	public void update(WorldSnapshot snapshot,SceneRenderer renderer,Node<?> selectedNode,Node<?> hoveredNode,DirtyRegion dirty)
+	{
+		// the robot base is part of the static layer, bones/joints only change when the arm gets rebuilt
+		final boolean all = ! valid || snapshot.baseX != baseX || snapshot.baseY != baseY ||
+			 snapshot.boneCount != boneCount || snapshot.jointCount != jointCount;
+		if ( all ) {
+			dirty.addAll();
+		}
+
+		// screen areas of all items need to be re-calculated after the view got invalidated
+		updateBones( snapshot , renderer , all , dirty );
+		updateJoints( snapshot , renderer , all , dirty );
+		updateBalls( snapshot , renderer , all , dirty );
+		updateDebugChain( snapshot , renderer , all , dirty );
+
+		if ( selectedNode != this.selectedNode )
+		{
+			addNodeBounds( snapshot , this.selectedNode , dirty );
+			addNodeBounds( snapshot , selectedNode , dirty );
+		}
+		if ( hoveredNode != this.hoveredNode )
+		{
+			addNodeBounds( snapshot , this.hoveredNode , dirty );
+			addNodeBounds( snapshot , hoveredNode , dirty );
+		}
+
+		this.selectedNode = selectedNode;
+		this.hoveredNode = hoveredNode;
+		this.baseX = snapshot.baseX;
+		this.baseY = snapshot.baseY;
+		this.valid = true;
+	}
+
+	private void addNodeBounds(WorldSnapshot snapshot,Node<?> node,DirtyRegion dirty)
+	{
+		if ( node == null ) {
+			return;
+		}
+		final int boneIdx = snapshot.indexOfBone( node );
+		if ( boneIdx != -1 ) {
+			dirty.add( boneBounds[boneIdx] );
+		}
+		final int jointIdx = snapshot.indexOfJoint( node );
+		if ( jointIdx != -1 ) {
+			dirty.add( jointBounds[jointIdx] );
+		}
+	}
+
+	private void updateBones(WorldSnapshot snapshot,SceneRenderer renderer,boolean all,DirtyRegion dirty)
+	{
+		final int count = snapshot.boneCount;
+		if ( boneBounds.length < count )
+		{
+			boneBounds = grow( boneBounds , count );
+			boneStates = Arrays.copyOf( boneStates , boneBounds.length*BONE_STATE_SIZE );
+		}
+
+		final float[] state = tmpState;
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			int n = 0;
+			final int transformOffset = i*WorldSnapshot.TRANSFORM_SIZE;
+			for ( int j = 0 ; j < WorldSnapshot.TRANSFORM_SIZE ; j++ ) {
+				state[n++] = snapshot.lerpBoneTransforms[transformOffset+j];
+			}
+			final int lineOffset = i*WorldSnapshot.LINE_SIZE;
+			for ( int j = 0 ; j < WorldSnapshot.LINE_SIZE ; j++ ) {
+				state[n++] = snapshot.boneLines[lineOffset+j];
+			}
+			state[n++] = snapshot.boneLengths[i];
+			if ( snapshot.isGripper[i] )
+			{
+				final int gripperOffset = i*WorldSnapshot.GRIPPER_PARTS*WorldSnapshot.TRANSFORM_SIZE;
+				for ( int j = 0 ; j < WorldSnapshot.GRIPPER_PARTS*WorldSnapshot.TRANSFORM_SIZE ; j++ ) {
+					state[n++] = snapshot.lerpGripperTransforms[gripperOffset+j];
+				}
+				state[n++] = snapshot.gripperPositioningEnd[i*2];
+				state[n++] = snapshot.gripperPositioningEnd[i*2+1];
+				state[n++] = snapshot.gripperBaseplateLengths[i];
+				state[n++] = snapshot.gripperClawLengths[i];
+			}
+			while ( n < BONE_STATE_SIZE ) {
+				state[n++] = 0;
+			}
+
+			if ( changed( state , boneStates , i*BONE_STATE_SIZE , BONE_STATE_SIZE ) || all || i >= boneCount )
+			{
+				if ( i < boneCount ) {
+					dirty.add( boneBounds[i] );
+				}
+				renderer.getBoneViewBounds( snapshot , i , boneBounds[i] );
+				dirty.add( boneBounds[i] );
+			}
+		}
+		boneCount = count;
+	}
+
+	private void updateJoints(WorldSnapshot snapshot,SceneRenderer renderer,boolean all,DirtyRegion dirty)
+	{
+		final int count = snapshot.jointCount;
+		if ( jointBounds.length < count )
+		{
+			jointBounds = grow( jointBounds , count );
+			jointStates = Arrays.copyOf( jointStates , jointBounds.length*JOINT_STATE_SIZE );
+		}
+
+		final float[] state = tmpState;
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			state[0] = snapshot.lerpJointPositions[i*2];
+			state[1] = snapshot.lerpJointPositions[i*2+1];
+			if ( changed( state , jointStates , i*JOINT_STATE_SIZE , JOINT_STATE_SIZE ) || all || i >= jointCount )
+			{
+				if ( i < jointCount ) {
+					dirty.add( jointBounds[i] );
+				}
+				renderer.getJointViewBounds( snapshot , i , jointBounds[i] );
+				dirty.add( jointBounds[i] );
+			}
+		}
+		jointCount = count;
+	}
+
+	private void updateBalls(WorldSnapshot snapshot,SceneRenderer renderer,boolean all,DirtyRegion dirty)
+	{
+		final int count = snapshot.ballCount;
+		if ( ballBounds.length < count )
+		{
+			ballBounds = grow( ballBounds , count );
+			ballStates = Arrays.copyOf( ballStates , ballBounds.length*BALL_STATE_SIZE );
+		}
+
+		final float[] state = tmpState;
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			state[0] = snapshot.lerpBallPositions[i*2];
+			state[1] = snapshot.lerpBallPositions[i*2+1];
+			state[2] = snapshot.ballRadii[i];
+			if ( changed( state , ballStates , i*BALL_STATE_SIZE , BALL_STATE_SIZE ) || all || i >= ballCount )
+			{
+				if ( i < ballCount ) {
+					dirty.add( ballBounds[i] );
+				}
+				renderer.getBallViewBounds( snapshot , i , ballBounds[i] );
+				dirty.add( ballBounds[i] );
+			}
+		}
+		// balls that are gone
+		for ( int i = count ; i < ballCount ; i++ ) {
+			dirty.add( ballBounds[i] );
+		}
+		ballCount = count;
+	}
+
+	private void updateDebugChain(WorldSnapshot snapshot,SceneRenderer renderer,boolean all,DirtyRegion dirty)
+	{
+		final int size = snapshot.hasDebugChain ? snapshot.debugBoneCount*WorldSnapshot.LINE_SIZE + 2 : 0;
+		boolean changed = all || size != debugStateSize;
+		if ( debugState.length < size ) {
+			debugState = Arrays.copyOf( debugState , size );
+		}
+		if ( size > 0 )
+		{
+			final int lineValues = size - 2;
+			for ( int i = 0 ; i < lineValues ; i++ )
+			{
+				if ( debugState[i] != snapshot.debugBoneLines[i] )
+				{
+					debugState[i] = snapshot.debugBoneLines[i];
+					changed = true;
+				}
+			}
+			if ( debugState[lineValues] != snapshot.debugEndX || debugState[lineValues+1] != snapshot.debugEndY )
+			{
+				debugState[lineValues] = snapshot.debugEndX;
+				debugState[lineValues+1] = snapshot.debugEndY;
+				changed = true;
+			}
+		}
+		if ( changed )
+		{
+			dirty.add( debugBounds );
+			renderer.getDebugChainViewBounds( snapshot , debugBounds );
+			dirty.add( debugBounds );
+		}
+		debugStateSize = size;
+	}
+
+	/**
+	 * Compares a state with the previous one and stores it.
+	 */
+	private static boolean changed(float[] state,float[] previous,int offset,int size)
+	{
+		boolean changed = false;
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			if ( previous[offset+i] != state[i] )
+			{
+				previous[offset+i] = state[i];
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private static Rectangle[] grow(Rectangle[] array,int minSize)
+	{
+		final Rectangle[] result = Arrays.copyOf( array , Math.max( minSize , array.length*2 ) );
+		for ( int i = array.length ; i < result.length ; i++ ) {
+			result[i] = new Rectangle();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,772 @@
+package de.codesourcery.inversek;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+/**
+ * Draws the world (background, floor, robot base, balls) and the robot arm of a {@link WorldSnapshot}.
+ *
+ * Keeps no reference to any Swing component so it can be used for both on-screen ({@link MyPanel})
+ * and off-screen ({@link OffscreenRenderer}) rendering. Instances are not thread-safe, each rendering
+ * thread needs its own.
+ */
+final class SceneRenderer implements IMathSupport
+{
+	static final Color BACKGROUND_COLOR = Color.WHITE;
+
+	private static final Color ROBOT_BASE_COLOR = Color.BLACK;
+
+	private static final Color JOINT_COLOR = Color.RED;
+
+	private static final Color BALL_COLOR = Color.GREEN;
+
+	private static final Color GRIPPER_BONE_COLOR = Color.BLACK;
+	private static final Color GRIPPER_BASEPLATE_COLOR = Color.YELLOW;
+	private static final Color GRIPPER_LOWER_CLAW_COLOR = Color.RED;
+	private static final Color GRIPPER_UPPER_CLAW_COLOR = Color.CYAN;
+
+	private static final Color BONE_COLOR = Color.BLUE;
+
+	static final Color SELECTION_COLOR = Color.GREEN;
+	static final Color HOVER_COLOR = Color.MAGENTA;
+
+	// size of cross-hairs drawn on joints, balls and the debug chain end
+	private static final int CROSSHAIR_SIZE = 5;
+
+	// added to all view bounds to cover antialiasing and rounding
+	private static final int BOUNDS_PADDING = 2;
+
+	private final OrthographicCamera camera = new OrthographicCamera( 320 , 240 );
+	private final ViewTransform viewTransform = new ViewTransform();
+	private int width;
+	private int height;
+	private float viewScaleX;
+	private float viewScaleY;
+
+	// graphics configuration to create cached images for, may be NULL
+	private GraphicsConfiguration graphicsConfig;
+
+	// target of the frame currently being rendered
+	private Graphics2D graphics;
+	// region of the frame currently being rendered, null for the whole viewport
+	private DirtyRegion region;
+
+	private Node<?> selectedNode;
+	private Node<?> hoveredNode;
+
+	private RenderQuality quality = RenderQuality.HIGH;
+
+	private Profiler.Section worldSection;
+	private Profiler.Section bonesSection;
+	private Profiler.Section jointsSection;
+
+	// pre-rendered background, floor and robot base
+	private BufferedImage staticLayer;
+	private boolean staticLayerDirty = true;
+	private float staticLayerBaseX;
+	private float staticLayerBaseY;
+
+	private float[] viewBallPositions = new float[0];
+	private final BallRenderer ballRenderer = new BallRenderer( BALL_COLOR );
+
+	private final Box tmpBox = new Box();
+	private final Vector2 tmpCenter = new Vector2();
+	private final Vector2 tmp0 = new Vector2();
+	private final Vector2 tmp1 = new Vector2();
+	private final Vector2 tmp2 = new Vector2();
+	private final int[] tmpPolygonX = new int[4];
+	private final int[] tmpPolygonY = new int[4];
+
+	// bounds accumulated by include*() methods
+	private float boundsMinX;
+	private float boundsMinY;
+	private float boundsMaxX;
+	private float boundsMaxY;
+
+	static {
+		new SharedLibraryLoader().load("gdx");
+	}
+
+	static final class Box
+	{
+		public final Vector2 p0 = new Vector2();
+		public final Vector2 p1 = new Vector2();
+		public final Vector2 p2 = new Vector2();
+		public final Vector2 p3 = new Vector2();
+
+		public Box() {
+		}
+
+		public boolean contains(float x,float y)
+		{
+			float xMin = min( min( min( p0.x , p1.x ) , p2.x ) , p3.x );
+			if ( x < xMin ) {
+				return false;
+			}
+
+			float yMin = min( min( min( p0.y , p1.y ) , p2.y ) , p3.y );
+			if ( y < yMin ) {
+				return false;
+			}
+
+			float xMax = max( max( max( p0.x , p1.x ) , p2.x ) , p3.x );
+			if ( x > xMax ) {
+				return false;
+			}
+			float yMax = max( max( max( p0.y , p1.y ) , p2.y ) , p3.y );
+			return y <= yMax;
+		}
+
+		public void getOrientedLine(Vector2 start,Vector2 end)
+		{
+			start.set( p0 ).add( p3 ).scl(0.5f);
+			end.set( p1 ).add( p2 ).scl(0.5f);
+		}
+
+		public Vector2 getMin(Vector2 vec) {
+			vec.x = min( min( min( p0.x , p1.x ) , p2.x ) , p3.x );
+			vec.y = min( min( min( p0.y , p1.y ) , p2.y ) , p3.y );
+			return vec;
+		}
+
+		public Vector2 getMax(Vector2 vec) {
+			vec.x = max( max( max( p0.x , p1.x ) , p2.x ) , p3.x );
+			vec.y = max( max( max( p0.y , p1.y ) , p2.y ) , p3.y );
+			return vec;
+		}
+
+		private static float min(float a,float b) {
+			return a < b ? a : b;
+		}
+
+		private static float max(float a,float b) {
+			return a > b ? a : b;
+		}
+
+		public Vector2 getCenter(Vector2 vec)
+		{
+			return vec.set( (p0.x + p1.x + p2.x + p3.x) / 4 , (p0.y + p1.y + p2.y + p3.y) / 4 );
+		}
+
+		public void set(Vector2 centerInWorldCoords,float xExtent,float yExtent,float angleInDegrees)
+		{
+			p0.set(-xExtent/2, yExtent/2);
+			p1.set( xExtent/2, yExtent/2);
+			p2.set( xExtent/2,-yExtent/2);
+			p3.set(-xExtent/2,-yExtent/2);
+
+			if ( angleInDegrees != 0 )
+			{
+				p0.rotate( angleInDegrees );
+				p1.rotate( angleInDegrees );
+				p2.rotate( angleInDegrees );
+				p3.rotate( angleInDegrees );
+			}
+
+			p0.add( centerInWorldCoords );
+			p1.add( centerInWorldCoords );
+			p2.add( centerInWorldCoords );
+			p3.add( centerInWorldCoords );
+		}
+	}
+
+	public SceneRenderer() {
+		setViewport( 320 , 240 );
+	}
+
+	/**
+	 * Sets the size of the area to render into, in pixels.
+	 */
+	public void setViewport(int width,int height)
+	{
+		this.width = width;
+		this.height = height;
+		updateCamera( camera , width , height );
+		viewTransform.set( camera , width , height );
+		viewScaleX = viewTransform.getScaleX();
+		viewScaleY = viewTransform.getScaleY();
+		ballRenderer.setScale( viewScaleX , viewScaleY );
+		staticLayerDirty = true;
+	}
+
+	private static void updateCamera(OrthographicCamera camera,int viewportWidth,int viewportHeight)
+	{
+		camera.setToOrtho( true , viewportWidth , viewportHeight);
+
+		camera.direction.set( 0 , 0, 1 );
+		camera.position.set(0,0.9f,-5f);
+		camera.near = 0;
+		camera.far = 100;
+		camera.zoom = 0.005f;
+
+		System.out.println("Setting camera viewport to "+viewportWidth+" x "+viewportHeight);
+		camera.update(true);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Sets the graphics configuration cached images (static layer, ball sprites) get created for.
+	 *
+	 * @param config configuration or <code>null</code> to use plain {@link BufferedImage}s
+	 */
+	public void setGraphicsConfiguration(GraphicsConfiguration config)
+	{
+		if ( config != graphicsConfig )
+		{
+			graphicsConfig = config;
+			staticLayer = null;
+		}
+	}
+
+	/**
+	 * Sets the nodes that get rendered using {@link #SELECTION_COLOR} and {@link #HOVER_COLOR}.
+	 *
+	 * @param selectedNode selected node or <code>null</code>
+	 * @param hoveredNode hovered node or <code>null</code>
+	 */
+	public void setHighlightedNodes(Node<?> selectedNode,Node<?> hoveredNode)
+	{
+		this.selectedNode = selectedNode;
+		this.hoveredNode = hoveredNode;
+	}
+
+	/**
+	 * Attaches a profiler that receives the time spent rendering the world, the bones and the joints.
+	 *
+	 * @param profiler profiler or <code>null</code>
+	 */
+	public void setProfiler(Profiler profiler)
+	{
+		worldSection = profiler == null ? null : profiler.getSection( "render: world" );
+		bonesSection = profiler == null ? null : profiler.getSection( "render: bones" );
+		jointsSection = profiler == null ? null : profiler.getSection( "render: joints" );
+	}
+
+	/**
+	 * Sets the level of detail, discards the static layer if it changed.
+	 */
+	public void setQuality(RenderQuality quality)
+	{
+		if ( quality == null ) {
+			throw new IllegalArgumentException("quality must not be NULL");
+		}
+		if ( quality != this.quality )
+		{
+			this.quality = quality;
+			staticLayerDirty = true;
+		}
+	}
+
+	public RenderQuality getQuality() {
+		return quality;
+	}
+
+	static void applyRenderingHints(Graphics2D graphics,RenderQuality quality)
+	{
+		if ( quality.antialiasing )
+		{
+			graphics.setRenderingHint( RenderingHints.KEY_ANTIALIASING , RenderingHints.VALUE_ANTIALIAS_ON );
+			graphics.setRenderingHint( RenderingHints.KEY_RENDERING , RenderingHints.VALUE_RENDER_QUALITY );
+		}
+		else
+		{
+			graphics.setRenderingHint( RenderingHints.KEY_ANTIALIASING , RenderingHints.VALUE_ANTIALIAS_OFF );
+			graphics.setRenderingHint( RenderingHints.KEY_RENDERING , RenderingHints.VALUE_RENDER_SPEED );
+		}
+	}
+
+	/**
+	 * Renders a snapshot, uses the interpolated positions of all bodies.
+	 *
+	 * @param graphics graphics to render to, the area covered by the current viewport gets completely overwritten.
+	 * Rendering hints are set according to the current quality level.
+	 */
+	public void render(Graphics2D graphics,WorldSnapshot snapshot) {
+		render( graphics , snapshot , null );
+	}
+
+	/**
+	 * Renders the parts of a snapshot that intersect a region.
+	 *
+	 * @param graphics graphics to render to, expected to be clipped to the region
+	 * @param region region to render, balls outside of it get skipped. <code>null</code> to render the whole viewport
+	 */
+	public void render(Graphics2D graphics,WorldSnapshot snapshot,DirtyRegion region)
+	{
+		this.graphics = graphics;
+		this.region = region;
+		applyRenderingHints( graphics , quality );
+		try
+		{
+			begin( worldSection );
+			renderWorld( snapshot );
+			end( worldSection );
+
+			begin( bonesSection );
+			renderDebugChain( snapshot );
+
+			for ( int i = 0 ; i < snapshot.boneCount ; i++ ) {
+				renderBone( snapshot , i );
+			}
+			end( bonesSection );
+
+			begin( jointsSection );
+			for ( int i = 0 ; i < snapshot.jointCount ; i++ ) {
+				renderJoint( snapshot , i );
+			}
+			end( jointsSection );
+		}
+		finally
+		{
+			this.graphics = null;
+			this.region = null;
+		}
+	}
+
+	private static void begin(Profiler.Section section)
+	{
+		if ( section != null ) {
+			section.begin();
+		}
+	}
+
+	private static void end(Profiler.Section section)
+	{
+		if ( section != null ) {
+			section.end();
+		}
+	}
+
+	private void renderDebugChain(WorldSnapshot snapshot)
+	{
+		if ( snapshot.hasDebugChain && ! quality.simplified )
+		{
+			graphics.setColor(Color.GREEN);
+
+			final Vector2 p0 = tmp0;
+			final Vector2 p1 = tmp1;
+			final float[] lines = snapshot.debugBoneLines;
+			for ( int i = 0 ; i < snapshot.debugBoneCount ; i++ )
+			{
+				final int offset = i*WorldSnapshot.LINE_SIZE;
+				p0.set( lines[offset] , lines[offset+1] );
+				p1.set( lines[offset+2] , lines[offset+3] );
+				modelToView( p0,p0 );
+				modelToView( p1,p1 );
+				renderLine( p0 , p1 );
+			}
+
+			p0.set( snapshot.debugEndX , snapshot.debugEndY );
+			modelToView(p0,p0);
+			final float centerX = p0.x;
+			final float centerY = p0.y;
+			graphics.drawLine( (int) centerX -5 , (int)centerY , (int)centerX + 5 , (int)centerY );
+			graphics.drawLine( (int) centerX , (int)centerY-5 , (int)centerX , (int)centerY+5 );
+		}
+	}
+
+	private void renderWorld(WorldSnapshot snapshot) {
+
+		// background, floor and robot base
+		renderStaticLayer( snapshot );
+
+		// render world objects
+		final int ballCount = snapshot.ballCount;
+		if ( viewBallPositions.length < ballCount*2 ) {
+			viewBallPositions = new float[ ballCount*2 ];
+		}
+		viewTransform.modelToView( snapshot.lerpBallPositions , 0 , viewBallPositions , 0 , ballCount );
+		ballRenderer.render( graphics , graphicsConfig , viewBallPositions , snapshot.ballRadii , ballCount , width , height , region );
+	}
+
+	/**
+	 * Draws the parts of the scene that never move, re-rendering them
+	 * only if the viewport changed.
+	 */
+	private void renderStaticLayer(WorldSnapshot snapshot)
+	{
+		if ( width <= 0 || height <= 0 ) {
+			return;
+		}
+
+		if ( staticLayerDirty || staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height ||
+			 staticLayerBaseX != snapshot.baseX || staticLayerBaseY != snapshot.baseY )
+		{
+			if ( staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height )
+			{
+				// compatible images can be cached in video memory by Java2D
+				staticLayer = graphicsConfig != null ? graphicsConfig.createCompatibleImage( width , height , Transparency.OPAQUE ) :
+					new BufferedImage( width , height , BufferedImage.TYPE_INT_RGB );
+			}
+
+			final Graphics2D layerGraphics = staticLayer.createGraphics();
+			final Graphics2D previous = graphics;
+			graphics = layerGraphics;
+			try
+			{
+				applyRenderingHints( layerGraphics , quality );
+				layerGraphics.setColor( BACKGROUND_COLOR );
+				layerGraphics.fillRect( 0 , 0 , width , height );
+
+				// render floor
+				final Vector2 p = tmp0.set(0,0);
+				modelToView( p , p);
+
+				layerGraphics.setColor(Color.BLACK);
+				layerGraphics.drawLine( 0 , (int) p.y , width , (int) p.y );
+
+				// render robot arm base
+				layerGraphics.setColor( ROBOT_BASE_COLOR );
+				renderBox( tmpCenter.set( snapshot.baseX , snapshot.baseY ) , Constants.ROBOTBASE_WIDTH , Constants.ROBOTBASE_HEIGHT , true );
+			}
+			finally
+			{
+				graphics = previous;
+				layerGraphics.dispose();
+			}
+			staticLayerBaseX = snapshot.baseX;
+			staticLayerBaseY = snapshot.baseY;
+			staticLayerDirty = false;
+		}
+		graphics.drawImage( staticLayer , 0 , 0 , null );
+	}
+
+	private void renderBox(Vector2 centerInWorldCoords,float xExtent,float yExtent,boolean filled)
+	{
+		renderBox(centerInWorldCoords,xExtent,yExtent,Vector2.Zero,0,filled);
+	}
+
+	private void renderBox(Vector2 centerInWorldCoords,float xExtent,float yExtent,Vector2 rotationCenter,float angleInDegrees,boolean filled)
+	{
+		tmpBox.set( centerInWorldCoords , xExtent , yExtent , angleInDegrees );
+		renderBox( tmpBox , filled );
+	}
+
+	private void renderBox(Box box,boolean filled)
+	{
+		final int x[] = tmpPolygonX;
+		final int y[] = tmpPolygonY;
+
+		final ViewTransform t = viewTransform;
+
+		x[0] = (int) t.toViewX( box.p0.x , box.p0.y );
+		y[0] = (int) t.toViewY( box.p0.x , box.p0.y );
+
+		x[1] = (int) t.toViewX( box.p1.x , box.p1.y );
+		y[1] = (int) t.toViewY( box.p1.x , box.p1.y );
+
+		x[2] = (int) t.toViewX( box.p2.x , box.p2.y );
+		y[2] = (int) t.toViewY( box.p2.x , box.p2.y );
+
+		x[3] = (int) t.toViewX( box.p3.x , box.p3.y );
+		y[3] = (int) t.toViewY( box.p3.x , box.p3.y );
+
+		if ( filled ) {
+			graphics.fillPolygon( x , y , 4 );
+		} else {
+			graphics.drawPolygon( x , y , 4 );
+		}
+	}
+
+	private void renderJoint(WorldSnapshot snapshot,int jointIdx)
+	{
+		graphics.setColor( getNodeColor( snapshot.joints[jointIdx] ,JOINT_COLOR) );
+		renderCircle( getJointPosition( snapshot , jointIdx , tmpCenter ) , Constants.JOINT_RENDER_RADIUS );
+	}
+
+	private static Vector2 getJointPosition(WorldSnapshot snapshot,int jointIdx,Vector2 result)
+	{
+		return result.set( snapshot.lerpJointPositions[jointIdx*2] , snapshot.lerpJointPositions[jointIdx*2+1] );
+	}
+
+	private boolean renderCircle(Vector2 modelCenterCoords,float modelRadius)
+	{
+		final float centerX = viewTransform.toViewX( modelCenterCoords.x , modelCenterCoords.y );
+		final float centerY = viewTransform.toViewY( modelCenterCoords.x , modelCenterCoords.y );
+		return renderViewCircle( centerX , centerY , modelRadius*viewScaleX , modelRadius*viewScaleY );
+	}
+
+	private boolean renderViewCircle(float centerX,float centerY,float radiusX,float radiusY)
+	{
+		final boolean isOnScreen = !( centerX < 0 || centerY < 0 || centerX > width || centerY > height );
+
+		if ( isOnScreen )
+		{
+			graphics.fillArc( (int) (centerX - radiusX) , (int) (centerY - radiusY) , (int) (2*radiusX) , (int) (2*radiusY) , 0 , 360 );
+			graphics.setColor(Color.BLACK);
+
+			graphics.drawLine( (int) centerX -5 , (int) centerY , (int) centerX + 5 , (int)centerY );
+			graphics.drawLine( (int) centerX , (int)  centerY-5 , (int) centerX , (int)centerY+5 );
+		}
+		return isOnScreen;
+	}
+
+	private Color getNodeColor(Node<?> n,Color regular)
+	{
+		if ( n == null ) {
+			return regular;
+		}
+		if ( selectedNode == n ) {
+			return SELECTION_COLOR;
+		}
+		if ( hoveredNode == n ) {
+			return HOVER_COLOR;
+		}
+		return regular;
+	}
+
+	/**
+	 * Stores the bounding box of a joint (in model coordinates).
+	 */
+	public void getJointBoundingBox(WorldSnapshot snapshot,int jointIdx,Box r)
+	{
+		final Vector2 center = getJointPosition( snapshot , jointIdx , tmp2 );
+		r.set( center , 2*Constants.JOINT_RENDER_RADIUS , 2*Constants.JOINT_RENDER_RADIUS , 0);
+	}
+
+	/**
+	 * Stores the bounding box of a bone (in model coordinates).
+	 */
+	public void getBoneBoundingBox(WorldSnapshot snapshot,int boneIdx,Box box)
+	{
+		final int offset = boneIdx*WorldSnapshot.TRANSFORM_SIZE;
+		final float[] transforms = snapshot.lerpBoneTransforms;
+		box.set( tmp2.set( transforms[offset] , transforms[offset+1] ) ,
+				snapshot.boneLengths[boneIdx] ,
+				Constants.BONE_THICKNESS ,
+				radToDeg( transforms[offset+2] ) );
+	}
+
+	private void renderBone(WorldSnapshot snapshot,int boneIdx)
+	{
+		final boolean isGripper = snapshot.isGripper[boneIdx];
+		final Color regularColor  = isGripper ? GRIPPER_BONE_COLOR : BONE_COLOR;
+		graphics.setColor( getNodeColor( snapshot.bones[boneIdx] , regularColor ));
+
+		getBoneBoundingBox( snapshot , boneIdx , tmpBox );
+		renderBox( tmpBox , true );
+
+		final boolean simplified = quality.simplified;
+
+		// TODO: Remove debug rendering
+		if ( ! simplified )
+		{
+			graphics.setColor( Color.RED );
+			final int lineOffset = boneIdx*WorldSnapshot.LINE_SIZE;
+			final Vector2 debugP0 = tmp0.set( snapshot.boneLines[lineOffset] , snapshot.boneLines[lineOffset+1] );
+			final Vector2 debugP1 = tmp1.set( snapshot.boneLines[lineOffset+2] , snapshot.boneLines[lineOffset+3] );
+			modelToView(debugP0,debugP0);
+			modelToView(debugP1,debugP1);
+			renderLine( debugP0 , debugP1 );
+		}
+
+		if ( isGripper )
+		{
+			final float[] transforms = snapshot.lerpGripperTransforms;
+			final int offset = boneIdx*WorldSnapshot.GRIPPER_PARTS*WorldSnapshot.TRANSFORM_SIZE;
+			final float clawLength = snapshot.gripperClawLengths[boneIdx];
+
+			// render base plate
+			// TODO: Maybe use gripper.getCurrentBaseplateLength() instead ?
+			graphics.setColor( GRIPPER_BASEPLATE_COLOR );
+			renderGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_BASEPLATE*WorldSnapshot.TRANSFORM_SIZE ,
+					Constants.BASEPLATE_THICKNESS , snapshot.gripperBaseplateLengths[boneIdx] , simplified );
+
+			// render upper claw
+			graphics.setColor( GRIPPER_UPPER_CLAW_COLOR );
+			renderGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_UPPER_CLAW*WorldSnapshot.TRANSFORM_SIZE ,
+					clawLength , Constants.CLAW_THICKNESS , simplified );
+
+			// render lower claw
+			graphics.setColor( GRIPPER_LOWER_CLAW_COLOR );
+			renderGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_LOWER_CLAW*WorldSnapshot.TRANSFORM_SIZE ,
+					clawLength , Constants.CLAW_THICKNESS , simplified );
+
+			if ( simplified ) {
+				return;
+			}
+
+			graphics.setColor( Color.RED );
+
+			final Vector2 tmp = tmp0.set( snapshot.gripperPositioningEnd[boneIdx*2] , snapshot.gripperPositioningEnd[boneIdx*2+1] );
+			modelToView( tmp , tmp );
+			graphics.drawLine( (int) (tmp.x -5), (int) tmp.y, (int) (tmp.x + 5  ) , (int) tmp.y );
+			graphics.drawLine( (int) tmp.x, (int) (tmp.y-5), (int) tmp.x , (int) (tmp.y+5) );
+		}
+	}
+
+	private void renderGripperPart(float[] transforms,int offset,float xExtent,float yExtent,boolean simplified)
+	{
+		tmpCenter.set( transforms[offset] , transforms[offset+1] );
+		if ( ! simplified )
+		{
+			renderBox( tmpCenter , xExtent , yExtent , Vector2.Zero , radToDeg( transforms[offset+2] ) , true );
+			return;
+		}
+
+		// draw a line along the longer axis
+		final float angle = transforms[offset+2];
+		final float cos = (float) Math.cos( angle );
+		final float sin = (float) Math.sin( angle );
+		final float dx = xExtent >= yExtent ? cos*xExtent/2 : -sin*yExtent/2;
+		final float dy = xExtent >= yExtent ? sin*xExtent/2 : cos*yExtent/2;
+		final Vector2 p0 = modelToView( tmp0.set( tmpCenter.x - dx , tmpCenter.y - dy ) , tmp0 );
+		final Vector2 p1 = modelToView( tmp1.set( tmpCenter.x + dx , tmpCenter.y + dy ) , tmp1 );
+		renderLine( p0 , p1 );
+	}
+
+	private void renderLine(Vector2 p0,Vector2 p1)
+	{
+		graphics.drawLine( (int) p0.x , (int) p0.y , (int) p1.x,(int) p1.y );
+	}
+
+	/**
+	 * Stores the screen area a bone (including the gripper parts attached to it) gets drawn to.
+	 */
+	public void getBoneViewBounds(WorldSnapshot snapshot,int boneIdx,Rectangle result)
+	{
+		beginBounds();
+
+		getBoneBoundingBox( snapshot , boneIdx , tmpBox );
+		includeModelBox( tmpBox );
+
+		final int lineOffset = boneIdx*WorldSnapshot.LINE_SIZE;
+		includeModelPoint( snapshot.boneLines[lineOffset] , snapshot.boneLines[lineOffset+1] , 0 );
+		includeModelPoint( snapshot.boneLines[lineOffset+2] , snapshot.boneLines[lineOffset+3] , 0 );
+
+		if ( snapshot.isGripper[boneIdx] )
+		{
+			final float[] transforms = snapshot.lerpGripperTransforms;
+			final int offset = boneIdx*WorldSnapshot.GRIPPER_PARTS*WorldSnapshot.TRANSFORM_SIZE;
+			final float clawLength = snapshot.gripperClawLengths[boneIdx];
+			includeGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_BASEPLATE*WorldSnapshot.TRANSFORM_SIZE ,
+					Constants.BASEPLATE_THICKNESS , snapshot.gripperBaseplateLengths[boneIdx] );
+			includeGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_UPPER_CLAW*WorldSnapshot.TRANSFORM_SIZE ,
+					clawLength , Constants.CLAW_THICKNESS );
+			includeGripperPart( transforms , offset + WorldSnapshot.GRIPPER_PART_LOWER_CLAW*WorldSnapshot.TRANSFORM_SIZE ,
+					clawLength , Constants.CLAW_THICKNESS );
+			includeModelPoint( snapshot.gripperPositioningEnd[boneIdx*2] , snapshot.gripperPositioningEnd[boneIdx*2+1] , CROSSHAIR_SIZE );
+		}
+		endBounds( result );
+	}
+
+	/**
+	 * Stores the screen area a joint gets drawn to.
+	 */
+	public void getJointViewBounds(WorldSnapshot snapshot,int jointIdx,Rectangle result)
+	{
+		beginBounds();
+		final Vector2 p = modelToView( getJointPosition( snapshot , jointIdx , tmp2 ) , tmp2 );
+		includeViewPoint( p.x , p.y , Math.max( Constants.JOINT_RENDER_RADIUS*viewScaleX , CROSSHAIR_SIZE ) ,
+				Math.max( Constants.JOINT_RENDER_RADIUS*viewScaleY , CROSSHAIR_SIZE ) );
+		endBounds( result );
+	}
+
+	/**
+	 * Stores the screen area a ball gets drawn to.
+	 */
+	public void getBallViewBounds(WorldSnapshot snapshot,int ballIdx,Rectangle result)
+	{
+		beginBounds();
+		final float radius = snapshot.ballRadii[ballIdx];
+		final float x = viewTransform.toViewX( snapshot.lerpBallPositions[ballIdx*2] , snapshot.lerpBallPositions[ballIdx*2+1] );
+		final float y = viewTransform.toViewY( snapshot.lerpBallPositions[ballIdx*2] , snapshot.lerpBallPositions[ballIdx*2+1] );
+		includeViewPoint( x , y , Math.max( radius*viewScaleX , CROSSHAIR_SIZE ) , Math.max( radius*viewScaleY , CROSSHAIR_SIZE ) );
+		endBounds( result );
+	}
+
+	/**
+	 * Stores the screen area the debug chain gets drawn to, an empty rectangle if there is no debug chain.
+	 */
+	public void getDebugChainViewBounds(WorldSnapshot snapshot,Rectangle result)
+	{
+		if ( ! snapshot.hasDebugChain )
+		{
+			result.setBounds( 0 , 0 , 0 , 0 );
+			return;
+		}
+		beginBounds();
+		final float[] lines = snapshot.debugBoneLines;
+		for ( int i = 0 ; i < snapshot.debugBoneCount*WorldSnapshot.LINE_SIZE ; i+=2 ) {
+			includeModelPoint( lines[i] , lines[i+1] , 0 );
+		}
+		includeModelPoint( snapshot.debugEndX , snapshot.debugEndY , CROSSHAIR_SIZE );
+		endBounds( result );
+	}
+
+	private void beginBounds()
+	{
+		boundsMinX = boundsMinY = Float.POSITIVE_INFINITY;
+		boundsMaxX = boundsMaxY = Float.NEGATIVE_INFINITY;
+	}
+
+	private void includeGripperPart(float[] transforms,int offset,float xExtent,float yExtent)
+	{
+		tmpBox.set( tmpCenter.set( transforms[offset] , transforms[offset+1] ) , xExtent , yExtent , radToDeg( transforms[offset+2] ) );
+		includeModelBox( tmpBox );
+	}
+
+	private void includeModelBox(Box box)
+	{
+		includeModelPoint( box.p0.x , box.p0.y , 0 );
+		includeModelPoint( box.p1.x , box.p1.y , 0 );
+		includeModelPoint( box.p2.x , box.p2.y , 0 );
+		includeModelPoint( box.p3.x , box.p3.y , 0 );
+	}
+
+	private void includeModelPoint(float x,float y,float viewRadius)
+	{
+		includeViewPoint( viewTransform.toViewX( x , y ) , viewTransform.toViewY( x , y ) , viewRadius , viewRadius );
+	}
+
+	private void includeViewPoint(float x,float y,float radiusX,float radiusY)
+	{
+		boundsMinX = Math.min( boundsMinX , x - radiusX );
+		boundsMinY = Math.min( boundsMinY , y - radiusY );
+		boundsMaxX = Math.max( boundsMaxX , x + radiusX );
+		boundsMaxY = Math.max( boundsMaxY , y + radiusY );
+	}
+
+	private void endBounds(Rectangle result)
+	{
+		final int x0 = (int) Math.floor( boundsMinX ) - BOUNDS_PADDING;
+		final int y0 = (int) Math.floor( boundsMinY ) - BOUNDS_PADDING;
+		final int x1 = (int) Math.ceil( boundsMaxX ) + BOUNDS_PADDING;
+		final int y1 = (int) Math.ceil( boundsMaxY ) + BOUNDS_PADDING;
+		result.setBounds( x0 , y0 , x1 - x0 , y1 - y0 );
+	}
+
+	public Vector2 viewToModel(int x,int y,Vector2 result)
+	{
+		return viewTransform.viewToModel( x , y , result );
+	}
+
+	public void modelToView(Box box)
+	{
+		modelToView( box.p0 , box.p0 );
+		modelToView( box.p1 , box.p1 );
+		modelToView( box.p2 , box.p2 );
+		modelToView( box.p3 , box.p3 );
+	}
+
+	public Vector2 modelToView(Vector2 modelVector,Vector2 viewVector)
+	{
+		return viewTransform.modelToView( modelVector , viewVector );
+	}
+}
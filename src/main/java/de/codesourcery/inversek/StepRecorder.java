@@ -0,0 +1,238 @@
+package de.codesourcery.inversek;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records the cached physics state after each batch of physics steps into a
+ * preallocated off-heap ring buffer, once the buffer is full the oldest records get overwritten.
+ *
+ * Every record holds all registered body transforms, revolute joint angles, prismatic joint
+ * (gripper) translations, ball positions and events (solver outcomes etc.) that happened since
+ * the previous record. Records are made up of 4-byte values only, so with a power-of-two
+ * capacity no value ever straddles the end of the buffer.
+ *
+ * Record layout (all values are big-endian):
+ * <pre>
+ * int   record length in bytes
+ * int   step count (low 32 bits)
+ * int   step count (high 32 bits)
+ * int   body count
+ * int   revolute joint count
+ * int   prismatic joint count
+ * int   ball count
+ * int   event count
+ * float body transforms (x,y,angle) * body count
+ * float revolute joint angles * revolute joint count
+ * float prismatic joint translations * prismatic joint count
+ * float ball positions (x,y) * ball count
+ * int/float event type and value * event count
+ * </pre>
+ *
+ * {@link #flush(Path)} writes all records currently held by the buffer to a file, prefixed by
+ * {@link #MAGIC} , {@link #VERSION} and the number of data bytes following.
+ */
+public final class StepRecorder
+{
+	public static final int MAGIC = 0x494b5243; // 'IKRC'
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER_SIZE = 4*4;
+	public static final int RECORD_HEADER_SIZE = 8*4;
+
+	public static enum Event
+	{
+		SOLVER_SUCCESS(1),
+		SOLVER_FAILURE(2),
+		SIMULATION_REJECTED(3),
+		EMERGENCY_STOP(4),
+		GRIPPER_MOVE(5);
+
+		public final int code;
+
+		private Event(int code) {
+			this.code = code;
+		}
+
+		public static Event fromCode(int code)
+		{
+			for ( Event e : values() ) {
+				if ( e.code == code ) {
+					return e;
+				}
+			}
+			throw new IllegalArgumentException("Unknown event code "+code);
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int mask;
+
+	// positions are counted in bytes since recording started
+	private long writePos;
+	private long oldestPos;
+
+	private int[] eventTypes = new int[16];
+	private float[] eventValues = new float[16];
+	private int eventCount;
+
+	private long recordCount;
+	private long droppedRecords;
+
+	/**
+	 * @param capacity buffer size in bytes, gets rounded up to the next power of two
+	 */
+	public StepRecorder(int capacity)
+	{
+		if ( capacity < 1024 ) {
+			throw new IllegalArgumentException("Capacity must be >= 1024 bytes");
+		}
+		final int size = Integer.highestOneBit( capacity-1 ) << 1;
+		buffer = ByteBuffer.allocateDirect( size ).order( ByteOrder.BIG_ENDIAN );
+		mask = size-1;
+	}
+
+	/**
+	 * Queues an event to be stored with the next record.
+	 */
+	public void recordEvent(Event event,float value)
+	{
+		if ( eventCount == eventTypes.length )
+		{
+			eventTypes = Arrays.copyOf( eventTypes , eventCount*2 );
+			eventValues = Arrays.copyOf( eventValues , eventCount*2 );
+		}
+		eventTypes[eventCount] = event.code;
+		eventValues[eventCount] = value;
+		eventCount++;
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @return <code>false</code> if the record is larger than the whole buffer and was dropped
+	 */
+	public boolean record(long stepCount,PhysicsState state)
+	{
+		final int bodyCount = state.getBodyCount();
+		final int revoluteCount = state.getRevoluteJointCount();
+		final int prismaticCount = state.getPrismaticJointCount();
+		final int ballCount = state.getBallCount();
+
+		final int length = RECORD_HEADER_SIZE + 4*( bodyCount*3 + revoluteCount + prismaticCount + ballCount*2 + eventCount*2 );
+		if ( length > buffer.capacity() )
+		{
+			droppedRecords++;
+			eventCount = 0;
+			return false;
+		}
+
+		// make room by discarding the oldest records
+		while ( writePos + length - oldestPos > buffer.capacity() ) {
+			oldestPos += buffer.getInt( (int) (oldestPos & mask) );
+		}
+
+		long pos = writePos;
+		pos = putInt( pos , length );
+		pos = putInt( pos , (int) stepCount );
+		pos = putInt( pos , (int) (stepCount >>> 32) );
+		pos = putInt( pos , bodyCount );
+		pos = putInt( pos , revoluteCount );
+		pos = putInt( pos , prismaticCount );
+		pos = putInt( pos , ballCount );
+		pos = putInt( pos , eventCount );
+		pos = putFloats( pos , state.getTransforms() , bodyCount*3 );
+		pos = putFloats( pos , state.getJointAngles() , revoluteCount );
+		pos = putFloats( pos , state.getJointTranslations() , prismaticCount );
+		pos = putFloats( pos , state.getBallPositions() , ballCount*2 );
+		for ( int i = 0 ; i < eventCount ; i++ )
+		{
+			pos = putInt( pos , eventTypes[i] );
+			pos = putFloat( pos , eventValues[i] );
+		}
+		writePos = pos;
+		eventCount = 0;
+		recordCount++;
+		return true;
+	}
+
+	private long putInt(long pos,int value)
+	{
+		buffer.putInt( (int) (pos & mask) , value );
+		return pos+4;
+	}
+
+	private long putFloat(long pos,float value)
+	{
+		buffer.putFloat( (int) (pos & mask) , value );
+		return pos+4;
+	}
+
+	private long putFloats(long pos,float[] values,int count)
+	{
+		for ( int i = 0 ; i < count ; i++ ) {
+			buffer.putFloat( (int) ((pos+i*4) & mask) , values[i] );
+		}
+		return pos + count*4;
+	}
+
+	/**
+	 * Writes all records currently held in the buffer to a memory-mapped file.
+	 */
+	public void flush(Path file) throws IOException
+	{
+		final int dataLength = (int) (writePos - oldestPos);
+		try ( FileChannel channel = FileChannel.open( file , StandardOpenOption.CREATE , StandardOpenOption.TRUNCATE_EXISTING ,
+				StandardOpenOption.READ , StandardOpenOption.WRITE ) )
+		{
+			final MappedByteBuffer out = channel.map( FileChannel.MapMode.READ_WRITE , 0 , FILE_HEADER_SIZE + dataLength );
+			out.order( ByteOrder.BIG_ENDIAN );
+			out.putInt( MAGIC );
+			out.putInt( VERSION );
+			out.putInt( dataLength );
+			out.putInt( 0 ); // reserved
+
+			// copy the (up to two) contiguous regions of the ring buffer
+			final int start = (int) (oldestPos & mask);
+			final int firstChunk = Math.min( dataLength , buffer.capacity() - start );
+			final ByteBuffer src = buffer.duplicate();
+			src.limit( start + firstChunk ).position( start );
+			out.put( src );
+			if ( firstChunk < dataLength )
+			{
+				src.limit( dataLength - firstChunk ).position( 0 );
+				out.put( src );
+			}
+			out.force();
+		}
+	}
+
+	public void clear()
+	{
+		writePos = oldestPos = 0;
+		eventCount = 0;
+	}
+
+	/**
+	 * Returns the number of records written since recording started (including overwritten ones).
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	public long getDroppedRecords() {
+		return droppedRecords;
+	}
+
+	/**
+	 * Returns the number of bytes currently held in the buffer.
+	 */
+	public int getSize() {
+		return (int) (writePos - oldestPos);
+	}
+}
@@ -0,0 +1,165 @@
+package de.codesourcery.inversek;
+
+/**
+ * Decides how many physics steps to run per tick and how many solver iterations to use per step.
+ *
+ * Quiet scenes (at most {@link #QUIET_MAX_MOVING_FRACTION} of the bodies moved during the last step,
+ * i.e. most of them are resting or asleep) get stepped with fewer iterations, while balls touching the gripper get more iterations
+ * so grabbed balls don't jitter or slip. The number of steps per tick is capped
+ * both by a fixed max. and by a time budget, simulation time that does not fit is dropped
+ * instead of being carried over (which would only make the next tick even slower).
+ */
+public final class SteppingPolicy
+{
+	public static final int QUIET_VELOCITY_ITERATIONS = 4;
+	public static final int QUIET_POSITION_ITERATIONS = 2;
+
+	public static final int CONTACT_VELOCITY_ITERATIONS = 12;
+	public static final int CONTACT_POSITION_ITERATIONS = 6;
+
+	// max. fraction of bodies that may move for a batch to count as quiet
+	public static final float QUIET_MAX_MOVING_FRACTION = 0.1f;
+
+	// number of consecutive quiet batches before switching to fewer iterations
+	private static final int QUIET_BATCHES_REQUIRED = 30;
+
+	public static enum Mode { QUIET , NORMAL , CONTACT }
+
+	private boolean adaptive = true;
+	private int maxStepsPerTick = 5;
+	private long budgetNanos = 10_000_000; // 10 ms
+
+	private Mode mode = Mode.NORMAL;
+	private int quietBatches;
+
+	// average duration of a step during the most recent batch
+	private long averageStepNanos;
+
+	private int velocityIterations = Constants.VELOCITY_ITERATIONS;
+	private int positionIterations = Constants.POSITION_ITERATIONS;
+
+	/**
+	 * Returns the number of steps to run for the given amount of simulation time.
+	 */
+	public int getStepsToRun(float accumulatorSeconds)
+	{
+		final int steps = (int) (accumulatorSeconds / Constants.PHYSICS_TIMESTEP);
+		return Math.min( steps , maxStepsPerTick );
+	}
+
+	/**
+	 * Returns whether the step about to be run has to be the last one of the current tick.
+	 *
+	 * The step itself is always run, so every tick makes progress. This gets decided before running
+	 * the step so the caller can save the state needed for interpolation right before the actual last step.
+	 *
+	 * @param stepsSoFar steps run during the current tick
+	 * @param nanosSoFar time spent stepping during the current tick
+	 */
+	public boolean isLastStep(int stepsSoFar,long nanosSoFar)
+	{
+		// assume steps take as long as the average step so far (or during the previous tick)
+		final long estimate = stepsSoFar > 0 ? nanosSoFar/stepsSoFar : averageStepNanos;
+		return nanosSoFar + 2*estimate > budgetNanos;
+	}
+
+	/**
+	 * Remembers how long the steps of the current tick took.
+	 */
+	public void batchCompleted(int steps,long nanos)
+	{
+		if ( steps > 0 ) {
+			averageStepNanos = nanos / steps;
+		}
+	}
+
+	/**
+	 * Updates the solver iterations after a batch of steps.
+	 *
+	 * @param movingBodies number of bodies that moved during the most recent step
+	 * @param bodyCount total number of bodies
+	 * @param gripperContacts number of contacts between balls and the gripper
+	 */
+	public void update(int movingBodies,int bodyCount,int gripperContacts)
+	{
+		if ( ! adaptive ) {
+			return;
+		}
+		if ( gripperContacts > 0 )
+		{
+			quietBatches = 0;
+			setMode( Mode.CONTACT );
+		}
+		else if ( movingBodies <= bodyCount * QUIET_MAX_MOVING_FRACTION )
+		{
+			if ( ++quietBatches >= QUIET_BATCHES_REQUIRED ) {
+				setMode( Mode.QUIET );
+			}
+		}
+		else
+		{
+			quietBatches = 0;
+			setMode( Mode.NORMAL );
+		}
+	}
+
+	private void setMode(Mode mode)
+	{
+		this.mode = mode;
+		switch( mode )
+		{
+			case QUIET:
+				velocityIterations = QUIET_VELOCITY_ITERATIONS;
+				positionIterations = QUIET_POSITION_ITERATIONS;
+				break;
+			case CONTACT:
+				velocityIterations = CONTACT_VELOCITY_ITERATIONS;
+				positionIterations = CONTACT_POSITION_ITERATIONS;
+				break;
+			default:
+				velocityIterations = Constants.VELOCITY_ITERATIONS;
+				positionIterations = Constants.POSITION_ITERATIONS;
+		}
+	}
+
+	public void setAdaptive(boolean adaptive)
+	{
+		this.adaptive = adaptive;
+		if ( ! adaptive )
+		{
+			quietBatches = 0;
+			setMode( Mode.NORMAL );
+		}
+	}
+
+	public void setMaxStepsPerTick(int maxStepsPerTick)
+	{
+		if ( maxStepsPerTick < 1 ) {
+			throw new IllegalArgumentException("Max. steps per tick must be >= 1");
+		}
+		this.maxStepsPerTick = maxStepsPerTick;
+	}
+
+	/**
+	 * Sets the max. time to spend stepping the world per tick.
+	 */
+	public void setBudgetNanos(long budgetNanos)
+	{
+		if ( budgetNanos <= 0 ) {
+			throw new IllegalArgumentException("Budget must be > 0");
+		}
+		this.budgetNanos = budgetNanos;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getVelocityIterations() {
+		return velocityIterations;
+	}
+
+	public int getPositionIterations() {
+		return positionIterations;
+	}
+}
@@ -0,0 +1,126 @@
+package de.codesourcery.inversek;
+
+import java.util.List;
+import java.util.Random;
+
+import com.badlogic.gdx.physics.box2d.Box2D;
+
+import de.codesourcery.inversek.WorldModel.Ball;
+
+/**
+ * Headless stress test that keeps spawning and retiring balls while
+ * reporting how long <code>world.step()</code> takes.
+ *
+ * Usage: <code>StressScenario [target ball count] [steps] [balls per step]</code>
+ */
+public class StressScenario
+{
+	private static final int REPORT_INTERVAL = 60; // steps
+
+	private final int targetBallCount;
+	private final int steps;
+	private final int spawnPerStep;
+
+	private final Random rnd = new Random(0xdeadbeef);
+
+	private float[] spawnPositions = new float[0];
+
+	public static void main(String[] args)
+	{
+		final int target = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+		final int steps = args.length > 1 ? Integer.parseInt( args[1] ) : 3000;
+		final int perStep = args.length > 2 ? Integer.parseInt( args[2] ) : 200;
+		new StressScenario( target , steps , perStep ).run();
+	}
+
+	public StressScenario(int targetBallCount,int steps,int spawnPerStep)
+	{
+		if ( targetBallCount < 1 || steps < 1 || spawnPerStep < 1 ) {
+			throw new IllegalArgumentException("Ball count, steps and spawn rate must be >= 1");
+		}
+		this.targetBallCount = targetBallCount;
+		this.steps = steps;
+		this.spawnPerStep = spawnPerStep;
+	}
+
+	public void run()
+	{
+		Box2D.init();
+
+		final WorldModel model = new WorldModel();
+
+		long windowNanos = 0;
+		long windowMaxNanos = 0;
+		long windowContacts = 0;
+
+		long totalNanos = 0;
+		long maxNanos = 0;
+		long spawned = 0;
+		long retired = 0;
+
+		System.out.println("Stress test: "+targetBallCount+" balls, "+steps+" steps, spawning up to "+spawnPerStep+" balls per step");
+		System.out.println("step;bodies;contacts(avg);step time avg (ms);step time max (ms);stepping mode");
+
+		for ( int step = 1 ; step <= steps ; step++ )
+		{
+			final List<Ball> balls = model.getBalls();
+
+			// once we reached the target, randomly retire balls to make room for new ones
+			if ( balls.size() >= targetBallCount )
+			{
+				for ( int i = 0 ; i < spawnPerStep && ! balls.isEmpty() ; i++ )
+				{
+					model.destroyBall( balls.get( rnd.nextInt( balls.size() ) ) );
+					retired++;
+				}
+			}
+
+			final int toSpawn = Math.min( spawnPerStep , targetBallCount - balls.size() );
+			if ( toSpawn > 0 )
+			{
+				model.addBalls( randomPositions( toSpawn ) , toSpawn );
+				spawned += toSpawn;
+			}
+
+			model.tick( Constants.PHYSICS_TIMESTEP );
+
+			final long nanos = model.getLastStepNanos();
+			windowNanos += nanos;
+			windowMaxNanos = Math.max( windowMaxNanos , nanos );
+			windowContacts += model.getContactCount();
+			totalNanos += nanos;
+			maxNanos = Math.max( maxNanos , nanos );
+
+			if ( ( step % REPORT_INTERVAL ) == 0 )
+			{
+				System.out.println( step+";"+model.getBodyCount()+";"+(windowContacts/REPORT_INTERVAL)+";"+
+						toMillis( windowNanos/REPORT_INTERVAL )+";"+toMillis( windowMaxNanos )+";"+model.getSteppingPolicy().getMode() );
+				windowNanos = 0;
+				windowMaxNanos = 0;
+				windowContacts = 0;
+			}
+		}
+
+		System.out.println("Balls spawned: "+spawned+", retired: "+retired+", alive: "+model.getBalls().size() );
+		System.out.println("Step time avg: "+toMillis( totalNanos / steps )+" ms , max: "+toMillis( maxNanos )+" ms , dropped steps: "+model.getDroppedSteps() );
+
+		model.dispose();
+	}
+
+	private float[] randomPositions(int count)
+	{
+		if ( spawnPositions.length < count*2 ) {
+			spawnPositions = new float[ count*2 ];
+		}
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			spawnPositions[i*2] = -45f + rnd.nextFloat()*90f;
+			spawnPositions[i*2+1] = 0.5f + rnd.nextFloat()*10f;
+		}
+		return spawnPositions;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format("%.3f" , nanos / 1_000_000d );
+	}
+}
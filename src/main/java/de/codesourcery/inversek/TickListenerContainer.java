@@ -1,53 +1,257 @@
 package de.codesourcery.inversek;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import java.util.Arrays;
 
+/**
+ * Ticks a list of listeners, removing those that return <code>false</code>.
+ *
+ * Listeners may be added or removed while a tick is in progress. Listeners added during a tick
+ * get ticked for the first time during the next tick, listeners removed during a tick
+ * are not ticked anymore. Dispatching does not allocate any memory.
+ *
+ * If profiling is enabled, the time each listener spent in {@link ITickListener#tick(float)} is recorded.
+ * With a {@link Profiler} attached, timings also go into a profiler section named after the listener's class.
+ */
 public class TickListenerContainer implements ITickListener
 {
-	private List<ITickListener> listeners = new ArrayList<>();
-	private final List<ITickListener> toRemove = new ArrayList<>();
-	
-	public void add(ITickListener l) 
+	private ITickListener[] listeners = new ITickListener[4];
+	private long[] lastNanos = new long[4];
+	private long[] totalNanos = new long[4];
+	private Profiler.Section[] sections = new Profiler.Section[4];
+	private int size;
+
+	// listeners added while ticking
+	private ITickListener[] pendingAdd = new ITickListener[4];
+	private int pendingAddCount;
+
+	// number of slots set to NULL while ticking
+	private int removedCount;
+
+	private boolean ticking;
+	private boolean profiling;
+	private Profiler profiler;
+
+	public void add(ITickListener l)
 	{
 		if (l == null) {
 			throw new IllegalArgumentException("l must not be NULL");
 		}
-		listeners.add( l );
+		if ( ticking )
+		{
+			if ( pendingAddCount == pendingAdd.length ) {
+				pendingAdd = Arrays.copyOf( pendingAdd , pendingAddCount*2 );
+			}
+			pendingAdd[ pendingAddCount++ ] = l;
+		} else {
+			append( l );
+		}
 	}
-	
-	public void removeAll() 
+
+	private void append(ITickListener l)
 	{
-		listeners.clear();
+		if ( size == listeners.length )
+		{
+			listeners = Arrays.copyOf( listeners , size*2 );
+			lastNanos = Arrays.copyOf( lastNanos , size*2 );
+			totalNanos = Arrays.copyOf( totalNanos , size*2 );
+			sections = Arrays.copyOf( sections , size*2 );
+		}
+		listeners[ size ] = l;
+		lastNanos[ size ] = 0;
+		totalNanos[ size ] = 0;
+		sections[ size ] = sectionFor( l );
+		size++;
 	}
-	
-	public boolean isEmpty() 
+
+	public void removeAll()
 	{
-		return listeners.isEmpty();
+		Arrays.fill( pendingAdd , 0 , pendingAddCount , null );
+		pendingAddCount = 0;
+		if ( ticking )
+		{
+			for ( int i = 0 ; i < size ; i++ ) {
+				removeAt( i );
+			}
+		}
+		else
+		{
+			Arrays.fill( listeners , 0 , size , null );
+			Arrays.fill( sections , 0 , size , null );
+			size = 0;
+		}
 	}
-	
-	public void remove(ITickListener l ) 
+
+	public boolean isEmpty()
+	{
+		return size - removedCount + pendingAddCount == 0;
+	}
+
+	public void remove(ITickListener l )
+	{
+		for ( int i = 0 ; i < pendingAddCount ; i++ )
+		{
+			if ( pendingAdd[i] == l )
+			{
+				System.arraycopy( pendingAdd , i+1 , pendingAdd , i , pendingAddCount - i - 1 );
+				pendingAdd[ --pendingAddCount ] = null;
+				return;
+			}
+		}
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			if ( listeners[i] == l )
+			{
+				removeAt( i );
+				if ( ! ticking ) {
+					compact();
+				}
+				return;
+			}
+		}
+	}
+
+	private void removeAt(int index)
 	{
-		listeners.remove( l );
+		if ( listeners[index] != null )
+		{
+			listeners[index] = null;
+			removedCount++;
+		}
 	}
-	
+
+	/**
+	 * Drops all slots of removed listeners and appends listeners added while ticking.
+	 */
+	private void compact()
+	{
+		if ( removedCount > 0 )
+		{
+			int dst = 0;
+			for ( int src = 0 ; src < size ; src++ )
+			{
+				if ( listeners[src] != null )
+				{
+					listeners[dst] = listeners[src];
+					lastNanos[dst] = lastNanos[src];
+					totalNanos[dst] = totalNanos[src];
+					sections[dst] = sections[src];
+					dst++;
+				}
+			}
+			Arrays.fill( listeners , dst , size , null );
+			Arrays.fill( sections , dst , size , null );
+			size = dst;
+			removedCount = 0;
+		}
+		for ( int i = 0 ; i < pendingAddCount ; i++ )
+		{
+			append( pendingAdd[i] );
+			pendingAdd[i] = null;
+		}
+		pendingAddCount = 0;
+	}
+
+	@Override
 	public boolean tick(float deltaSeconds) {
-		
-		final List<ITickListener> copy = new ArrayList<>(listeners);
 
-		for ( ITickListener l : copy ) 
+		if ( ticking ) {
+			throw new IllegalStateException("tick() must not be called recursively");
+		}
+		ticking = true;
+		try
 		{
-			if ( ! l.tick( deltaSeconds ) ) {
-				toRemove.add( l );
+			// size may not change while ticking, listeners added in the meantime are pending
+			for ( int i = 0 ; i < size ; i++ )
+			{
+				final ITickListener l = listeners[i];
+				if ( l == null ) {
+					continue;
+				}
+				final boolean keep;
+				if ( profiling )
+				{
+					final long start = System.nanoTime();
+					keep = l.tick( deltaSeconds );
+					final long elapsed = System.nanoTime() - start;
+					lastNanos[i] = elapsed;
+					totalNanos[i] += elapsed;
+					if ( sections[i] != null ) {
+						sections[i].record( elapsed );
+					}
+				} else {
+					keep = l.tick( deltaSeconds );
+				}
+				if ( ! keep ) {
+					removeAt( i );
+				}
 			}
 		}
-		
-		if ( ! toRemove.isEmpty() ) 
+		finally
 		{
-			this.listeners.removeAll(toRemove);
-			toRemove.clear();
+			ticking = false;
+			compact();
 		}
 		return true;
 	}
+
+	/**
+	 * Enables/disables recording the time spent in each listener.
+	 */
+	public void setProfiling(boolean profiling) {
+		this.profiling = profiling;
+	}
+
+	/**
+	 * Attaches a profiler that receives the time spent in each listener, implicitly enables profiling.
+	 *
+	 * @param profiler profiler or <code>null</code>
+	 */
+	public void setProfiler(Profiler profiler)
+	{
+		this.profiler = profiler;
+		if ( profiler != null ) {
+			this.profiling = true;
+		}
+		for ( int i = 0 ; i < size ; i++ ) {
+			sections[i] = sectionFor( listeners[i] );
+		}
+	}
+
+	private Profiler.Section sectionFor(ITickListener l)
+	{
+		return profiler == null || l == null ? null : profiler.getSection( l.getClass().getSimpleName() );
+	}
+
+	public boolean isProfiling() {
+		return profiling;
+	}
+
+	public void resetProfile()
+	{
+		Arrays.fill( lastNanos , 0 );
+		Arrays.fill( totalNanos , 0 );
+	}
+
+	public int getListenerCount() {
+		return size - removedCount;
+	}
+
+	public ITickListener getListener(int index) {
+		return listeners[index];
+	}
+
+	/**
+	 * Returns the time the listener at the given index spent during the most recent tick.
+	 */
+	public long getLastNanos(int index) {
+		return lastNanos[index];
+	}
+
+	/**
+	 * Returns the time the listener at the given index spent ticking since it was added
+	 * or {@link #resetProfile()} was called.
+	 */
+	public long getTotalNanos(int index) {
+		return totalNanos[index];
+	}
 }
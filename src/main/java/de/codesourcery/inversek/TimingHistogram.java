@@ -0,0 +1,174 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with a bounded relative error.
+ *
+ * Values are put into power-of-two ranges that are each split into {@link #SUB_BUCKETS} linear buckets,
+ * so percentiles are accurate to within 1/{@value #SUB_BUCKETS} of the value.
+ * If created with a window size, only the most recent samples are kept (older samples
+ * get evicted as new ones are added), otherwise all samples are counted.
+ *
+ * Recording never allocates memory. Not thread-safe.
+ */
+public final class TimingHistogram
+{
+	public static final int SUB_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 3;
+
+	// enough for values up to 2^40 ns (~18 minutes), larger values end up in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final int[] counts = new int[ BUCKET_COUNT ];
+
+	// ring buffer of the most recent samples, NULL if all samples are kept
+	private final long[] window;
+	private int windowPtr;
+
+	private long count;
+	private long sum;
+	private long max;
+
+	/**
+	 * Creates a histogram that counts all samples.
+	 */
+	public TimingHistogram() {
+		this.window = null;
+	}
+
+	/**
+	 * Creates a histogram that only keeps the given number of most recent samples.
+	 */
+	public TimingHistogram(int windowSize)
+	{
+		if ( windowSize < 1 ) {
+			throw new IllegalArgumentException("Window size must be >= 1");
+		}
+		this.window = new long[ windowSize ];
+	}
+
+	private static int bucketIndex(long nanos)
+	{
+		if ( nanos < SUB_BUCKETS ) {
+			return (int) Math.max( 0 , nanos );
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros( nanos );
+		if ( exponent > MAX_EXPONENT ) {
+			return BUCKET_COUNT-1;
+		}
+		final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the largest value that ends up in the given bucket.
+	 */
+	private static long bucketUpperBound(int index)
+	{
+		if ( index < SUB_BUCKETS ) {
+			return index;
+		}
+		final int exponent = index / SUB_BUCKETS - 1 + SUB_BUCKET_BITS;
+		final long subBucket = index % SUB_BUCKETS;
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket+1) * width - 1;
+	}
+
+	public void record(long nanos)
+	{
+		if ( window != null )
+		{
+			if ( count == window.length )
+			{
+				final long evicted = window[ windowPtr ];
+				counts[ bucketIndex( evicted ) ]--;
+				sum -= evicted;
+				count--;
+				if ( evicted == max ) {
+					max = -1; // recalculated lazily
+				}
+			}
+			window[ windowPtr ] = nanos;
+			windowPtr = (windowPtr+1) % window.length;
+		}
+		counts[ bucketIndex( nanos ) ]++;
+		sum += nanos;
+		count++;
+		if ( max != -1 && nanos > max ) {
+			max = nanos;
+		}
+	}
+
+	/**
+	 * Returns the value below or at which the given percentage of samples fall.
+	 *
+	 * @param percentile percentile (0...100)
+	 */
+	public long getPercentile(double percentile)
+	{
+		if ( count == 0 ) {
+			return 0;
+		}
+		final long rank = Math.max( 1 , (long) Math.ceil( count * percentile / 100d ) );
+		long seen = 0;
+		for ( int i = 0 ; i < BUCKET_COUNT ; i++ )
+		{
+			seen += counts[i];
+			if ( seen >= rank ) {
+				return Math.min( bucketUpperBound( i ) , getMax() );
+			}
+		}
+		return getMax();
+	}
+
+	public long getMax()
+	{
+		if ( max == -1 )
+		{
+			max = 0;
+			for ( int i = 0 ; i < count ; i++ ) {
+				max = Math.max( max , window[i] );
+			}
+		}
+		return max;
+	}
+
+	public long getMean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the number of samples currently held.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of samples currently held that are larger than the given value
+	 * (at bucket resolution).
+	 */
+	public long getCountAbove(long nanos)
+	{
+		final int first = bucketIndex( nanos )+1;
+		long result = 0;
+		for ( int i = first ; i < BUCKET_COUNT ; i++ ) {
+			result += counts[i];
+		}
+		return result;
+	}
+
+	public void reset()
+	{
+		Arrays.fill( counts , 0 );
+		if ( window != null ) {
+			Arrays.fill( window , 0 );
+		}
+		windowPtr = 0;
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+}
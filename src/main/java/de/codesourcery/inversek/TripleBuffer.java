@@ -0,0 +1,80 @@
+package de.codesourcery.inversek;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free triple buffer for handing data from exactly one producer thread
+ * to exactly one consumer thread.
+ *
+ * The producer always owns one buffer it can write to, the consumer always owns
+ * one buffer it can read from and the third buffer is exchanged between the two
+ * using a single atomic swap. Neither side ever blocks and the consumer
+ * never sees a buffer that is still being written to.
+ */
+public final class TripleBuffer<T>
+{
+	private static final int INDEX_MASK = 0x03;
+	private static final int FRESH_FLAG = 0x04;
+
+	private final Object[] buffers = new Object[3];
+
+	// index of the buffer currently not owned by either side + FRESH_FLAG if it
+	// holds data the consumer has not seen yet
+	private final AtomicInteger shared = new AtomicInteger( 1 );
+
+	private int writeIdx = 0; // only accessed by producer
+	private int readIdx = 2; // only accessed by consumer
+
+	public TripleBuffer(Supplier<T> factory)
+	{
+		if (factory == null) {
+			throw new IllegalArgumentException("factory must not be NULL");
+		}
+		for ( int i = 0 ; i < buffers.length ; i++ ) {
+			buffers[i] = factory.get();
+		}
+	}
+
+	/**
+	 * Returns the buffer the producer may currently write to.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getWriteBuffer() {
+		return (T) buffers[ writeIdx ];
+	}
+
+	/**
+	 * Publishes the current write buffer to the consumer and
+	 * hands a new write buffer to the producer.
+	 */
+	public void publish()
+	{
+		final int previous = shared.getAndSet( writeIdx | FRESH_FLAG );
+		writeIdx = previous & INDEX_MASK;
+	}
+
+	/**
+	 * Returns whether the producer published a buffer since the last call to {@link #getReadBuffer()}.
+	 */
+	public boolean hasUpdate() {
+		return ( shared.get() & FRESH_FLAG ) != 0;
+	}
+
+	/**
+	 * Returns the most recently published buffer.
+	 *
+	 * The returned buffer stays owned by the consumer until the next
+	 * invocation of this method.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getReadBuffer()
+	{
+		if ( hasUpdate() )
+		{
+			final int previous = shared.getAndSet( readIdx );
+			readIdx = previous & INDEX_MASK;
+		}
+		return (T) buffers[ readIdx ];
+	}
+}
@@ -0,0 +1,113 @@
+package de.codesourcery.inversek;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * 2D affine transformation between model and view (screen) coordinates, derived from an {@link OrthographicCamera}.
+ *
+ * Gives the same results as <code>camera.project()</code> / <code>camera.unproject()</code> (with
+ * the view Y axis pointing down) but only needs four multiplications per point and never allocates.
+ */
+public final class ViewTransform
+{
+	// view = | m00 m01 | * model + | m02 |
+	//        | m10 m11 |           | m12 |
+	private float m00,m01,m02;
+	private float m10,m11,m12;
+
+	// inverse transformation
+	private float i00,i01,i02;
+	private float i10,i11,i12;
+
+	/**
+	 * Updates this transformation from the camera's combined projection/view matrix,
+	 * needs to be called whenever the camera or viewport changes.
+	 */
+	public void set(OrthographicCamera camera,int viewportWidth,int viewportHeight)
+	{
+		final float[] m = camera.combined.val;
+		final float sx = viewportWidth / 2f;
+		final float sy = viewportHeight / 2f;
+
+		// orthographic projection never changes W so the perspective division can be skipped
+		m00 = sx * m[Matrix4.M00];
+		m01 = sx * m[Matrix4.M01];
+		m02 = sx * ( m[Matrix4.M03] + 1 );
+
+		m10 = sy * m[Matrix4.M10];
+		m11 = sy * m[Matrix4.M11];
+		m12 = sy * ( m[Matrix4.M13] + 1 ) + 1; // the renderer always offset view Y by one pixel
+
+		final float det = m00*m11 - m01*m10;
+		if ( det == 0 ) {
+			throw new IllegalArgumentException("Camera projection is not invertible");
+		}
+		i00 =  m11 / det;
+		i01 = -m01 / det;
+		i10 = -m10 / det;
+		i11 =  m00 / det;
+		i02 = -( i00*m02 + i01*m12 );
+		i12 = -( i10*m02 + i11*m12 );
+	}
+
+	public float toViewX(float modelX,float modelY) {
+		return m00*modelX + m01*modelY + m02;
+	}
+
+	public float toViewY(float modelX,float modelY) {
+		return m10*modelX + m11*modelY + m12;
+	}
+
+	public float toModelX(float viewX,float viewY) {
+		return i00*viewX + i01*viewY + i02;
+	}
+
+	public float toModelY(float viewX,float viewY) {
+		return i10*viewX + i11*viewY + i12;
+	}
+
+	public Vector2 modelToView(Vector2 model,Vector2 result)
+	{
+		final float x = model.x;
+		final float y = model.y;
+		return result.set( toViewX( x , y ) , toViewY( x , y ) );
+	}
+
+	public Vector2 viewToModel(float viewX,float viewY,Vector2 result) {
+		return result.set( toModelX( viewX , viewY ) , toModelY( viewX , viewY ) );
+	}
+
+	/**
+	 * Transforms a batch of (x,y) model coordinates into view coordinates.
+	 *
+	 * @param src model coordinates as (x,y) tuples
+	 * @param dst array to store view coordinates (x,y) in, may be the same as <code>src</code>
+	 * @param pointCount number of points to transform
+	 */
+	public void modelToView(float[] src,int srcOffset,float[] dst,int dstOffset,int pointCount)
+	{
+		for ( int i = 0 , s = srcOffset , d = dstOffset ; i < pointCount ; i++ , s += 2 , d += 2 )
+		{
+			final float x = src[s];
+			final float y = src[s+1];
+			dst[d] = m00*x + m01*y + m02;
+			dst[d+1] = m10*x + m11*y + m12;
+		}
+	}
+
+	/**
+	 * Returns the length in view coordinates of a unit vector along the model X axis.
+	 */
+	public float getScaleX() {
+		return (float) Math.sqrt( m00*m00 + m10*m10 );
+	}
+
+	/**
+	 * Returns the length in view coordinates of a unit vector along the model Y axis.
+	 */
+	public float getScaleY() {
+		return (float) Math.sqrt( m01*m01 + m11*m11 );
+	}
+}
@@ -20,6 +20,7 @@ import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.Manifold;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
 import com.badlogic.gdx.physics.box2d.Shape;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.physics.box2d.joints.PrismaticJoint;
@@ -32,10 +33,106 @@ public class WorldModel implements ITickListener , IMathSupport
 {
 	private final World world;
 	private float accumulator = 0;
+	private long stepCount;
+	
+	private final PhysicsState physicsState = new PhysicsState();
+	private long lastRefreshedStep;
+	
+	private final BallGrid ballGrid = new BallGrid( Constants.BALL_GRID_CELL_SIZE );
+	
+	private long lastStepNanos;
+	private int lastStepCount;
+	private long droppedSteps;
+	
+	private final SteppingPolicy steppingPolicy = new SteppingPolicy();
+	
+	private StepRecorder recorder;
+	
+	// bodies moving slower than Box2D's sleep tolerances are considered to be at rest
+	private static final float MOVING_MIN_DISTANCE = 0.01f * Constants.PHYSICS_TIMESTEP;
+	private static final float MOVING_MIN_ANGLE = (float) Math.toRadians( 2 ) * Constants.PHYSICS_TIMESTEP;
+	
+	// total number of contacts between balls and gripper parts
+	private int gripperContactCount;
+	
+	// re-used for spawning balls
+	private CircleShape ballShape;
+	private final BodyDef ballBodyDef = new BodyDef();
+	private final FixtureDef ballFixtureDef = new FixtureDef();
+	
+	// retirement of balls that left the world bounds
+	private static final float OUTSIDE_EXTENT = 10000f;
+	private boolean ballRetirementEnabled = true;
+	private float retireMinX = Constants.WORLD_MIN_X;
+	private float retireMinY = Constants.WORLD_MIN_Y;
+	private float retireMaxX = Constants.WORLD_MAX_X;
+	private float retireMaxY = Constants.WORLD_MAX_Y;
+	private int maxBallsRetiredPerStep = Constants.MAX_BALLS_RETIRED_PER_STEP;
+	private Ball[] retireCandidates = new Ball[ Constants.MAX_BALLS_RETIRED_PER_STEP ];
+	private int retireCandidateCount;
+	private long retiredBallCount;
+	
+	private final QueryCallback retirementQuery = fixture -> 
+	{
+		if ( ! ( fixture.getUserData() instanceof Ball ) ) {
+			return true;
+		}
+		final Ball ball = (Ball) fixture.getUserData();
+		if ( ball.retiring || isInsideRetirementBounds( fixture.getBody().getPosition() ) ) {
+			return true;
+		}
+		ball.retiring = true;
+		retireCandidates[ retireCandidateCount++ ] = ball;
+		return retireCandidateCount < maxBallsRetiredPerStep;
+	};
+	
+	private boolean touchesGripper;
+	
+	private final QueryCallback gripperQuery = fixture -> 
+	{
+		if ( isGripperPart( fixture ) ) 
+		{
+			touchesGripper = true;
+			return false;
+		}
+		return true;
+	};
+	
+	private final IContactCallback gripperContactTracker = new IContactCallback() 
+	{
+		@Override
+		public boolean beginContact(ContactEvent contact) 
+		{
+			updateGripperContacts( contact , 1 );
+			return true;
+		}
+		
+		@Override
+		public boolean endContact(ContactEvent contact) 
+		{
+			updateGripperContacts( contact , -1 );
+			return true;
+		}
+		
+		private void updateGripperContacts(ContactEvent contact,int delta) 
+		{
+			final Ball ball;
+			if ( contact.getFixtureUserDataA() instanceof Ball ) {
+				ball = (Ball) contact.getFixtureUserDataA();
+			} else if ( contact.getFixtureUserDataB() instanceof Ball ) {
+				ball = (Ball) contact.getFixtureUserDataB();
+			} else {
+				return;
+			}
+			final int newCount = Math.max( 0 , ball.gripperContacts + delta );
+			gripperContactCount += newCount - ball.gripperContacts;
+			ball.gripperContacts = newCount;
+		}
+	};
 
-	private final List<Ball> balls = new ArrayList<>(); 
+	private final ArrayList<Ball> balls = new ArrayList<>(); 
 	
-	private final List<IContactCallback> contactCallbacks = new ArrayList<>();
+	private final ContactDispatcher contactDispatcher = new ContactDispatcher();
 
 	protected static enum ItemType
 	{
@@ -45,16 +142,37 @@ public class WorldModel implements ITickListener , IMathSupport
 		BALL( (short) 8);
 
 		public final short bitMask;
+		
+		// precomputed ordinal, used as contact dispatch tag
+		public final int index;
 
 		private ItemType(short bitMask) {
 			this.bitMask = bitMask;
+			this.index = ordinal();
 		}
 	}
+	
+	/**
+	 * Returns the item type of a body created by this world model.
+	 */
+	public static ItemType getItemType(Body body) {
+		return (ItemType) body.getUserData();
+	}
 
 	public static final class Ball 
 	{
 		private Body body;
 		public final float radius;
+		
+		// index into WorldModel#balls and the ball positions in PhysicsState
+		private int index = -1;
+		private PhysicsState physicsState;
+		private final Vector2 position = new Vector2();
+		
+		// number of gripper parts currently touching this ball as tracked from contact events,
+		// only used for choosing solver iterations
+		private int gripperContacts;
+		private boolean retiring;
 
 		public Ball(float radius) {
 			this.radius = radius;
@@ -64,11 +182,24 @@ public class WorldModel implements ITickListener , IMathSupport
 			return body;
 		}
 		
+		public boolean isTouchedByGripper() {
+			return gripperContacts > 0;
+		}
+		
 		public void setBody(Body body) {
 			this.body = body;
 		}
 
-		public Vector2 getPosition() {
+		/**
+		 * Returns the position as of the last physics step.
+		 * 
+		 * Note that the returned vector is re-used by subsequent invocations of this method.
+		 */
+		public Vector2 getPosition() 
+		{
+			if ( physicsState != null ) {
+				return position.set( physicsState.getBallX( index ) , physicsState.getBallY( index ) );
+			}
 			return body.getPosition();
 		}
 		
@@ -95,37 +226,48 @@ public class WorldModel implements ITickListener , IMathSupport
 			@Override
 			public void endContact(Contact contact) 
 			{
-				for (Iterator<IContactCallback> it = contactCallbacks.iterator(); it.hasNext();) 
-				{
-					final IContactCallback cb = it.next();
-					if ( ! cb.endContact( contact ) ) {
-						it.remove();
-					}
-				}
+				contactDispatcher.record( contact , false );
 			}
 			
 			@Override
 			public void beginContact(Contact contact) 
 			{
-				for (Iterator<IContactCallback> it = contactCallbacks.iterator(); it.hasNext();) 
-				{
-					final IContactCallback cb = it.next();
-					if ( ! cb.beginContact( contact ) ) {
-						it.remove();
-					}
-				}				
+				contactDispatcher.record( contact , true );
 			}
 		});
 		
 		setupFloorPlane();
 	}
 	
+	/**
+	 * Registers a callback for all contacts.
+	 * 
+	 * Prefer subscribing to specific item types or bodies, this callback
+	 * will be invoked for every contact in the world.
+	 */
 	public void addContactCallback(IContactCallback cb) {
 		if (cb == null) {
 			throw new IllegalArgumentException("callback must not be NULL");
 		}
 		System.out.println("ADD CONTACT CB: "+cb);
-		contactCallbacks.add( cb );
+		contactDispatcher.subscribeAll( cb );
+	}
+	
+	/**
+	 * Registers a callback for all contacts involving any of the given bodies.
+	 */
+	public void addContactCallback(IContactCallback cb,Body body1,Body... moreBodies) 
+	{
+		if ( Main.DEBUG ) {
+			System.out.println("ADD CONTACT CB: "+cb+" for bodies");
+		}
+		contactDispatcher.subscribe( cb , body1 );
+		if ( moreBodies != null ) 
+		{
+			for ( Body body : moreBodies ) {
+				contactDispatcher.subscribe( cb , body );
+			}
+		}
 	}
 	
 	public void removeContractCallback(IContactCallback cb) 
@@ -134,12 +276,58 @@ public class WorldModel implements ITickListener , IMathSupport
 			throw new IllegalArgumentException("callback must not be NULL");
 		}
 		System.out.println("REMOVE CONTACT CB: "+cb);
-		contactCallbacks.remove( cb );
+		contactDispatcher.unsubscribe( cb );
 	}
 
 	public List<Ball> getBalls() {
 		return balls;
 	}
+	
+	public PhysicsState getPhysicsState() {
+		return physicsState;
+	}
+	
+	/**
+	 * Returns the spatial index over all balls, updated after each batch of physics steps.
+	 */
+	public BallGrid getBallGrid() {
+		return ballGrid;
+	}
+	
+	/**
+	 * Returns the ball closest to a point.
+	 * 
+	 * @return ball or <code>null</code> if there is no ball within <code>maxDistance</code>
+	 */
+	public Ball findNearestBall(float x,float y,float maxDistance) 
+	{
+		final int idx = ballGrid.findNearest( x , y , maxDistance );
+		return idx == -1 ? null : balls.get( idx );
+	}
+	
+	/**
+	 * Adds all balls whose center is inside a rectangle to a list.
+	 * 
+	 * @return number of balls found
+	 */
+	public int findBallsInRect(float minX,float minY,float maxX,float maxY,List<Ball> result) 
+	{
+		final int sizeBefore = result.size();
+		ballGrid.visitRect( minX , minY , maxX , maxY , (idx,x,y) -> result.add( balls.get( idx ) ) );
+		return result.size() - sizeBefore;
+	}
+	
+	/**
+	 * Adds all balls whose center is within a given distance of a point to a list.
+	 * 
+	 * @return number of balls found
+	 */
+	public int findBallsInRadius(float x,float y,float radius,List<Ball> result) 
+	{
+		final int sizeBefore = result.size();
+		ballGrid.visitCircle( x , y , radius , (idx,bx,by) -> result.add( balls.get( idx ) ) );
+		return result.size() - sizeBefore;
+	}
 
 	private void setupFloorPlane() 
 	{
@@ -150,27 +338,156 @@ public class WorldModel implements ITickListener , IMathSupport
 		.build(null);
 	}
 
-	public void addBall(float x,float y) 
+	public Ball addBall(float x,float y) 
 	{
-		System.out.println("Adding ball @ "+x+","+y);
-
-		// Create our body in the world using our body definition
-		Ball ball = new Ball(Constants.BALL_RADIUS );
-		final Body body = newDynamicBody(ItemType.BALL,new Vector2(x,y))
-				.circleShape( Constants.BALL_RADIUS )
-				.collidesWith( ItemType.GROUND  , ItemType.BONE , ItemType.BALL , ItemType.ROBOT_BASE )
-				.restitution( 0.3f )
-				.friction(1)
-				.build(ball);
+		if ( Main.DEBUG ) {
+			System.out.println("Adding ball @ "+x+","+y);
+		}
+		return spawnBall(x,y);
+	}
+	
+	/**
+	 * Adds multiple balls at once.
+	 * 
+	 * @param positions ball positions (x0,y0,x1,y1,...)
+	 * @param count number of balls to add
+	 */
+	public void addBalls(float[] positions,int count) 
+	{
+		if ( positions.length < count*2 ) {
+			throw new IllegalArgumentException("Expected "+(count*2)+" coordinates but got only "+positions.length);
+		}
+		balls.ensureCapacity( balls.size() + count );
+		for ( int i = 0 ; i < count ; i++ ) {
+			spawnBall( positions[i*2] , positions[i*2+1] );
+		}
+	}
+	
+	private Ball spawnBall(float x,float y) 
+	{
+		if ( ballShape == null ) 
+		{
+			// Box2D copies the shape into each fixture so a single shape can be re-used for all balls
+			ballShape = new CircleShape();
+			ballShape.setRadius( Constants.BALL_RADIUS );
+			
+			ballBodyDef.type = BodyType.DynamicBody;
+			ballFixtureDef.shape = ballShape;
+			ballFixtureDef.density = Constants.DENSITY;
+			ballFixtureDef.friction = 1;
+			ballFixtureDef.restitution = 0.3f;
+			ballFixtureDef.filter.categoryBits = ItemType.BALL.bitMask;
+			ballFixtureDef.filter.maskBits = (short) (ItemType.GROUND.bitMask | ItemType.BONE.bitMask | ItemType.BALL.bitMask | ItemType.ROBOT_BASE.bitMask);
+		}
+		
+		final Ball ball = new Ball(Constants.BALL_RADIUS );
+		
+		ballBodyDef.position.set( x , y );
+		final Body body = world.createBody( ballBodyDef );
+		body.setUserData( ItemType.BALL );
+		body.createFixture( ballFixtureDef ).setUserData( ball );
+		
 		ball.setBody( body );
+		ball.index = balls.size();
+		ball.physicsState = physicsState;
 		balls.add( ball );
+		physicsState.setBallPosition( ball.index , x , y );
+		return ball;
 	}
 	
+	/**
+	 * Destroys a ball in O(1) by moving the last ball into the slot that got freed.
+	 */
 	public void destroyBall(Ball ball) 
 	{
-		System.out.println("Destroyed ball "+ball);
-		balls.remove( ball );
+		if ( ball.body == null ) { // already destroyed
+			return;
+		}
+		if ( Main.DEBUG ) {
+			System.out.println("Destroyed ball "+ball);
+		}
+		
+		final int lastIdx = balls.size()-1;
+		final Ball last = balls.remove( lastIdx );
+		if ( last != ball ) 
+		{
+			balls.set( ball.index , last );
+			physicsState.moveBall( lastIdx , ball.index );
+			last.index = ball.index;
+		}
+		physicsState.setBallCount( lastIdx );
+		ballGrid.remove( ball.index , lastIdx );
+		
 		world.destroyBody( ball.body );
+		ball.body = null;
+		ball.physicsState = null;
+		ball.index = -1;
+	}
+	
+	/**
+	 * Sets the recorder that receives the physics state after each batch of steps.
+	 * 
+	 * @param recorder recorder or <code>null</code> to disable recording
+	 */
+	public void setRecorder(StepRecorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	public StepRecorder getRecorder() {
+		return recorder;
+	}
+	
+	/**
+	 * Adds an event to the recording (if any).
+	 */
+	public void recordEvent(StepRecorder.Event event,float value) 
+	{
+		if ( recorder != null ) {
+			recorder.recordEvent( event , value );
+		}
+	}
+	
+	public SteppingPolicy getSteppingPolicy() {
+		return steppingPolicy;
+	}
+	
+	/**
+	 * Returns the number of physics steps that were skipped because
+	 * stepping the world took too long.
+	 */
+	public long getDroppedSteps() {
+		return droppedSteps;
+	}
+	
+	public int getBodyCount() {
+		return world.getBodyCount();
+	}
+	
+	public int getContactCount() {
+		return world.getContactCount();
+	}
+	
+	/**
+	 * Returns the time spent inside <code>world.step()</code> during the last call to {@link #tick(float)}.
+	 */
+	public long getLastStepNanos() {
+		return lastStepNanos;
+	}
+	
+	/**
+	 * Returns the number of physics steps performed during the last call to {@link #tick(float)}.
+	 */
+	public int getLastStepCount() {
+		return lastStepCount;
+	}
+	
+	public void dispose() 
+	{
+		if ( ballShape != null ) {
+			ballShape.dispose();
+			ballShape = null;
+		}
+		world.dispose();
 	}
 
 	@Override
@@ -180,13 +497,226 @@ public class WorldModel implements ITickListener , IMathSupport
 		// max frame time to avoid spiral of death (on slow devices)
 		float frameTime = Math.min(deltaSeconds, 0.25f);
 		accumulator += frameTime;
-		while (accumulator >= Constants.PHYSICS_TIMESTEP)
+		
+		final int plannedSteps = steppingPolicy.getStepsToRun( accumulator );
+		long stepNanos = 0;
+		int steps = 0;
+		while ( steps < plannedSteps )
 		{
-			world.step(Constants.PHYSICS_TIMESTEP, Constants.VELOCITY_ITERATIONS , Constants.POSITION_ITERATIONS );
+			// decided up-front so the state gets saved right before the step that actually is the last one
+			final boolean lastStep = steps == plannedSteps-1 || steppingPolicy.isLastStep( steps , stepNanos );
+			if ( lastStep ) 
+			{
+				// last step of this batch, remember state for interpolation
+				if ( lastRefreshedStep != stepCount ) 
+				{
+					physicsState.refresh( balls );
+					lastRefreshedStep = stepCount;
+				}
+				physicsState.savePrevious();
+			}
+			
+			final long start = System.nanoTime();
+			world.step(Constants.PHYSICS_TIMESTEP, steppingPolicy.getVelocityIterations() , steppingPolicy.getPositionIterations() );
+			stepNanos += System.nanoTime() - start;
 			accumulator -= Constants.PHYSICS_TIMESTEP;
+			stepCount++;
+			steps++;
+			
+			// contact callbacks run outside of world.step() so they may safely modify the world
+			contactDispatcher.deliverEvents();
+			
+			retireBalls();
+			
+			if ( lastStep ) {
+				break;
+			}
+		}
+		steppingPolicy.batchCompleted( steps , stepNanos );
+		
+		if ( accumulator >= Constants.PHYSICS_TIMESTEP ) 
+		{
+			// out of time, drop whatever could not be simulated instead of falling further behind
+			final int dropped = (int) (accumulator / Constants.PHYSICS_TIMESTEP);
+			droppedSteps += dropped;
+			accumulator -= dropped * Constants.PHYSICS_TIMESTEP;
 		}
+		
+		// read Box2D state only once per batch of steps
+		if ( lastRefreshedStep != stepCount ) 
+		{
+			physicsState.refresh( balls );
+			ballGrid.rebuild( physicsState.getBallPositions() , physicsState.getBallCount() );
+			lastRefreshedStep = stepCount;
+			
+			steppingPolicy.update( physicsState.countMovingBodies( MOVING_MIN_DISTANCE , MOVING_MIN_ANGLE ) , 
+					physicsState.getBodyCount() + physicsState.getBallCount() , gripperContactCount );
+			
+			if ( recorder != null ) {
+				recorder.record( stepCount , physicsState );
+			}
+		}
+		lastStepNanos = stepNanos;
+		lastStepCount = steps;
 		return true;
 	}
+	
+	/**
+	 * Enables/disables automatic removal of balls that left the world bounds.
+	 */
+	public void setBallRetirementEnabled(boolean enabled) {
+		this.ballRetirementEnabled = enabled;
+	}
+	
+	/**
+	 * Sets the bounds balls need to leave to be removed from the world.
+	 */
+	public void setBallRetirementBounds(float minX,float minY,float maxX,float maxY) 
+	{
+		if ( minX >= maxX || minY >= maxY ) {
+			throw new IllegalArgumentException("Invalid bounds: ("+minX+","+minY+") -> ("+maxX+","+maxY+")");
+		}
+		this.retireMinX = minX;
+		this.retireMinY = minY;
+		this.retireMaxX = maxX;
+		this.retireMaxY = maxY;
+	}
+	
+	/**
+	 * Sets the max. number of balls removed per physics step, remaining balls
+	 * will be removed during subsequent steps.
+	 */
+	public void setMaxBallsRetiredPerStep(int max) 
+	{
+		if ( max < 1 ) {
+			throw new IllegalArgumentException("Max. balls per step must be >= 1");
+		}
+		this.maxBallsRetiredPerStep = max;
+		if ( retireCandidates.length < max ) {
+			retireCandidates = new Ball[ max ];
+		}
+	}
+	
+	public long getRetiredBallCount() {
+		return retiredBallCount;
+	}
+	
+	private boolean isInsideRetirementBounds(Vector2 p) {
+		return p.x >= retireMinX && p.x <= retireMaxX && p.y >= retireMinY && p.y <= retireMaxY;
+	}
+	
+	private void retireBalls() 
+	{
+		if ( ! ballRetirementEnabled || balls.isEmpty() ) {
+			return;
+		}
+		
+		// query the regions left,right,below and above the world bounds
+		retireCandidateCount = 0;
+		world.QueryAABB( retirementQuery , retireMinX - OUTSIDE_EXTENT , retireMinY - OUTSIDE_EXTENT , retireMinX , retireMaxY + OUTSIDE_EXTENT );
+		if ( retireCandidateCount < maxBallsRetiredPerStep ) {
+			world.QueryAABB( retirementQuery , retireMaxX , retireMinY - OUTSIDE_EXTENT , retireMaxX + OUTSIDE_EXTENT , retireMaxY + OUTSIDE_EXTENT );
+		}
+		if ( retireCandidateCount < maxBallsRetiredPerStep ) {
+			world.QueryAABB( retirementQuery , retireMinX , retireMinY - OUTSIDE_EXTENT , retireMaxX , retireMinY );
+		}
+		if ( retireCandidateCount < maxBallsRetiredPerStep ) {
+			world.QueryAABB( retirementQuery , retireMinX , retireMaxY , retireMaxX , retireMaxY + OUTSIDE_EXTENT );
+		}
+		if ( retireCandidateCount > 0 ) {
+			keepBallsHeldByGripper();
+		}
+		
+		for ( int i = 0 ; i < retireCandidateCount ; i++ ) 
+		{
+			destroyBall( retireCandidates[i] );
+			retireCandidates[i] = null;
+		}
+		retiredBallCount += retireCandidateCount;
+		if ( retireCandidateCount > 0 ) 
+		{
+			// deliver end of contact events caused by destroying the bodies
+			// before Box2D gets a chance to re-use their fixtures
+			retireCandidateCount = 0;
+			contactDispatcher.deliverEvents();
+		}
+	}
+	
+	/**
+	 * Removes all balls that currently touch a part of the gripper from the retirement candidates.
+	 * 
+	 * libgdx does not expose a body's contact edges, so each candidate's bounding box is looked up in
+	 * Box2D's broad-phase tree instead. Any ball whose box overlaps a fixture of the base plate or the claws
+	 * is kept. This errs on the side of keeping a ball that is close to but not quite touching the gripper,
+	 * such a ball gets picked up again by a later step. The cost only depends on the number of candidates
+	 * and the bodies around them, not on the number of contacts in the world.
+	 */
+	private void keepBallsHeldByGripper() 
+	{
+		int count = 0;
+		for ( int i = 0 ; i < retireCandidateCount ; i++ ) 
+		{
+			final Ball ball = retireCandidates[i];
+			retireCandidates[i] = null;
+			
+			final Vector2 p = ball.body.getPosition();
+			touchesGripper = false;
+			world.QueryAABB( gripperQuery , p.x - ball.radius , p.y - ball.radius , p.x + ball.radius , p.y + ball.radius );
+			if ( touchesGripper ) {
+				ball.retiring = false;
+			} else {
+				retireCandidates[ count++ ] = ball;
+			}
+		}
+		retireCandidateCount = count;
+	}
+	
+	private static boolean isGripperPart(Fixture fixture) 
+	{
+		if ( ! ( fixture.getUserData() instanceof Gripper ) ) {
+			return false;
+		}
+		final Gripper gripper = (Gripper) fixture.getUserData();
+		final Body body = fixture.getBody();
+		return body == gripper.getBasePlateBody() || body == gripper.getLowerClawBody() || body == gripper.getUpperClawBody();
+	}
+	
+	/**
+	 * Invoked after the Box2D state of this world got patched from a {@link WorldState}.
+	 */
+	void stateRestored(long restoredStepCount) 
+	{
+		// deliver end of contact events caused by destroying balls
+		contactDispatcher.deliverEvents();
+		
+		this.stepCount = restoredStepCount;
+		this.accumulator = 0;
+		physicsState.refresh( balls );
+		physicsState.savePrevious();
+		ballGrid.rebuild( physicsState.getBallPositions() , physicsState.getBallCount() );
+		lastRefreshedStep = stepCount;
+	}
+	
+	/**
+	 * Returns how far (0...1) the simulation time has advanced past the most recent
+	 * physics step, relative to the length of a step.
+	 * 
+	 * Used to interpolate between the previous and current body transforms.
+	 */
+	public float getInterpolationAlpha() {
+		return accumulator / Constants.PHYSICS_TIMESTEP;
+	}
+	
+	public float getAccumulatorSeconds() {
+		return accumulator;
+	}
+	
+	/**
+	 * Returns the number of physics steps performed so far.
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
 
 	private List<Bone> sortLeftToRight(List<Bone> bones) 
 	{
@@ -228,7 +758,7 @@ public class WorldModel implements ITickListener , IMathSupport
 	{
 		// create robot base
 		final Body robotBase = createRobotBase();
-		arm.setBase( robotBase );
+		arm.setBase( robotBase , physicsState.register( robotBase ) );
 
 		// create bones first because the joints will
 		// link the bones
@@ -303,6 +833,7 @@ public class WorldModel implements ITickListener , IMathSupport
 
 		final RevoluteJoint j = (RevoluteJoint) world.createJoint(def);
 		joint.setBody( j );
+		joint.bindPhysicsState( physicsState , physicsState.register( j ) );
 	}
 
 	private Body createRobotBase() 
@@ -322,6 +853,7 @@ public class WorldModel implements ITickListener , IMathSupport
 				.gravityScale(0)
 				.build(bone);
 		bone.setBody( body );
+		bone.bindPhysicsState( physicsState , physicsState.register( body ) );
 		return body;
 	}	
 	
@@ -438,6 +970,17 @@ public class WorldModel implements ITickListener , IMathSupport
 		gripper.setUpperClawBody( upperClaw );
 		gripper.setLowerJoint( lowerClawJoint );
 		gripper.setUpperJoint( upperClawJoint );
+		gripper.bindPartSlots( 
+				physicsState.register( basePlate ) , 
+				physicsState.register( lowerClaw ) , 
+				physicsState.register( upperClaw ) , 
+				physicsState.register( lowerClawJoint ) , 
+				physicsState.register( upperClawJoint ) );
+		
+		// balls touching the gripper get stepped with more solver iterations
+		contactDispatcher.subscribe( gripperContactTracker , basePlate );
+		contactDispatcher.subscribe( gripperContactTracker , lowerClaw );
+		contactDispatcher.subscribe( gripperContactTracker , upperClaw );
 	}
 	
 	private static float convertAngle( float angleInDeg ) {
@@ -557,6 +1100,7 @@ public class WorldModel implements ITickListener , IMathSupport
 			bodyDef.gravityScale = this.gravityScale;
 
 			final Body body = world.createBody(bodyDef);
+			body.setUserData( this.itemType );
 
 			FixtureDef fixtureDef = new FixtureDef();
 			fixtureDef.shape = this.shape;
@@ -0,0 +1,169 @@
+package de.codesourcery.inversek;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Simulates robot arm motions ahead of time in a private Box2D world
+ * running on a background thread.
+ *
+ * The sandbox world is set up exactly like the live world, each simulation starts
+ * by restoring a {@link WorldState} captured from the live world and then
+ * moves the arm's joints to the desired angles while checking a validator after each step.
+ */
+public final class WorldSandbox
+{
+	public static enum Outcome
+	{
+		/** Arm reached the desired configuration. */
+		COMPLETED,
+		/** Validator rejected a configuration the arm passed through. */
+		INVALID,
+		/** Arm did not reach the desired configuration within the max. number of steps. */
+		TIMEOUT,
+		/** At least one of the desired joint angles is out of range. */
+		REJECTED
+	}
+
+	@FunctionalInterface
+	public interface IStateValidator
+	{
+		public boolean isInvalid(RobotArm arm,WorldModel world);
+	}
+
+	/**
+	 * Rejects all states where a bone or joint is below the ground plane.
+	 */
+	public static final IStateValidator ARM_ABOVE_GROUND = (arm,world) ->
+	{
+		for ( KinematicsChain chain : arm.getModel().getChains() )
+		{
+			for ( Bone b : chain.getBones() )
+			{
+				if ( b.start.y < 0 || b.end.y < 0 ) {
+					return true;
+				}
+			}
+			for ( Joint j : chain.getJoints() )
+			{
+				if ( j.position.y < 0 ) {
+					return true;
+				}
+			}
+		}
+		return false;
+	};
+
+	public static final class Result
+	{
+		public final Outcome outcome;
+		public final int steps;
+		public final WorldState finalState;
+
+		public Result(Outcome outcome, int steps, WorldState finalState) {
+			this.outcome = outcome;
+			this.steps = steps;
+			this.finalState = finalState;
+		}
+
+		@Override
+		public String toString() {
+			return outcome+" after "+steps+" steps";
+		}
+	}
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor( r ->
+	{
+		final Thread t = new Thread( r , "sandbox" );
+		t.setDaemon( true );
+		return t;
+	});
+
+	// only accessed by the sandbox thread
+	private WorldModel world;
+	private RobotArm arm;
+
+	/**
+	 * Simulates moving the arm's joints to the desired angles.
+	 *
+	 * @param start state to start from, gets copied so the caller may re-use it right away
+	 * @param anglesByJointId desired joint orientations in degrees by joint ID
+	 * @param maxSteps max. number of physics steps to simulate
+	 * @param validator validator to check after each step
+	 */
+	public CompletableFuture<Result> simulate(WorldState start,Map<String,Float> anglesByJointId,int maxSteps,IStateValidator validator)
+	{
+		if ( start == null ) {
+			throw new IllegalArgumentException("start must not be NULL");
+		}
+		if ( validator == null ) {
+			throw new IllegalArgumentException("validator must not be NULL");
+		}
+		final WorldState startCopy = start.createCopy();
+		final Map<String,Float> plan = new HashMap<>( anglesByJointId );
+		return CompletableFuture.supplyAsync( () -> run( startCopy , plan , maxSteps , validator ) , executor );
+	}
+
+	private Result run(WorldState start,Map<String,Float> plan,int maxSteps,IStateValidator validator)
+	{
+		if ( world == null )
+		{
+			world = new WorldModel();
+			arm = new RobotArm( world );
+		}
+
+		// discard whatever the previous simulation left behind
+		start.restore( world );
+		arm.resetMotion();
+		syncArm();
+
+		if ( ! arm.moveJoints( plan ) ) {
+			return new Result( Outcome.REJECTED , 0 , start );
+		}
+
+		for ( int step = 1 ; step <= maxSteps ; step++ )
+		{
+			arm.tick( Constants.PHYSICS_TIMESTEP );
+			world.tick( Constants.PHYSICS_TIMESTEP );
+			syncArm();
+
+			if ( validator.isInvalid( arm , world ) ) {
+				return new Result( Outcome.INVALID , step , captureState() );
+			}
+			if ( arm.hasFinishedMoving() ) {
+				return new Result( Outcome.COMPLETED , step , captureState() );
+			}
+		}
+		return new Result( Outcome.TIMEOUT , maxSteps , captureState() );
+	}
+
+	private void syncArm()
+	{
+		for ( KinematicsChain chain : arm.getModel().getChains() ) {
+			chain.syncWithBox2d();
+		}
+	}
+
+	private WorldState captureState()
+	{
+		final WorldState result = new WorldState();
+		result.capture( world );
+		return result;
+	}
+
+	public void dispose()
+	{
+		executor.submit( () ->
+		{
+			if ( world != null ) {
+				world.dispose();
+				world = null;
+				arm = null;
+			}
+		});
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,373 @@
+package de.codesourcery.inversek;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.inversek.WorldModel.Ball;
+
+/**
+ * Copy of everything the renderer needs to draw a single frame.
+ *
+ * Instances are filled by the simulation thread after each physics step and then handed
+ * to the renderer through a {@link TripleBuffer}, so the renderer never touches
+ * live Box2D/model state. All data is kept in primitive arrays that only get
+ * re-allocated when the number of bones/joints/balls grows beyond their current capacity.
+ *
+ * Transforms and positions are captured as of the most recent physics step and the step
+ * before that, {@link #interpolate(float)} blends between the two.
+ */
+public final class WorldSnapshot
+{
+	// transforms are stored as (x,y,angle in radians)
+	public static final int TRANSFORM_SIZE = 3;
+
+	// lines are stored as (x0,y0,x1,y1)
+	public static final int LINE_SIZE = 4;
+
+	// gripper parts are stored as transforms of base plate,upper claw,lower claw
+	public static final int GRIPPER_PART_BASEPLATE = 0;
+	public static final int GRIPPER_PART_UPPER_CLAW = 1;
+	public static final int GRIPPER_PART_LOWER_CLAW = 2;
+	public static final int GRIPPER_PARTS = 3;
+
+	public long stepCount;
+
+	// simulation time that had not been stepped yet when this snapshot was captured
+	public float accumulatorSeconds;
+	public long captureNanos;
+
+	// robot base
+	public float baseX;
+	public float baseY;
+
+	// bones
+	public int boneCount;
+	public Bone[] bones = new Bone[0];
+	public float[] boneTransforms = new float[0];
+	public float[] prevBoneTransforms = new float[0];
+	public float[] lerpBoneTransforms = new float[0];
+	public float[] boneLengths = new float[0];
+	public float[] boneLines = new float[0]; // start/end as calculated by forward kinematics
+	public boolean[] isGripper = new boolean[0];
+
+	// gripper parts, only valid for bones where isGripper[] is true
+	public float[] gripperTransforms = new float[0];
+	public float[] prevGripperTransforms = new float[0];
+	public float[] lerpGripperTransforms = new float[0];
+	public float[] gripperPositioningEnd = new float[0];
+	public float[] gripperBaseplateLengths = new float[0];
+	public float[] gripperClawLengths = new float[0];
+
+	// joints
+	public int jointCount;
+	public Joint[] joints = new Joint[0];
+	public float[] jointPositions = new float[0];
+	public float[] prevJointPositions = new float[0];
+	public float[] lerpJointPositions = new float[0];
+	public float[] jointAngles = new float[0]; // Box2D joint angle in radians
+
+	// balls
+	public int ballCount;
+	public Ball[] balls = new Ball[0];
+	public float[] ballPositions = new float[0];
+	public float[] prevBallPositions = new float[0];
+	public float[] lerpBallPositions = new float[0];
+	public float[] ballRadii = new float[0];
+
+	// debug chain
+	public boolean hasDebugChain;
+	public int debugBoneCount;
+	public float[] debugBoneLines = new float[0];
+	public float debugEndX;
+	public float debugEndY;
+
+	public void capture(RobotArm arm,WorldModel world,KinematicsChain debugChain)
+	{
+		final PhysicsState state = world.getPhysicsState();
+
+		this.stepCount = world.getStepCount();
+		this.accumulatorSeconds = world.getAccumulatorSeconds();
+		this.captureNanos = System.nanoTime();
+
+		this.baseX = state.getX( arm.getBaseSlot() );
+		this.baseY = state.getY( arm.getBaseSlot() );
+
+		captureArm( arm.getModel() , state );
+		captureBalls( world.getBalls() , state );
+		captureDebugChain( debugChain );
+	}
+
+	private void captureArm(RobotModel model,PhysicsState state)
+	{
+		int totalBones = 0;
+		int totalJoints = 0;
+		for ( KinematicsChain chain : model.getChains() ) {
+			totalBones += chain.getBones().size();
+			totalJoints += chain.getJoints().size();
+		}
+		ensureBoneCapacity( totalBones );
+		ensureJointCapacity( totalJoints );
+
+		int boneIdx = 0;
+		int jointIdx = 0;
+		for ( KinematicsChain chain : model.getChains() )
+		{
+			for ( Bone bone : chain.getBones() )
+			{
+				bones[boneIdx] = bone;
+				boneLengths[boneIdx] = bone.length;
+				writeTransform( bone , boneTransforms , boneIdx*TRANSFORM_SIZE );
+				writePrevTransform( bone , state , prevBoneTransforms , boneIdx*TRANSFORM_SIZE );
+				writeLine( bone.start , bone.end , boneLines , boneIdx*LINE_SIZE );
+
+				isGripper[boneIdx] = bone instanceof Gripper;
+				if ( isGripper[boneIdx] )
+				{
+					final Gripper gripper = (Gripper) bone;
+					final int offset = boneIdx*GRIPPER_PARTS*TRANSFORM_SIZE;
+					writeTransform( state , gripper.getBasePlateSlot() , gripperTransforms , offset + GRIPPER_PART_BASEPLATE*TRANSFORM_SIZE );
+					writeTransform( state , gripper.getUpperClawSlot() , gripperTransforms , offset + GRIPPER_PART_UPPER_CLAW*TRANSFORM_SIZE );
+					writeTransform( state , gripper.getLowerClawSlot() , gripperTransforms , offset + GRIPPER_PART_LOWER_CLAW*TRANSFORM_SIZE );
+					writePrevTransform( state , gripper.getBasePlateSlot() , prevGripperTransforms , offset + GRIPPER_PART_BASEPLATE*TRANSFORM_SIZE );
+					writePrevTransform( state , gripper.getUpperClawSlot() , prevGripperTransforms , offset + GRIPPER_PART_UPPER_CLAW*TRANSFORM_SIZE );
+					writePrevTransform( state , gripper.getLowerClawSlot() , prevGripperTransforms , offset + GRIPPER_PART_LOWER_CLAW*TRANSFORM_SIZE );
+					gripperPositioningEnd[boneIdx*2] = gripper.getPositioningEnd().x;
+					gripperPositioningEnd[boneIdx*2+1] = gripper.getPositioningEnd().y;
+					gripperBaseplateLengths[boneIdx] = gripper.getMaxBaseplateLength();
+					gripperClawLengths[boneIdx] = gripper.getClawLength();
+				}
+				boneIdx++;
+			}
+
+			for ( Joint joint : chain.getJoints() )
+			{
+				joints[jointIdx] = joint;
+				jointAngles[jointIdx] = joint.getBox2dJointAngle();
+				writeJointPosition( joint , jointPositions , jointIdx*2 , false );
+				writeJointPosition( joint , prevJointPositions , jointIdx*2 , true );
+				jointIdx++;
+			}
+		}
+
+		// release references to nodes that are no longer part of the model
+		Arrays.fill( bones , boneIdx , bones.length , null );
+		Arrays.fill( joints , jointIdx , joints.length , null );
+
+		this.boneCount = boneIdx;
+		this.jointCount = jointIdx;
+	}
+
+	private void captureBalls(List<Ball> worldBalls,PhysicsState state)
+	{
+		// ball count is taken from the physics state since there are no Ball instances when replaying a recording
+		final int count = state.getBallCount();
+		if ( balls.length < count )
+		{
+			final int newCapacity = Math.max( count , balls.length*2 );
+			balls = new Ball[ newCapacity ];
+			ballPositions = new float[ newCapacity*2 ];
+			prevBallPositions = new float[ newCapacity*2 ];
+			lerpBallPositions = new float[ newCapacity*2 ];
+			ballRadii = new float[ newCapacity ];
+		}
+
+		System.arraycopy( state.getBallPositions() , 0 , ballPositions , 0 , count*2 );
+		System.arraycopy( state.getPrevBallPositions() , 0 , prevBallPositions , 0 , count*2 );
+		final int instances = worldBalls.size();
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final Ball ball = i < instances ? worldBalls.get(i) : null;
+			balls[i] = ball;
+			ballRadii[i] = ball != null ? ball.radius : Constants.BALL_RADIUS;
+		}
+		Arrays.fill( balls , count , balls.length , null );
+		this.ballCount = count;
+	}
+
+	private void captureDebugChain(KinematicsChain chain)
+	{
+		hasDebugChain = chain != null;
+		if ( ! hasDebugChain )
+		{
+			debugBoneCount = 0;
+			return;
+		}
+
+		final List<Bone> debugBones = chain.getBones();
+		if ( debugBoneLines.length < debugBones.size()*LINE_SIZE ) {
+			debugBoneLines = new float[ debugBones.size()*LINE_SIZE ];
+		}
+		for ( int i = 0 , len = debugBones.size() ; i < len ; i++ )
+		{
+			final Bone b = debugBones.get(i);
+			writeLine( b.start , b.end , debugBoneLines , i*LINE_SIZE );
+		}
+		debugBoneCount = debugBones.size();
+
+		final Vector2 end = chain.getEndBone().getPositioningEnd();
+		debugEndX = end.x;
+		debugEndY = end.y;
+	}
+
+	/**
+	 * Returns how far (0...1) the simulation has advanced past the captured physics step,
+	 * assuming simulation time keeps advancing in real time.
+	 */
+	public float getInterpolationAlpha(long nowNanos)
+	{
+		final float elapsed = accumulatorSeconds + (nowNanos - captureNanos)/1_000_000_000f;
+		return Math.max( 0 , Math.min( 1 , elapsed / Constants.PHYSICS_TIMESTEP ) );
+	}
+
+	/**
+	 * Populates the <code>lerpXXX</code> arrays by blending between the previous (alpha = 0)
+	 * and current (alpha = 1) transforms/positions.
+	 */
+	public void interpolate(float alpha)
+	{
+		lerpTransforms( prevBoneTransforms , boneTransforms , lerpBoneTransforms , boneCount , alpha );
+		lerpTransforms( prevGripperTransforms , gripperTransforms , lerpGripperTransforms , boneCount*GRIPPER_PARTS , alpha );
+		lerpPositions( prevJointPositions , jointPositions , lerpJointPositions , jointCount , alpha );
+		lerpPositions( prevBallPositions , ballPositions , lerpBallPositions , ballCount , alpha );
+	}
+
+	private static void lerpTransforms(float[] prev,float[] current,float[] result,int count,float alpha)
+	{
+		for ( int i = 0 , len = count*TRANSFORM_SIZE ; i < len ; i += TRANSFORM_SIZE )
+		{
+			result[i] = prev[i] + ( current[i] - prev[i] ) * alpha;
+			result[i+1] = prev[i+1] + ( current[i+1] - prev[i+1] ) * alpha;
+
+			// rotate along the shorter arc
+			float deltaAngle = current[i+2] - prev[i+2];
+			if ( deltaAngle > Math.PI ) {
+				deltaAngle -= 2*Math.PI;
+			} else if ( deltaAngle < -Math.PI ) {
+				deltaAngle += 2*Math.PI;
+			}
+			result[i+2] = prev[i+2] + deltaAngle * alpha;
+		}
+	}
+
+	private static void lerpPositions(float[] prev,float[] current,float[] result,int count,float alpha)
+	{
+		for ( int i = 0 , len = count*2 ; i < len ; i++ ) {
+			result[i] = prev[i] + ( current[i] - prev[i] ) * alpha;
+		}
+	}
+
+	private void writeJointPosition(Joint joint,float[] array,int offset,boolean previous)
+	{
+		if ( joint.predecessor == null )
+		{
+			array[offset] = 0;
+			array[offset+1] = Constants.ROBOTBASE_HEIGHT + Constants.JOINT_RADIUS;
+			return;
+		}
+
+		// joint is located at the end of the predecessor bone,
+		// offset by the joint radius along the bone's direction
+		final Bone bone = joint.predecessor;
+		final boolean usePrevious = previous && bone.hasPhysicsState();
+		final PhysicsState state = bone.getPhysicsState();
+		final int slot = bone.getPhysicsSlot();
+		final float angle = usePrevious ? state.getPrevAngle( slot ) : bone.getBox2dAngle();
+		final float x = usePrevious ? state.getPrevX( slot ) : bone.getBox2dX();
+		final float y = usePrevious ? state.getPrevY( slot ) : bone.getBox2dY();
+		final float distance = bone.length/2f + Constants.JOINT_RADIUS;
+		array[offset] = x + (float) Math.cos( angle ) * distance;
+		array[offset+1] = y + (float) Math.sin( angle ) * distance;
+	}
+
+	private static void writeTransform(Bone bone,float[] array,int offset)
+	{
+		array[offset] = bone.getBox2dX();
+		array[offset+1] = bone.getBox2dY();
+		array[offset+2] = bone.getBox2dAngle();
+	}
+
+	private static void writePrevTransform(Bone bone,PhysicsState state,float[] array,int offset)
+	{
+		if ( ! bone.hasPhysicsState() ) {
+			writeTransform( bone , array , offset );
+		} else {
+			writePrevTransform( state , bone.getPhysicsSlot() , array , offset );
+		}
+	}
+
+	private static void writePrevTransform(PhysicsState state,int slot,float[] array,int offset)
+	{
+		array[offset] = state.getPrevX( slot );
+		array[offset+1] = state.getPrevY( slot );
+		array[offset+2] = state.getPrevAngle( slot );
+	}
+
+	private static void writeTransform(PhysicsState state,int slot,float[] array,int offset)
+	{
+		array[offset] = state.getX( slot );
+		array[offset+1] = state.getY( slot );
+		array[offset+2] = state.getAngle( slot );
+	}
+
+	private static void writeLine(Vector2 start,Vector2 end,float[] array,int offset)
+	{
+		array[offset] = start.x;
+		array[offset+1] = start.y;
+		array[offset+2] = end.x;
+		array[offset+3] = end.y;
+	}
+
+	private void ensureBoneCapacity(int count)
+	{
+		if ( bones.length >= count ) {
+			return;
+		}
+		bones = new Bone[count];
+		boneTransforms = new float[count*TRANSFORM_SIZE];
+		prevBoneTransforms = new float[count*TRANSFORM_SIZE];
+		lerpBoneTransforms = new float[count*TRANSFORM_SIZE];
+		boneLengths = new float[count];
+		boneLines = new float[count*LINE_SIZE];
+		isGripper = new boolean[count];
+		gripperTransforms = new float[count*GRIPPER_PARTS*TRANSFORM_SIZE];
+		prevGripperTransforms = new float[count*GRIPPER_PARTS*TRANSFORM_SIZE];
+		lerpGripperTransforms = new float[count*GRIPPER_PARTS*TRANSFORM_SIZE];
+		gripperPositioningEnd = new float[count*2];
+		gripperBaseplateLengths = new float[count];
+		gripperClawLengths = new float[count];
+	}
+
+	private void ensureJointCapacity(int count)
+	{
+		if ( joints.length >= count ) {
+			return;
+		}
+		joints = new Joint[count];
+		jointPositions = new float[count*2];
+		prevJointPositions = new float[count*2];
+		lerpJointPositions = new float[count*2];
+		jointAngles = new float[count];
+	}
+
+	public int indexOfBone(Node<?> node)
+	{
+		for ( int i = 0 ; i < boneCount ; i++ ) {
+			if ( bones[i] == node ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int indexOfJoint(Node<?> node)
+	{
+		for ( int i = 0 ; i < jointCount ; i++ ) {
+			if ( joints[i] == node ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,226 @@
+package de.codesourcery.inversek;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.joints.PrismaticJoint;
+import com.badlogic.gdx.physics.box2d.joints.RevoluteJoint;
+
+import de.codesourcery.inversek.WorldModel.Ball;
+
+/**
+ * Dynamic state of a {@link WorldModel} (body transforms and velocities, joint motors, balls)
+ * stored in flat primitive arrays.
+ *
+ * A state captured from one world can be restored into any other world that has been
+ * set up the same way (same robot arm, registered in the same order), which allows
+ * simulating ahead in a sandbox world without touching the live one.
+ */
+public final class WorldState
+{
+	// bodies are stored as (x,y,angle,linear velocity x,linear velocity y,angular velocity)
+	public static final int BODY_SIZE = 6;
+
+	// joints are stored as (motor enabled,motor speed,joint angle/translation)
+	public static final int JOINT_SIZE = 3;
+
+	private long stepCount;
+
+	private float[] bodies = new float[0];
+	private int bodyCount;
+
+	private float[] revoluteJoints = new float[0];
+	private int revoluteJointCount;
+
+	private float[] prismaticJoints = new float[0];
+	private int prismaticJointCount;
+
+	private float[] balls = new float[0];
+	private int ballCount;
+
+	public WorldState() {
+	}
+
+	public WorldState(WorldState other) {
+		copyFrom( other );
+	}
+
+	public WorldState createCopy() {
+		return new WorldState(this);
+	}
+
+	public void copyFrom(WorldState other)
+	{
+		this.stepCount = other.stepCount;
+		this.bodyCount = other.bodyCount;
+		this.revoluteJointCount = other.revoluteJointCount;
+		this.prismaticJointCount = other.prismaticJointCount;
+		this.ballCount = other.ballCount;
+
+		bodies = ensureCapacity( bodies , bodyCount*BODY_SIZE );
+		revoluteJoints = ensureCapacity( revoluteJoints , revoluteJointCount*JOINT_SIZE );
+		prismaticJoints = ensureCapacity( prismaticJoints , prismaticJointCount*JOINT_SIZE );
+		balls = ensureCapacity( balls , ballCount*BODY_SIZE );
+
+		System.arraycopy( other.bodies , 0 , bodies , 0 , bodyCount*BODY_SIZE );
+		System.arraycopy( other.revoluteJoints , 0 , revoluteJoints , 0 , revoluteJointCount*JOINT_SIZE );
+		System.arraycopy( other.prismaticJoints , 0 , prismaticJoints , 0 , prismaticJointCount*JOINT_SIZE );
+		System.arraycopy( other.balls , 0 , balls , 0 , ballCount*BODY_SIZE );
+	}
+
+	/**
+	 * Captures the current state of a world.
+	 *
+	 * Must be called from the thread that is stepping the world.
+	 */
+	public void capture(WorldModel world)
+	{
+		final PhysicsState state = world.getPhysicsState();
+
+		this.stepCount = world.getStepCount();
+
+		bodyCount = state.getBodyCount();
+		bodies = ensureCapacity( bodies , bodyCount*BODY_SIZE );
+		for ( int i = 0 ; i < bodyCount ; i++ ) {
+			writeBody( state.getBody(i) , bodies , i*BODY_SIZE );
+		}
+
+		revoluteJointCount = state.getRevoluteJointCount();
+		revoluteJoints = ensureCapacity( revoluteJoints , revoluteJointCount*JOINT_SIZE );
+		for ( int i = 0 ; i < revoluteJointCount ; i++ )
+		{
+			final RevoluteJoint joint = state.getRevoluteJoint(i);
+			final int offset = i*JOINT_SIZE;
+			revoluteJoints[offset] = joint.isMotorEnabled() ? 1 : 0;
+			revoluteJoints[offset+1] = joint.getMotorSpeed();
+			revoluteJoints[offset+2] = joint.getJointAngle();
+		}
+
+		prismaticJointCount = state.getPrismaticJointCount();
+		prismaticJoints = ensureCapacity( prismaticJoints , prismaticJointCount*JOINT_SIZE );
+		for ( int i = 0 ; i < prismaticJointCount ; i++ )
+		{
+			final PrismaticJoint joint = state.getPrismaticJoint(i);
+			final int offset = i*JOINT_SIZE;
+			prismaticJoints[offset] = joint.isMotorEnabled() ? 1 : 0;
+			prismaticJoints[offset+1] = joint.getMotorSpeed();
+			prismaticJoints[offset+2] = joint.getJointTranslation();
+		}
+
+		final List<Ball> worldBalls = world.getBalls();
+		ballCount = worldBalls.size();
+		balls = ensureCapacity( balls , ballCount*BODY_SIZE );
+		for ( int i = 0 ; i < ballCount ; i++ ) {
+			writeBody( worldBalls.get(i).getBody() , balls , i*BODY_SIZE );
+		}
+	}
+
+	/**
+	 * Patches the Box2D state of a world so that it matches this state.
+	 *
+	 * Balls are created/destroyed as needed. Must be called from the thread
+	 * that is stepping the world.
+	 *
+	 * @throws IllegalArgumentException if the world's robot arm was not set up the same way
+	 * as the world this state was captured from
+	 */
+	public void restore(WorldModel world)
+	{
+		final PhysicsState state = world.getPhysicsState();
+		if ( state.getBodyCount() != bodyCount ||
+			 state.getRevoluteJointCount() != revoluteJointCount ||
+			 state.getPrismaticJointCount() != prismaticJointCount )
+		{
+			throw new IllegalArgumentException("World has "+state.getBodyCount()+" bodies/"+state.getRevoluteJointCount()+
+					" revolute joints/"+state.getPrismaticJointCount()+" prismatic joints but state has "+
+					bodyCount+"/"+revoluteJointCount+"/"+prismaticJointCount);
+		}
+
+		for ( int i = 0 ; i < bodyCount ; i++ ) {
+			readBody( bodies , i*BODY_SIZE , state.getBody(i) );
+		}
+
+		for ( int i = 0 ; i < revoluteJointCount ; i++ )
+		{
+			final RevoluteJoint joint = state.getRevoluteJoint(i);
+			final int offset = i*JOINT_SIZE;
+			joint.enableMotor( revoluteJoints[offset] != 0 );
+			joint.setMotorSpeed( revoluteJoints[offset+1] );
+		}
+
+		for ( int i = 0 ; i < prismaticJointCount ; i++ )
+		{
+			final PrismaticJoint joint = state.getPrismaticJoint(i);
+			final int offset = i*JOINT_SIZE;
+			joint.enableMotor( prismaticJoints[offset] != 0 );
+			joint.setMotorSpeed( prismaticJoints[offset+1] );
+		}
+
+		final List<Ball> worldBalls = world.getBalls();
+		while ( worldBalls.size() > ballCount ) {
+			world.destroyBall( worldBalls.get( worldBalls.size()-1 ) );
+		}
+		while ( worldBalls.size() < ballCount )
+		{
+			final int offset = worldBalls.size()*BODY_SIZE;
+			world.addBall( balls[offset] , balls[offset+1] );
+		}
+		for ( int i = 0 ; i < ballCount ; i++ ) {
+			readBody( balls , i*BODY_SIZE , worldBalls.get(i).getBody() );
+		}
+
+		world.stateRestored( stepCount );
+	}
+
+	private static void writeBody(Body body,float[] array,int offset)
+	{
+		final Vector2 position = body.getPosition();
+		array[offset] = position.x;
+		array[offset+1] = position.y;
+		array[offset+2] = body.getAngle();
+		final Vector2 velocity = body.getLinearVelocity();
+		array[offset+3] = velocity.x;
+		array[offset+4] = velocity.y;
+		array[offset+5] = body.getAngularVelocity();
+	}
+
+	private static void readBody(float[] array,int offset,Body body)
+	{
+		body.setTransform( array[offset] , array[offset+1] , array[offset+2] );
+		body.setLinearVelocity( array[offset+3] , array[offset+4] );
+		body.setAngularVelocity( array[offset+5] );
+		body.setAwake( true );
+	}
+
+	private static float[] ensureCapacity(float[] array,int size)
+	{
+		if ( array.length >= size ) {
+			return array;
+		}
+		return new float[ Math.max( size , array.length*2 ) ];
+	}
+
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	public int getBallCount() {
+		return ballCount;
+	}
+
+	/**
+	 * Returns the translation of a prismatic joint (for example one of the gripper claws)
+	 * as of the time this state got captured.
+	 */
+	public float getPrismaticJointTranslation(int jointSlot) {
+		return prismaticJoints[ jointSlot*JOINT_SIZE+2 ];
+	}
+
+	/**
+	 * Returns the angle (in radians) of a revolute joint as of the time this state got captured.
+	 */
+	public float getRevoluteJointAngle(int jointSlot) {
+		return revoluteJoints[ jointSlot*JOINT_SIZE+2 ];
+	}
+}